@@ -0,0 +1,287 @@
+package benchmarks;
+
+import com.toedter.calendar.IDateEvaluator;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Доступ к классам приложения из бенчмарков.
+ * <p>
+ * Классы приложения лежат в пакете по умолчанию, а JMH требует, чтобы
+ * бенчмарки находились в именованном пакете, откуда пакет по умолчанию
+ * не импортируется. Поэтому вызовы идут через {@link MethodHandle},
+ * найденные один раз при загрузке класса: дескрипторы в
+ * {@code static final} полях JIT-компилятор встраивает так же,
+ * как прямые вызовы.
+ * </p>
+ */
+final class App {
+
+    private static final MethodHandle NEW_CSV_STORAGE;
+    private static final MethodHandle NEW_WRITE_BEHIND_CSV_STORAGE;
+    private static final MethodHandle NEW_BODY_CACHE_CSV_STORAGE;
+    private static final MethodHandle NEW_COLUMNAR_STORAGE;
+    private static final MethodHandle WRITE_COLUMNAR;
+    private static final MethodHandle STREAM_ALL;
+    private static final MethodHandle SAVE;
+    private static final MethodHandle SAVE_ALL;
+    private static final MethodHandle MERGE;
+    private static final MethodHandle MERGE_POLICY;
+    private static final MethodHandle LOAD_ALL;
+    private static final MethodHandle GET_BY_DATE;
+    private static final MethodHandle GET_BY_PERIOD;
+    private static final MethodHandle GET_NEAREST_FUTURE_DATE;
+    private static final MethodHandle NEW_HIGHLIGHT_EVALUATOR;
+    private static final MethodHandle CSV_DECODE;
+    private static final MethodHandle VERIFY;
+    private static final MethodHandle REPAIR;
+    private static final MethodHandle MIGRATE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> noteStorage = Class.forName("NoteStorage");
+            Class<?> csvStorage = Class.forName("CsvStorage");
+            Class<?> columnarStorage = Class.forName("ColumnarStorage");
+            Class<?> highlightEvaluator = Class.forName("HighlightEvaluator");
+            Class<?> csvCodec = Class.forName("CsvCodec");
+            Class<?> mergeResult = Class.forName("NoteMerger$Result");
+            Class<?> mergePolicy = Class.forName("NoteMerger$Policy");
+            Class<?> csvVerifier = Class.forName("CsvVerifier");
+            Class<?> verifierReport = Class.forName("CsvVerifier$Report");
+
+            NEW_CSV_STORAGE = lookup.findConstructor(csvStorage, MethodType.methodType(void.class, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            NEW_WRITE_BEHIND_CSV_STORAGE = lookup.findConstructor(csvStorage, MethodType.methodType(void.class, String.class, long.class, long.class))
+                    .asType(MethodType.methodType(Object.class, String.class, long.class, long.class));
+            NEW_BODY_CACHE_CSV_STORAGE = lookup.findConstructor(csvStorage, MethodType.methodType(void.class, String.class, long.class, long.class, long.class))
+                    .asType(MethodType.methodType(Object.class, String.class, long.class, long.class, long.class));
+            NEW_COLUMNAR_STORAGE = lookup.findConstructor(columnarStorage, MethodType.methodType(void.class, String.class, boolean.class))
+                    .asType(MethodType.methodType(Object.class, String.class, boolean.class));
+            WRITE_COLUMNAR = lookup.findStatic(columnarStorage, "write", MethodType.methodType(void.class, String.class, Stream.class));
+            STREAM_ALL = lookup.findVirtual(noteStorage, "stream", MethodType.methodType(Stream.class))
+                    .asType(MethodType.methodType(Stream.class, Object.class));
+            SAVE = lookup.findVirtual(csvStorage, "save", MethodType.methodType(void.class, Date.class, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Date.class, String.class));
+            SAVE_ALL = lookup.findVirtual(noteStorage, "saveAll", MethodType.methodType(void.class, Map.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Map.class));
+            MERGE = lookup.findVirtual(noteStorage, "merge", MethodType.methodType(mergeResult, File.class, mergePolicy, Consumer.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, File.class, Object.class, Consumer.class));
+            MERGE_POLICY = lookup.findStatic(mergePolicy, "valueOf", MethodType.methodType(mergePolicy, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            LOAD_ALL = lookup.findVirtual(csvStorage, "loadAll", MethodType.methodType(Map.class))
+                    .asType(MethodType.methodType(Map.class, Object.class));
+            GET_BY_DATE = lookup.findVirtual(noteStorage, "getByDate", MethodType.methodType(String.class, Date.class))
+                    .asType(MethodType.methodType(String.class, Object.class, Date.class));
+            GET_BY_PERIOD = lookup.findVirtual(csvStorage, "getByPeriod", MethodType.methodType(Map.class, Date.class, Date.class))
+                    .asType(MethodType.methodType(Map.class, Object.class, Date.class, Date.class));
+            GET_NEAREST_FUTURE_DATE = lookup.findVirtual(csvStorage, "getNearestFutureDate", MethodType.methodType(Map.Entry.class, Date.class))
+                    .asType(MethodType.methodType(Map.Entry.class, Object.class, Date.class));
+            NEW_HIGHLIGHT_EVALUATOR = lookup.findConstructor(highlightEvaluator, MethodType.methodType(void.class, Collection.class))
+                    .asType(MethodType.methodType(IDateEvaluator.class, Collection.class));
+            CSV_DECODE = lookup.findStatic(csvCodec, "decode", MethodType.methodType(String.class, ByteBuffer.class, int.class, int.class));
+            VERIFY = lookup.findStatic(csvVerifier, "verify", MethodType.methodType(verifierReport, File.class))
+                    .asType(MethodType.methodType(Object.class, File.class));
+            REPAIR = lookup.findStatic(csvVerifier, "repair", MethodType.methodType(verifierReport, File.class))
+                    .asType(MethodType.methodType(Object.class, File.class));
+            MIGRATE = lookup.findStatic(Class.forName("CsvMigrator"), "migrate",
+                    MethodType.methodType(boolean.class, File.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private App() {
+    }
+
+    static Object newCsvStorage(String fileName) {
+        try {
+            return (Object) NEW_CSV_STORAGE.invokeExact(fileName);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newWriteBehindCsvStorage(String fileName, long idleMillis, long maxDelayMillis) {
+        try {
+            return (Object) NEW_WRITE_BEHIND_CSV_STORAGE.invokeExact(fileName, idleMillis, maxDelayMillis);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newBodyCacheCsvStorage(String fileName, long bodyCacheBytes) {
+        try {
+            return (Object) NEW_BODY_CACHE_CSV_STORAGE.invokeExact(fileName, 0L, 0L, bodyCacheBytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newColumnarStorage(String fileName, boolean offHeap) {
+        try {
+            return (Object) NEW_COLUMNAR_STORAGE.invokeExact(fileName, offHeap);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Записывает все записи хранилища в новое колоночное хранилище.
+     *
+     * @param fileName имя файла колоночного хранилища
+     * @param source   исходное хранилище
+     */
+    static void writeColumnar(String fileName, Object source) {
+        try (Stream<?> entries = (Stream<?>) STREAM_ALL.invokeExact(source)) {
+            WRITE_COLUMNAR.invokeExact(fileName, entries);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void save(Object storage, Date date, String text) {
+        try {
+            SAVE.invokeExact(storage, date, text);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void saveAll(Object storage, Map<LocalDate, String> changes) {
+        try {
+            SAVE_ALL.invokeExact(storage, changes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Импортирует файл в хранилище.
+     *
+     * @param storage хранилище
+     * @param source  импортируемый файл
+     * @param policy  имя правила {@code NoteMerger.Policy}
+     * @return итог импорта
+     */
+    static Object merge(Object storage, File source, String policy) {
+        try {
+            Object mergePolicy = (Object) MERGE_POLICY.invokeExact(policy);
+            Consumer<Map<LocalDate, String>> ignore = changes -> { };
+            return (Object) MERGE.invokeExact(storage, source, mergePolicy, ignore);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Map<?, ?> loadAll(Object storage) {
+        try {
+            return (Map<?, ?>) LOAD_ALL.invokeExact(storage);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static String getByDate(Object storage, Date date) {
+        try {
+            return (String) GET_BY_DATE.invokeExact(storage, date);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Map<?, ?> getByPeriod(Object storage, Date from, Date to) {
+        try {
+            return (Map<?, ?>) GET_BY_PERIOD.invokeExact(storage, from, to);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Map.Entry<?, ?> getNearestFutureDate(Object storage, Date from) {
+        try {
+            return (Map.Entry<?, ?>) GET_NEAREST_FUTURE_DATE.invokeExact(storage, from);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static IDateEvaluator newHighlightEvaluator(Collection<String> dates) {
+        try {
+            return (IDateEvaluator) NEW_HIGHLIGHT_EVALUATOR.invokeExact(dates);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static String csvDecode(ByteBuffer source, int offset, int length) {
+        try {
+            return (String) CSV_DECODE.invokeExact(source, offset, length);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Проверяет целостность CSV-файла.
+     *
+     * @param file CSV-файл
+     * @return отчёт {@code CsvVerifier.Report}
+     */
+    static Object verify(File file) {
+        try {
+            return (Object) VERIFY.invokeExact(file);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Переписывает CSV-файл из корректных записей в текущем формате
+     * (с контрольными суммами).
+     *
+     * @param file CSV-файл
+     * @return отчёт {@code CsvVerifier.Report} о файле до восстановления
+     */
+    static Object repair(File file) {
+        try {
+            return (Object) REPAIR.invokeExact(file);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Переводит CSV-файл в текущую версию формата.
+     *
+     * @param file CSV-файл
+     * @return true, если файл переписан
+     */
+    static boolean migrate(File file) {
+        try {
+            return (boolean) MIGRATE.invokeExact(file);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение сохранения пачки заметок по одной ({@code save} на каждую дату,
+ * со сбросом журнала на диск каждый раз) и одной транзакцией ({@code saveAll})
+ * в {@code CsvStorage} на файле из 100 000 записей.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int FILE_SIZE = 100000;
+
+    @Param({"1000", "100000"})
+    public int batch;
+
+    private final List<Path> files = new ArrayList<>();
+    private Path file;
+    private Object storage;
+    private Map<LocalDate, String> changes;
+    private Date[] dates;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        file = DataGenerator.writableCopy(FILE_SIZE);
+        files.add(file);
+        storage = App.newCsvStorage(file.toString());
+        App.loadAll(storage);
+        changes = new LinkedHashMap<>();
+        dates = new Date[batch];
+        LocalDate day = DataGenerator.FIRST_DAY;
+        for (int i = 0; i < batch; i++) {
+            changes.put(day, "пачка " + i);
+            dates[i] = CsvStorageBenchmark.toDate(day);
+            day = day.plusDays(1);
+        }
+    }
+
+    /**
+     * Копии удаляются в конце, а не после каждой итерации: после пачки
+     * в фоне запускается сжатие журнала, которому нужен файл.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path copy : files) {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(Path.of(copy + ".journal"));
+            Files.deleteIfExists(Path.of(copy + ".lock"));
+            Files.deleteIfExists(Path.of(copy + ".idx"));
+        }
+    }
+
+    @Benchmark
+    public void saveOneByOne() {
+        int i = 0;
+        for (String text : changes.values()) {
+            App.save(storage, dates[i++], text);
+        }
+    }
+
+    @Benchmark
+    public void saveAll() {
+        App.saveAll(storage, changes);
+    }
+}
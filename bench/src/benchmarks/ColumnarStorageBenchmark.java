@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Бенчмарк поиска по дате в {@code ColumnarStorage}: тексты читаются
+ * из файла тела или из его копии вне кучи.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnarStorageBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private Path directory;
+    private Object storage;
+    private Date[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("reminder-bench-rmdb-");
+        String fileName = new File(directory.toFile(), "data.rmdb").getPath();
+        App.writeColumnar(fileName, App.newCsvStorage(DataGenerator.cached(size).getPath()));
+        storage = App.newColumnarStorage(fileName, offHeap);
+        queries = CsvStorageBenchmark.randomDates(size, QUERIES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public String getByDate() {
+        Date date = queries[next];
+        next = (next + 1) & (QUERIES - 1);
+        return App.getByDate(storage, date);
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный бенчмарк параллельного чтения {@code CsvStorage}.
+ * <p>
+ * Все потоки читают одно хранилище на одном файле. Пропускная способность
+ * в вариантах с 1, 2, 4 и всеми доступными потоками должна расти
+ * пропорционально числу потоков, пока их не больше, чем ядер:
+ * чтение не берёт блокировок. Группа {@code mixed} добавляет к читателям
+ * поток, непрерывно сохраняющий заметки, — чтение не должно
+ * останавливаться на время записи.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentStorageBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    /**
+     * Общее хранилище на временной копии файла.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedStorage extends CsvStorageBenchmark.WritableDataset {
+    }
+
+    private static Date randomQuery(SharedStorage storage) {
+        return storage.queries[ThreadLocalRandom.current().nextInt(QUERIES)];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String readers1(SharedStorage storage) {
+        return App.getByDate(storage.storage, randomQuery(storage));
+    }
+
+    @Benchmark
+    @Threads(2)
+    public String readers2(SharedStorage storage) {
+        return App.getByDate(storage.storage, randomQuery(storage));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String readers4(SharedStorage storage) {
+        return App.getByDate(storage.storage, randomQuery(storage));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String readersMax(SharedStorage storage) {
+        return App.getByDate(storage.storage, randomQuery(storage));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public String mixedRead(SharedStorage storage) {
+        return App.getByDate(storage.storage, randomQuery(storage));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite(SharedStorage storage) {
+        App.save(storage.storage, randomQuery(storage), "изменено");
+    }
+}
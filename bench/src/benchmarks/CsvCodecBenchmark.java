@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк декодирования текста заметки из CSV.
+ * <p>
+ * {@code decodeLegacy} повторяет прежний разбор строки журнала
+ * ({@code String.split} и {@code String.replace}), {@code decode} — разбор
+ * через {@code CsvCodec}. Выделение памяти сравнивается запуском
+ * с профилировщиком {@code -prof gc} (метрика {@code gc.alloc.rate.norm}).
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvCodecBenchmark {
+
+    /**
+     * Строка журнала с текстом заданной длины.
+     */
+    @Param({"16", "256"})
+    public int length;
+
+    private byte[] line;
+    private ByteBuffer buffer;
+    private int textOffset;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("Заметка на день\\n");
+        }
+        line = ("+;2025-12-07;" + text.substring(0, length)).getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.wrap(line);
+        textOffset = "+;2025-12-07;".length();
+    }
+
+    @Benchmark
+    public String decodeLegacy() {
+        String[] parts = new String(line, StandardCharsets.UTF_8).split(";", 3);
+        return parts[2].replace("\\n", "\n");
+    }
+
+    @Benchmark
+    public String decode() {
+        return App.csvDecode(buffer, textOffset, line.length - textOffset);
+    }
+}
@@ -0,0 +1,248 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки основных операций {@code CsvStorage} на файлах
+ * от тысячи до миллиона записей (см. {@link DataGenerator}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvStorageBenchmark {
+
+    /**
+     * Количество запросов, заранее подготовленных для одной итерации.
+     */
+    private static final int QUERIES = 1024;
+
+    /**
+     * Хранилище, открытое на общем файле только для чтения.
+     */
+    @State(Scope.Benchmark)
+    public static class Dataset {
+
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int size;
+
+        String fileName;
+        Object storage;
+        Date[] queries;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            fileName = DataGenerator.cached(size).getPath();
+            storage = App.newCsvStorage(fileName);
+            App.loadAll(storage);
+            queries = randomDates(size, QUERIES);
+        }
+
+        Date nextQuery() {
+            Date date = queries[next];
+            next = (next + 1) & (QUERIES - 1);
+            return date;
+        }
+    }
+
+    /**
+     * Хранилище, которое держит в памяти только даты, а тексты —
+     * в кэше на 1 МБ, так что большая часть запросов — промахи кэша.
+     */
+    @State(Scope.Benchmark)
+    public static class BodyCacheDataset extends Dataset {
+
+        @Override
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            fileName = DataGenerator.cached(size).getPath();
+            storage = App.newBodyCacheCsvStorage(fileName, 1 << 20);
+            App.loadAll(storage);
+            queries = randomDates(size, QUERIES);
+        }
+    }
+
+    /**
+     * Хранилище на временной копии файла, которую можно изменять.
+     */
+    @State(Scope.Benchmark)
+    public static class WritableDataset {
+
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int size;
+
+        Path file;
+        Object storage;
+        Date[] queries;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = DataGenerator.writableCopy(size);
+            storage = App.newCsvStorage(file.toString());
+            App.loadAll(storage);
+            queries = randomDates(size, QUERIES);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + ".journal"));
+            Files.deleteIfExists(Path.of(file + ".lock"));
+            Files.deleteIfExists(Path.of(file + ".idx"));
+        }
+    }
+
+    /**
+     * Хранилище с отложенной записью на временной копии файла.
+     */
+    @State(Scope.Benchmark)
+    public static class WriteBehindDataset extends WritableDataset {
+
+        @Override
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = DataGenerator.writableCopy(size);
+            storage = App.newWriteBehindCsvStorage(file.toString(), 3000, 30000);
+            App.loadAll(storage);
+            queries = randomDates(size, QUERIES);
+        }
+    }
+
+    /**
+     * Первое чтение: новое хранилище разбирает файл целиком.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public Map<?, ?> loadAllCold(Dataset dataset) {
+        return App.loadAll(App.newCsvStorage(dataset.fileName));
+    }
+
+    /**
+     * То же, что {@link #loadAllCold}, но общий {@code ForkJoinPool} ограничен
+     * одним потоком — для сравнения с параллельным разбором файла.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @Fork(value = 1, jvmArgsAppend = "-Djava.util.concurrent.ForkJoinPool.common.parallelism=1")
+    public Map<?, ?> loadAllColdOneThread(Dataset dataset) {
+        return loadAllCold(dataset);
+    }
+
+    /**
+     * Повторное чтение из уже загруженного индекса.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<?, ?> loadAllWarm(Dataset dataset) {
+        return App.loadAll(dataset.storage);
+    }
+
+    /**
+     * Поиск по дате в только что открытом хранилище: строка читается
+     * по разреженному индексу смещений, без разбора всего файла.
+     */
+    @Benchmark
+    public String getByDateCold(Dataset dataset) {
+        return App.getByDate(App.newCsvStorage(dataset.fileName), dataset.nextQuery());
+    }
+
+    @Benchmark
+    public String getByDate(Dataset dataset) {
+        return App.getByDate(dataset.storage, dataset.nextQuery());
+    }
+
+    /**
+     * Поиск по дате, когда тексты не хранятся в индексе, а читаются
+     * из отображённого файла через кэш ограниченного объёма.
+     */
+    @Benchmark
+    public String getByDateBodyCache(BodyCacheDataset dataset) {
+        return App.getByDate(dataset.storage, dataset.nextQuery());
+    }
+
+    /**
+     * Выборка за 30 дней, как при просмотре месяца.
+     */
+    @Benchmark
+    public void getByPeriod(Dataset dataset, Blackhole blackhole) {
+        Date from = dataset.nextQuery();
+        Date to = new Date(from.getTime() + TimeUnit.DAYS.toMillis(30));
+        Map<?, ?> period = App.getByPeriod(dataset.storage, from, to);
+        for (Object text : period.values()) {
+            blackhole.consume(text);
+        }
+    }
+
+    @Benchmark
+    public Map.Entry<?, ?> getNearestFutureDate(Dataset dataset) {
+        return App.getNearestFutureDate(dataset.storage, dataset.nextQuery());
+    }
+
+    /**
+     * Сохранение заметки на существующую дату
+     * (включая сброс журнала на диск и периодическое сжатие).
+     */
+    @Benchmark
+    public void save(WritableDataset dataset) {
+        Date date = dataset.queries[dataset.next];
+        dataset.next = (dataset.next + 1) & (QUERIES - 1);
+        App.save(dataset.storage, date, "изменено " + dataset.next);
+    }
+
+    /**
+     * Сохранение в режиме отложенной записи: журнал пишется пачкой
+     * раз в несколько секунд, а не на каждое сохранение.
+     */
+    @Benchmark
+    public void saveWriteBehind(WriteBehindDataset dataset) {
+        save(dataset);
+    }
+
+    /**
+     * Возвращает случайные даты в диапазоне сгенерированного файла.
+     *
+     * @param size  количество записей в файле
+     * @param count количество дат
+     * @return массив дат на начало дня
+     */
+    static Date[] randomDates(int size, int count) {
+        SplittableRandom random = new SplittableRandom(DataGenerator.SEED);
+        LocalDate first = DataGenerator.FIRST_DAY;
+        long span = DataGenerator.lastDay(size).toEpochDay() - first.toEpochDay() + 1;
+        Date[] dates = new Date[count];
+        for (int i = 0; i < count; i++) {
+            dates[i] = toDate(first.plusDays(random.nextLong(span)));
+        }
+        return dates;
+    }
+
+    /**
+     * Переводит дату в {@link Date} на начало дня в часовом поясе по умолчанию.
+     *
+     * @param day дата
+     * @return момент начала дня
+     */
+    static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,161 @@
+package benchmarks;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Генератор синтетических файлов {@code data.csv} для бенчмарков.
+ * <p>
+ * Записи идут по возрастанию дат начиная с {@link #FIRST_DAY} с шагом
+ * в один-два дня, тексты — случайные фразы на русском и английском,
+ * часть из них содержит экранированные переносы строк. Генерация
+ * детерминирована: одинаковый размер и зерно дают одинаковый файл.
+ * </p>
+ *
+ * Запуск из командной строки:
+ * <pre>
+ * java benchmarks.DataGenerator data.csv 100000
+ * </pre>
+ */
+public final class DataGenerator {
+
+    /**
+     * Первая дата в генерируемых файлах. Выбрана после перехода на
+     * григорианский календарь, чтобы {@link LocalDate} и
+     * {@link java.text.SimpleDateFormat} давали одинаковые ключи.
+     */
+    public static final LocalDate FIRST_DAY = LocalDate.of(1700, 1, 1);
+
+    /**
+     * Зерно генератора по умолчанию.
+     */
+    public static final long SEED = 42;
+
+    private static final String[] WORDS = {
+            "встреча", "позвонить", "купить", "отчёт", "день рождения", "врач", "оплатить",
+            "проект", "отпуск", "презентация", "meeting", "deadline", "review", "backup",
+            "release", "call", "invoice", "server", "ноутбук", "монитор", "клавиатура"
+    };
+
+    private DataGenerator() {
+    }
+
+    /**
+     * Точка входа: {@code DataGenerator <файл> <количество записей>}.
+     *
+     * @param args аргументы командной строки
+     * @throws IOException при ошибке записи
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Использование: DataGenerator <файл> <количество записей>");
+            System.exit(1);
+        }
+        LocalDate last = generate(new File(args[0]), Integer.parseInt(args[1]), SEED);
+        System.out.println("Записано " + args[1] + " записей по " + last + " в " + args[0]);
+    }
+
+    /**
+     * Записывает CSV-файл с указанным количеством записей.
+     *
+     * @param file  файл для записи
+     * @param count количество записей
+     * @param seed  зерно генератора
+     * @return дата последней записи
+     * @throws IOException при ошибке записи
+     */
+    public static LocalDate generate(File file, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        LocalDate day = FIRST_DAY;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write("date;text\n");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    day = day.plusDays(1 + random.nextInt(2));
+                }
+                writer.write(day.toString());
+                writer.write(';');
+                writer.write(randomText(random));
+                writer.write('\n');
+            }
+        }
+        return day;
+    }
+
+    /**
+     * Возвращает закэшированный во временной папке файл указанного размера,
+     * генерируя его при первом обращении.
+     *
+     * @param count количество записей
+     * @return файл с данными
+     * @throws IOException при ошибке записи
+     */
+    public static File cached(int count) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "reminder-bench-" + count + ".csv");
+        if (!file.exists()) {
+            File temp = File.createTempFile("reminder-bench-", ".tmp", file.getParentFile());
+            generate(temp, count, SEED);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Копирует закэшированный файл во временную копию, которую бенчмарк
+     * может изменять.
+     *
+     * @param count количество записей
+     * @return путь к копии
+     * @throws IOException при ошибке копирования
+     */
+    public static Path writableCopy(int count) throws IOException {
+        Path copy = Files.createTempFile("reminder-bench-rw-", ".csv");
+        Files.copy(cached(count).toPath(), copy, StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    /**
+     * Возвращает дату последней записи в файле указанного размера
+     * (повторяет последовательность шагов {@link #generate}).
+     *
+     * @param count количество записей
+     * @return дата последней записи
+     */
+    public static LocalDate lastDay(int count) {
+        Random random = new Random(SEED);
+        LocalDate day = FIRST_DAY;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                day = day.plusDays(1 + random.nextInt(2));
+            }
+            randomText(random);
+        }
+        return day;
+    }
+
+    /**
+     * Собирает случайный текст заметки из 1–8 слов;
+     * примерно каждая пятая заметка многострочная.
+     *
+     * @param random генератор
+     * @return текст, экранированный для CSV
+     */
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 1 + random.nextInt(8);
+        boolean multiline = random.nextInt(5) == 0;
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(multiline && i % 3 == 0 ? "\\n" : " ");
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
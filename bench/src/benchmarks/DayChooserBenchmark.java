@@ -0,0 +1,84 @@
+package benchmarks;
+
+import com.toedter.calendar.IDateEvaluator;
+import com.toedter.calendar.JDayChooser;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк отрисовки месяца в {@link JDayChooser} с подсветкой дат.
+ * Запускается без графической среды ({@code java.awt.headless=true}):
+ * кнопки дней создаются и настраиваются, но не выводятся на экран.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DayChooserBenchmark {
+
+    /**
+     * Наследник, открывающий защищённые методы календаря для бенчмарка.
+     */
+    static class BenchDayChooser extends JDayChooser {
+        private static final long serialVersionUID = 1L;
+
+        void redraw() {
+            drawDays();
+        }
+
+        void clearDecorations() {
+            decorationCache.clear();
+        }
+    }
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private BenchDayChooser chooser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("java.awt.headless", "true");
+
+        List<String> dates = new ArrayList<>(size);
+        LocalDate day = DataGenerator.FIRST_DAY;
+        for (int i = 0; i < size; i++) {
+            dates.add(day.toString());
+            day = day.plusDays(1 + (i & 1));
+        }
+        IDateEvaluator evaluator = App.newHighlightEvaluator(dates);
+
+        chooser = new BenchDayChooser();
+        chooser.addDateEvaluator(evaluator);
+
+        // месяц в середине диапазона подсвеченных дат
+        LocalDate middle = DataGenerator.FIRST_DAY.plusDays((day.toEpochDay() - DataGenerator.FIRST_DAY.toEpochDay()) / 2);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(CsvStorageBenchmark.toDate(middle));
+        chooser.setCalendar(calendar);
+    }
+
+    /**
+     * Повторная отрисовка уже показанного месяца (оформление берётся из кэша).
+     */
+    @Benchmark
+    public void drawDaysCached() {
+        chooser.redraw();
+    }
+
+    /**
+     * Отрисовка после сброса кэша оформления, как после сохранения заметки.
+     */
+    @Benchmark
+    public void drawDaysInvalidated() {
+        chooser.clearDecorations();
+        chooser.redraw();
+    }
+}
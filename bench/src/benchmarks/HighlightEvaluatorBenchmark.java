@@ -0,0 +1,50 @@
+package benchmarks;
+
+import com.toedter.calendar.IDateEvaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк проверки подсветки даты в {@code HighlightEvaluator}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HighlightEvaluatorBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private IDateEvaluator evaluator;
+    private Date[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> dates = new ArrayList<>(size);
+        LocalDate day = DataGenerator.FIRST_DAY;
+        for (int i = 0; i < size; i++) {
+            dates.add(day.toString());
+            day = day.plusDays(1 + (i & 1));
+        }
+        evaluator = App.newHighlightEvaluator(dates);
+        queries = CsvStorageBenchmark.randomDates(size, QUERIES);
+    }
+
+    @Benchmark
+    public boolean isSpecial() {
+        Date date = queries[next];
+        next = (next + 1) & (QUERIES - 1);
+        return evaluator.isSpecial(date);
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка целостности {@code data.csv}, которая выполняется при каждом
+ * запуске приложения: файл с контрольными суммами записей и файл прежнего
+ * формата, где проверяется только структура строк.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntegrityBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private File plain;
+    private Path checksummed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        plain = DataGenerator.cached(size);
+        checksummed = DataGenerator.writableCopy(size);
+        App.repair(checksummed.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(checksummed);
+        Files.deleteIfExists(Path.of(checksummed + ".lock"));
+    }
+
+    @Benchmark
+    public Object verify() {
+        return App.verify(checksummed.toFile());
+    }
+
+    @Benchmark
+    public Object verifyPlain() {
+        return App.verify(plain);
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Импорт второго календаря того же размера в {@code CsvStorage}
+ * сортированным слиянием. Даты календарей совпадают примерно наполовину.
+ * Куча ограничена 256 МБ: импорт двух архивов по миллиону записей
+ * не должен загружать в память ни один из них.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"KEEP_MINE", "CONCATENATE"})
+    public String policy;
+
+    private final List<Path> files = new ArrayList<>();
+    private File theirs;
+    private Object storage;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        theirs = File.createTempFile("reminder-bench-theirs-", ".csv");
+        DataGenerator.generate(theirs, size, DataGenerator.SEED + 1);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        Path file = DataGenerator.writableCopy(size);
+        files.add(file);
+        storage = App.newCsvStorage(file.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path copy : files) {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(Path.of(copy + ".journal"));
+            Files.deleteIfExists(Path.of(copy + ".lock"));
+            Files.deleteIfExists(Path.of(copy + ".idx"));
+        }
+        Files.deleteIfExists(theirs.toPath());
+    }
+
+    @Benchmark
+    public Object merge() {
+        return App.merge(storage, theirs, policy);
+    }
+}
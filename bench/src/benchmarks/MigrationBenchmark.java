@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перевод {@code data.csv} версии 1 ({@code date;text}) в текущую версию
+ * формата одним проходом. Куча ограничена 64 МБ: миграция не должна
+ * загружать файл в память. Открытие файла прежней версии без миграции
+ * измеряет {@code CsvStorageBenchmark.getByDateCold}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+@State(Scope.Benchmark)
+public class MigrationBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private final List<Path> files = new ArrayList<>();
+    private File legacy;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        Path file = DataGenerator.writableCopy(size);
+        files.add(file);
+        legacy = file.toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path copy : files) {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(Path.of(copy + ".lock"));
+            Files.deleteIfExists(Path.of(copy + ".rejected"));
+        }
+    }
+
+    @Benchmark
+    public boolean migrate() {
+        return App.migrate(legacy);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (C) 2011 Kai Toedter 
+ *  kai@toedter.com
+ *  www.toedter.com
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package com.toedter.calendar;
+
+import java.util.Date;
+
+/**
+ * Optional extension of {@link IDateEvaluator} that evaluates a whole month in
+ * one call. JDayChooser uses it instead of calling isSpecial and isInvalid for
+ * every single day, so evaluators backed by a date index can answer with one
+ * range query instead of up to 31 point lookups.
+ */
+public interface IMonthDateEvaluator extends IDateEvaluator {
+	/**
+	 * Flag: the day is special (see {@link IDateEvaluator#isSpecial(Date)}).
+	 */
+	int SPECIAL = 1;
+
+	/**
+	 * Flag: the day is invalid (see {@link IDateEvaluator#isInvalid(Date)}).
+	 */
+	int INVALID = 2;
+
+	/**
+	 * Evaluates all days of a month.
+	 * 
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month (0 based, as in Calendar.MONTH)
+	 * @param firstDay
+	 *            the first day of the month, 00:00 local time
+	 * @param dayCount
+	 *            the number of days in the month
+	 * @return an array of length dayCount; element i holds the SPECIAL and
+	 *         INVALID flags of day i + 1
+	 */
+	int[] evaluateMonth(int year, int month, Date firstDay, int dayCount);
+}
@@ -37,9 +37,10 @@ import java.text.DateFormatSymbols;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -105,6 +106,20 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 	
 	protected MinMaxDateEvaluator minMaxDateEvaluator;
 
+	/**
+	 * Cached decorations of the recently shown months, see
+	 * {@link #getDecorations(Calendar)}.
+	 */
+	protected Map decorationCache = new LinkedHashMap(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAX_CACHED_MONTHS;
+		}
+	};
+
+	private static final int MAX_CACHED_MONTHS = 24;
+
 	/**
 	 * Default JDayChooser constructor.
 	 */
@@ -338,6 +353,8 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 		int n = 0;
 		Color foregroundColor = getForeground();
 
+		MonthDecorations decorations = getDecorations(tmpCalendar);
+
 		while (day.before(firstDayInNextMonth)) {
 			days[i + n + 7].setText(Integer.toString(n + 1));
 			days[i + n + 7].setVisible(true);
@@ -358,26 +375,14 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 				days[i + n + 7].setBackground(oldDayBackgroundColor);
 			}
 
-			Iterator iterator = dateEvaluators.iterator(); 
-			days[i + n + 7].setEnabled(true);
-			while (iterator.hasNext()) {
-				IDateEvaluator dateEvaluator = (IDateEvaluator) iterator.next();
-				if (dateEvaluator.isSpecial(day)) {
-					days[i + n + 7].setForeground(dateEvaluator
-							.getSpecialForegroundColor());
-					days[i + n + 7].setBackground(dateEvaluator
-							.getSpecialBackroundColor());
-					days[i + n + 7].setToolTipText(dateEvaluator.getSpecialTooltip());
-					days[i + n + 7].setEnabled(true);
-				} 
-				if (dateEvaluator.isInvalid(day)){
-					days[i + n + 7].setForeground(dateEvaluator
-							.getInvalidForegroundColor());
-					days[i + n + 7].setBackground(dateEvaluator
-							.getInvalidBackroundColor());
-					days[i + n + 7].setToolTipText(dateEvaluator.getInvalidTooltip());
-					days[i + n + 7].setEnabled(false);
-				}
+			if (decorations.decorated[n]) {
+				days[i + n + 7].setForeground(decorations.foregrounds[n]);
+				days[i + n + 7].setBackground(decorations.backgrounds[n]);
+				days[i + n + 7].setToolTipText(decorations.tooltips[n]);
+				days[i + n + 7].setEnabled(decorations.enabled[n]);
+			} else {
+				days[i + n + 7].setToolTipText(null);
+				days[i + n + 7].setEnabled(true);
 			}
 
 			n++;
@@ -393,6 +398,141 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 		drawWeeks();
 	}
 
+	/**
+	 * Returns the decorations computed by the date evaluators for the month of
+	 * the given calendar. Decorations are cached per year, month and locale,
+	 * so paging back and forth between months does not query the evaluators
+	 * again until the cache is invalidated.
+	 * 
+	 * @param firstDay
+	 *            calendar set to the first day of the month, 00:00; not
+	 *            modified
+	 * @return the decorations of the month
+	 * 
+	 * @see #invalidateDecorations()
+	 * @see #invalidateDecorations(Date)
+	 */
+	protected MonthDecorations getDecorations(Calendar firstDay) {
+		String key = decorationKey(firstDay.get(Calendar.YEAR), firstDay
+				.get(Calendar.MONTH));
+		MonthDecorations decorations = (MonthDecorations) decorationCache
+				.get(key);
+		if (decorations != null) {
+			return decorations;
+		}
+
+		int dayCount = firstDay.getActualMaximum(Calendar.DAY_OF_MONTH);
+		IDateEvaluator[] evaluators = (IDateEvaluator[]) dateEvaluators
+				.toArray(new IDateEvaluator[dateEvaluators.size()]);
+		int[][] evaluations = new int[evaluators.length][];
+		for (int e = 0; e < evaluators.length; e++) {
+			evaluations[e] = evaluateMonth(evaluators[e], firstDay, dayCount);
+		}
+
+		decorations = new MonthDecorations(dayCount);
+		for (int n = 0; n < dayCount; n++) {
+			for (int e = 0; e < evaluators.length; e++) {
+				IDateEvaluator dateEvaluator = evaluators[e];
+				int flags = evaluations[e][n];
+				if ((flags & IMonthDateEvaluator.SPECIAL) != 0) {
+					decorations.decorated[n] = true;
+					decorations.foregrounds[n] = dateEvaluator
+							.getSpecialForegroundColor();
+					decorations.backgrounds[n] = dateEvaluator
+							.getSpecialBackroundColor();
+					decorations.tooltips[n] = dateEvaluator.getSpecialTooltip();
+					decorations.enabled[n] = true;
+				}
+				if ((flags & IMonthDateEvaluator.INVALID) != 0) {
+					decorations.decorated[n] = true;
+					decorations.foregrounds[n] = dateEvaluator
+							.getInvalidForegroundColor();
+					decorations.backgrounds[n] = dateEvaluator
+							.getInvalidBackroundColor();
+					decorations.tooltips[n] = dateEvaluator.getInvalidTooltip();
+					decorations.enabled[n] = false;
+				}
+			}
+		}
+		decorationCache.put(key, decorations);
+		return decorations;
+	}
+
+	/**
+	 * Drops all cached decorations and redraws the days. Must be called when
+	 * the answers of a date evaluator change.
+	 */
+	public void invalidateDecorations() {
+		decorationCache.clear();
+		if (initialized) {
+			drawDays();
+		}
+	}
+
+	/**
+	 * Drops the cached decorations of the month containing the given date and
+	 * redraws the days if that month is shown. Must be called when the answer
+	 * of a date evaluator changes for this date only.
+	 * 
+	 * @param date
+	 *            the date whose decorations changed
+	 */
+	public void invalidateDecorations(Date date) {
+		Calendar tmpCalendar = (Calendar) calendar.clone();
+		tmpCalendar.setTime(date);
+		int year = tmpCalendar.get(Calendar.YEAR);
+		int month = tmpCalendar.get(Calendar.MONTH);
+		decorationCache.remove(decorationKey(year, month));
+		if (initialized && year == calendar.get(Calendar.YEAR)
+				&& month == calendar.get(Calendar.MONTH)) {
+			drawDays();
+		}
+	}
+
+	private String decorationKey(int year, int month) {
+		return year + "-" + month + "-" + locale;
+	}
+
+	/**
+	 * Evaluates all days of a month with the given evaluator. Evaluators
+	 * implementing IMonthDateEvaluator are asked once for the whole month,
+	 * all others are asked day by day.
+	 * 
+	 * @param dateEvaluator
+	 *            the evaluator
+	 * @param firstDay
+	 *            calendar set to the first day of the month, 00:00; not
+	 *            modified
+	 * @param dayCount
+	 *            the number of days in the month
+	 * @return the SPECIAL and INVALID flags of every day of the month
+	 */
+	protected int[] evaluateMonth(IDateEvaluator dateEvaluator,
+			Calendar firstDay, int dayCount) {
+		if (dateEvaluator instanceof IMonthDateEvaluator) {
+			int[] flags = ((IMonthDateEvaluator) dateEvaluator).evaluateMonth(
+					firstDay.get(Calendar.YEAR), firstDay.get(Calendar.MONTH),
+					firstDay.getTime(), dayCount);
+			if (flags != null && flags.length >= dayCount) {
+				return flags;
+			}
+		}
+
+		int[] flags = new int[dayCount];
+		Calendar tmpCalendar = (Calendar) firstDay.clone();
+		for (int n = 0; n < dayCount; n++) {
+			Date day = tmpCalendar.getTime();
+			if (dateEvaluator.isSpecial(day)) {
+				flags[n] |= IMonthDateEvaluator.SPECIAL;
+			}
+			if (dateEvaluator.isInvalid(day)) {
+				flags[n] |= IMonthDateEvaluator.INVALID;
+			}
+			tmpCalendar.add(Calendar.DATE, 1);
+		}
+		return flags;
+	}
+
 	/**
 	 * Returns the locale.
 	 * 
@@ -897,6 +1037,7 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 	public void setSelectableDateRange(Date min, Date max) {
 		minMaxDateEvaluator.setMaxSelectableDate(max);
 		minMaxDateEvaluator.setMinSelectableDate(min);
+		decorationCache.clear();
 		drawDays();
 	}
 
@@ -911,6 +1052,7 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 	 */
 	public Date setMaxSelectableDate(Date max) {
 		Date maxSelectableDate = minMaxDateEvaluator.setMaxSelectableDate(max);
+		decorationCache.clear();
 		drawDays();
 		return maxSelectableDate;
 	}
@@ -926,6 +1068,7 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 	 */
 	public Date setMinSelectableDate(Date min) {
 		Date minSelectableDate = minMaxDateEvaluator.setMinSelectableDate(min);
+		decorationCache.clear();
 		drawDays();
 		return minSelectableDate;
 	}
@@ -1033,9 +1176,35 @@ public class JDayChooser extends JPanel implements ActionListener, KeyListener,
 
 	public void addDateEvaluator(IDateEvaluator dateEvaluator) {
 		dateEvaluators.add(dateEvaluator);
+		decorationCache.clear();
 	}
 
 	public void removeDateEvaluator(IDateEvaluator dateEvaluator) {
 		dateEvaluators.remove(dateEvaluator);
+		decorationCache.clear();
+	}
+
+	/**
+	 * Decorations computed by the date evaluators for the days of one month.
+	 * Element n of each array describes day n + 1.
+	 */
+	protected static class MonthDecorations {
+		protected final boolean[] decorated;
+
+		protected final Color[] foregrounds;
+
+		protected final Color[] backgrounds;
+
+		protected final String[] tooltips;
+
+		protected final boolean[] enabled;
+
+		protected MonthDecorations(int dayCount) {
+			decorated = new boolean[dayCount];
+			foregrounds = new Color[dayCount];
+			backgrounds = new Color[dayCount];
+			tooltips = new String[dayCount];
+			enabled = new boolean[dayCount];
+		}
 	}
 }
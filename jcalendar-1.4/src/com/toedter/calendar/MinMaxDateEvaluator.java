@@ -1,9 +1,10 @@
 package com.toedter.calendar;
 
 import java.awt.Color;
+import java.util.Calendar;
 import java.util.Date;
 
-public class MinMaxDateEvaluator implements IDateEvaluator {
+public class MinMaxDateEvaluator implements IMonthDateEvaluator {
 
 	private DateUtil dateUtil = new DateUtil();
 	
@@ -27,6 +28,38 @@ public class MinMaxDateEvaluator implements IDateEvaluator {
 		return !dateUtil.checkDate(date);
 	}
 
+	/**
+	 * Marks the days of the month outside the selectable range as invalid.
+	 * The range bounds are normalized once, then each day is checked with a
+	 * single comparison.
+	 */
+	public int[] evaluateMonth(int year, int month, Date firstDay, int dayCount) {
+		long min = startOfDay(dateUtil.getMinSelectableDate());
+		long max = startOfDay(dateUtil.getMaxSelectableDate());
+
+		int[] flags = new int[dayCount];
+		Calendar tmpCalendar = Calendar.getInstance();
+		tmpCalendar.setTime(firstDay);
+		for (int n = 0; n < dayCount; n++) {
+			long day = tmpCalendar.getTimeInMillis();
+			if (day < min || day > max) {
+				flags[n] = INVALID;
+			}
+			tmpCalendar.add(Calendar.DATE, 1);
+		}
+		return flags;
+	}
+
+	private static long startOfDay(Date date) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTimeInMillis();
+	}
+
 	public Color getInvalidForegroundColor() {
 		return null;
 	}
@@ -0,0 +1,165 @@
+import javax.swing.*;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Асинхронная обёртка над {@link NoteStorage}, выносящая файловый ввод-вывод
+ * из потока обработки событий Swing (EDT).
+ * <p>
+ * Все операции выполняются в одном выделенном потоке ввода-вывода (виртуальном,
+ * если JVM их поддерживает) строго в порядке отправки, поэтому чтение,
+ * запрошенное после сохранения, всегда видит сохранённые данные. Результаты
+ * возвращаются как {@link CompletableFuture} и передаются в EDT через
+ * {@link #onEdt(CompletableFuture, Consumer, Consumer)}.
+ * </p>
+ * <p>
+ * Для частых запросов одного вида (например, загрузки заметки при быстром
+ * переключении дат) используется {@link #submitLatest(String, Function)}:
+ * новый запрос отменяет ещё не выполненный предыдущий запрос того же канала,
+ * так что в очереди не копятся устаревшие загрузки.
+ * </p>
+ */
+public class AsyncStorage {
+
+    /**
+     * Общий поток ввода-вывода приложения.
+     */
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(ioThreadFactory());
+
+    /**
+     * Оборачиваемое хранилище.
+     */
+    private final NoteStorage storage;
+
+    /**
+     * Последний отправленный запрос каждого канала.
+     */
+    private final Map<String, CompletableFuture<?>> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор.
+     *
+     * @param storage хранилище, к которому выполняются запросы
+     */
+    public AsyncStorage(NoteStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Возвращает оборачиваемое хранилище.
+     *
+     * @return хранилище
+     */
+    public NoteStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Выполняет операцию с хранилищем в потоке ввода-вывода.
+     *
+     * @param task операция
+     * @param <T>  тип результата
+     * @return результат операции
+     */
+    public <T> CompletableFuture<T> submit(Function<NoteStorage, T> task) {
+        return run(() -> task.apply(storage));
+    }
+
+    /**
+     * Выполняет операцию с хранилищем в потоке ввода-вывода, отменяя
+     * предыдущий запрос того же канала, если он ещё не начал выполняться.
+     *
+     * @param channel имя канала (например, {@code "load"})
+     * @param task    операция
+     * @param <T>     тип результата
+     * @return результат операции; завершается {@link CancellationException},
+     *         если запрос был вытеснен более новым
+     */
+    public <T> CompletableFuture<T> submitLatest(String channel, Function<NoteStorage, T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<?> previous = latest.put(channel, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+
+        IO_EXECUTOR.execute(() -> {
+            if (future.isDone()) {
+                return; // вытеснен более новым запросом
+            }
+            try {
+                future.complete(task.apply(storage));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                latest.remove(channel, future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Выполняет произвольную задачу ввода-вывода (например, экспорт в другой файл)
+     * в общем потоке ввода-вывода, после всех ранее отправленных операций.
+     *
+     * @param task задача
+     * @param <T>  тип результата
+     * @return результат задачи
+     */
+    public static <T> CompletableFuture<T> run(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        IO_EXECUTOR.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Передаёт результат асинхронной операции в EDT.
+     * Отменённые (вытесненные) запросы молча пропускаются.
+     *
+     * @param future    асинхронная операция
+     * @param onSuccess обработчик результата (вызывается в EDT)
+     * @param onError   обработчик ошибки (вызывается в EDT)
+     * @param <T>       тип результата
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                onSuccess.accept(result);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (!(cause instanceof CancellationException)) {
+                onError.accept(cause);
+            }
+        }));
+    }
+
+    /**
+     * Создаёт фабрику потока ввода-вывода: виртуальный поток, если JVM их
+     * поддерживает (Java 21+), иначе обычный поток-демон.
+     *
+     * @return фабрика потоков
+     */
+    private static ThreadFactory ioThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class).invoke(builder, "storage-io");
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return r -> {
+                Thread thread = new Thread(r, "storage-io");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+}
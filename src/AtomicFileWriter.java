@@ -0,0 +1,177 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Вспомогательный класс для атомарной записи файлов.
+ * <p>
+ * Содержимое сначала записывается во временный файл в той же папке,
+ * сбрасывается на диск через {@link FileChannel#force(boolean)} и только
+ * затем одним переименованием заменяет целевой файл. Читатели видят либо
+ * старую, либо новую версию файла целиком — но никогда не наполовину
+ * записанную, даже при сбое питания во время записи.
+ * Текст записывается в кодировке UTF-8.
+ * </p>
+ *
+ * Используется в {@link CsvStorage} и при экспорте через меню "Сохранить как".
+ */
+public final class AtomicFileWriter {
+
+    /**
+     * Содержимое, записываемое в файл.
+     */
+    @FunctionalInterface
+    public interface Content {
+
+        /**
+         * Записывает содержимое файла.
+         *
+         * @param writer поток записи во временный файл
+         * @throws IOException при ошибке записи
+         */
+        void writeTo(PrintWriter writer) throws IOException;
+    }
+
+    /**
+     * Двоичное содержимое, записываемое в файл.
+     */
+    @FunctionalInterface
+    public interface BinaryContent {
+
+        /**
+         * Записывает содержимое файла.
+         *
+         * @param out поток записи во временный файл
+         * @throws IOException при ошибке записи
+         */
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * Атомарно заменяет содержимое файла.
+     *
+     * @param target  целевой файл
+     * @param content содержимое для записи
+     * @throws IOException если запись или замена файла не удалась;
+     *                     в этом случае целевой файл остаётся прежним
+     */
+    public static void write(File target, Content content) throws IOException {
+        replace(target, channel -> {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            content.writeTo(writer);
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Ошибка записи во временный файл " + target);
+            }
+        });
+    }
+
+    /**
+     * Атомарно заменяет содержимое двоичного файла.
+     *
+     * @param target  целевой файл
+     * @param content содержимое для записи
+     * @throws IOException если запись или замена файла не удалась;
+     *                     в этом случае целевой файл остаётся прежним
+     */
+    public static void writeBinary(File target, BinaryContent content) throws IOException {
+        replace(target, channel -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            content.writeTo(out);
+            out.flush();
+        });
+    }
+
+    /**
+     * Записывает временный файл, сбрасывает его на диск и переименовывает в целевой.
+     *
+     * @param target целевой файл
+     * @param body   запись содержимого в канал временного файла
+     * @throws IOException если запись или замена файла не удалась
+     */
+    private static void replace(File target, ChannelBody body) throws IOException {
+        Path targetPath = target.toPath().toAbsolutePath();
+        Path dir = targetPath.getParent();
+        Path temp = createTemp(dir, targetPath.getFileName().toString());
+
+        try {
+            copyPermissions(targetPath, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                body.writeTo(channel);
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        syncDirectory(dir);
+    }
+
+    /**
+     * Создаёт временный файл с уникальным именем. В отличие от
+     * {@link Files#createTempFile}, права доступа задаются обычной маской
+     * процесса, а не только для владельца: файл данных может использоваться
+     * несколькими пользователями.
+     *
+     * @param dir    каталог
+     * @param prefix начало имени файла
+     * @return путь к созданному файлу
+     * @throws IOException если файл не удалось создать
+     */
+    private static Path createTemp(Path dir, String prefix) throws IOException {
+        while (true) {
+            Path temp = dir.resolve(prefix + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException ignored) {
+                // имя занято — пробуем другое
+            }
+        }
+    }
+
+    /**
+     * Переносит права доступа заменяемого файла на временный файл,
+     * чтобы замена не меняла права (на системах без POSIX-прав ничего не делает).
+     *
+     * @param target заменяемый файл
+     * @param temp   временный файл
+     */
+    private static void copyPermissions(Path target, Path temp) {
+        try {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        } catch (UnsupportedOperationException | IOException ignored) {
+            // файла ещё нет или права не поддерживаются
+        }
+    }
+
+    /**
+     * Запись содержимого в открытый канал временного файла.
+     */
+    @FunctionalInterface
+    private interface ChannelBody {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Сбрасывает на диск запись каталога, чтобы переименование пережило сбой питания.
+     * На системах, где каталог нельзя открыть как файл (Windows), ничего не делает.
+     *
+     * @param dir каталог
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,567 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Двоичное колоночное хранилище заметок — альтернатива {@link CsvStorage}
+ * для больших календарей.
+ * <p>
+ * Хранилище состоит из двух файлов:
+ * <ul>
+ *     <li>{@code <имя>.rmdb} — индекс: даты в виде номеров дней от эпохи
+ *     ({@code int}), отсортированные по возрастанию, и для каждой даты
+ *     смещение и длина текста в файле тела;</li>
+ *     <li>{@code <имя>.rmdb.<поколение>.blob} — тексты заметок в UTF-8,
+ *     записанные подряд.</li>
+ * </ul>
+ * Индекс целиком хранится в памяти в трёх примитивных массивах, поэтому поиск
+ * по дате, периоду и ближайшей дате выполняется двоичным поиском, а тексты
+ * читаются с диска только по запросу.
+ * </p>
+ * <p>
+ * При сохранении текст дописывается в конец файла тела, после чего индекс
+ * атомарно переписывается через {@link AtomicFileWriter}. Место, занятое
+ * устаревшими текстами, освобождается, когда их становится больше, чем живых:
+ * живые тексты переписываются в файл тела следующего поколения, и только после
+ * этого индекс переключается на него. Поэтому при сбое в любой момент индекс
+ * указывает на целый файл тела.
+ * </p>
+ * <p>
+ * Хранилище, открытое с копией тела вне кучи (см.
+ * {@link #ColumnarStorage(String, boolean)}), при загрузке читает файл тела
+ * в {@link OffHeapBlob} и дальше отдаёт тексты из неё, не обращаясь к диску.
+ * Сохранённые тексты дописываются и в файл, и в копию. На куче при этом
+ * остаются только массивы индекса, так что нагрузка на сборщик мусора
+ * не зависит от объёма текстов.
+ * </p>
+ *
+ * Формат индекса:
+ * <pre>
+ * int  MAGIC
+ * int  VERSION
+ * int  generation
+ * int  count
+ * count × (int epochDay, long offset, int length)
+ * </pre>
+ */
+public class ColumnarStorage implements NoteStorage {
+
+    /**
+     * Расширение файла колоночного хранилища.
+     */
+    public static final String EXTENSION = ".rmdb";
+
+    /**
+     * Сигнатура файла индекса ("RMDB").
+     */
+    private static final int MAGIC = 0x524D4442;
+
+    /**
+     * Версия формата индекса.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Размер файла тела, до которого мусор не собирается.
+     */
+    private static final long MIN_COMPACT_SIZE = 1 << 20;
+
+    /**
+     * Имя файла индекса.
+     */
+    private final String fileName;
+
+    /**
+     * Поколение файла с текстами заметок.
+     */
+    private int generation;
+
+    /**
+     * Номера дней от эпохи, отсортированные по возрастанию.
+     */
+    private int[] days = new int[0];
+
+    /**
+     * Смещения текстов в файле тела.
+     */
+    private long[] offsets = new long[0];
+
+    /**
+     * Длины текстов в байтах.
+     */
+    private int[] lengths = new int[0];
+
+    /**
+     * Количество записей.
+     */
+    private int size;
+
+    /**
+     * Суммарный размер живых текстов в байтах.
+     */
+    private long liveBytes;
+
+    /**
+     * Держать ли копию файла тела вне кучи.
+     */
+    private final boolean offHeap;
+
+    /**
+     * Копия файла тела вне кучи; {@code null} — тексты читаются с диска.
+     */
+    private OffHeapBlob blob;
+
+    /**
+     * Конструктор. Загружает индекс; если файлов хранилища нет, создаёт пустое хранилище.
+     *
+     * @param fileName имя файла индекса
+     */
+    public ColumnarStorage(String fileName) {
+        this(fileName, false);
+    }
+
+    /**
+     * Конструктор. Загружает индекс; если файлов хранилища нет, создаёт пустое хранилище.
+     *
+     * @param fileName имя файла индекса
+     * @param offHeap  {@code true} — загрузить тексты в копию вне кучи и читать их оттуда
+     */
+    public ColumnarStorage(String fileName, boolean offHeap) {
+        this.fileName = fileName;
+        this.offHeap = offHeap;
+        if (new File(fileName).exists()) {
+            loadIndex();
+        } else {
+            writeIndex();
+            if (offHeap) {
+                blob = new OffHeapBlob();
+            }
+        }
+    }
+
+    /**
+     * Создаёт колоночное хранилище из потока записей
+     * (используется для импорта CSV и экспорта в формат {@code .rmdb}).
+     * Тексты пишутся в файл тела по мере чтения потока, в памяти
+     * накапливается только индекс. Записи с некорректными ключами и
+     * записи, нарушающие порядок дат, пропускаются.
+     * Существующее хранилище с тем же именем заменяется.
+     *
+     * @param fileName имя файла индекса
+     * @param entries  записи в порядке дат
+     * @throws IOException при ошибке записи
+     */
+    public static void write(String fileName, Stream<NoteEntry> entries) throws IOException {
+        IndexBuilder index = new IndexBuilder();
+        int oldGeneration = readGeneration(fileName);
+        int newGeneration = oldGeneration + 1;
+        AtomicFileWriter.writeBinary(blobFile(fileName, newGeneration), out -> {
+            long offset = 0;
+            Iterator<NoteEntry> it = entries.iterator();
+            while (it.hasNext()) {
+                NoteEntry entry = it.next();
+                int day = (int) entry.getDay().toEpochDay();
+                if (index.size > 0 && day <= index.days[index.size - 1]) {
+                    continue;
+                }
+                byte[] bytes = entry.getText().getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                index.add(day, offset, bytes.length);
+                offset += bytes.length;
+            }
+        });
+        writeIndex(new File(fileName), newGeneration, index.days, index.offsets, index.lengths, index.size);
+        if (oldGeneration >= 0) {
+            blobFile(fileName, oldGeneration).delete();
+        }
+    }
+
+    /**
+     * Возвращает файл с текстами заметок указанного поколения.
+     *
+     * @param fileName   имя файла индекса
+     * @param generation поколение
+     * @return файл тела
+     */
+    private static File blobFile(String fileName, int generation) {
+        return new File(fileName + "." + generation + ".blob");
+    }
+
+    /**
+     * Читает поколение файла тела из заголовка индекса.
+     *
+     * @param fileName имя файла индекса
+     * @return поколение или -1, если индекса нет или он не читается
+     */
+    private static int readGeneration(String fileName) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                return in.readInt();
+            }
+        } catch (IOException ignored) {}
+        return -1;
+    }
+
+    @Override
+    public synchronized void save(LocalDate date, String text) {
+        int day = (int) date.toEpochDay();
+        int pos = Arrays.binarySearch(days, 0, size, day);
+
+        if (text == null || text.isEmpty()) {
+            if (pos < 0) {
+                return;
+            }
+            liveBytes -= lengths[pos];
+            System.arraycopy(days, pos + 1, days, pos, size - pos - 1);
+            System.arraycopy(offsets, pos + 1, offsets, pos, size - pos - 1);
+            System.arraycopy(lengths, pos + 1, lengths, pos, size - pos - 1);
+            size--;
+        } else {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            long offset;
+            try {
+                offset = appendBody(bytes);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            if (pos >= 0) {
+                liveBytes -= lengths[pos];
+            } else {
+                pos = -pos - 1;
+                ensureCapacity(size + 1);
+                System.arraycopy(days, pos, days, pos + 1, size - pos);
+                System.arraycopy(offsets, pos, offsets, pos + 1, size - pos);
+                System.arraycopy(lengths, pos, lengths, pos + 1, size - pos);
+                size++;
+            }
+            days[pos] = day;
+            offsets[pos] = offset;
+            lengths[pos] = bytes.length;
+            liveBytes += bytes.length;
+        }
+
+        writeIndex();
+        long blobSize = blobFile(fileName, generation).length();
+        if (blobSize > MIN_COMPACT_SIZE && blobSize > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized Map<String, String> loadAll() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            result.put(LocalDate.ofEpochDay(days[i]).toString(), readBody(i));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String getByDate(LocalDate date) {
+        int pos = Arrays.binarySearch(days, 0, size, (int) date.toEpochDay());
+        return pos < 0 ? "" : readBody(pos);
+    }
+
+    /**
+     * Возвращает множество дат с записями. Строки дат создаются
+     * только при обходе множества; проверка {@code contains} выполняется
+     * двоичным поиском по снимку индекса.
+     *
+     * @return неизменяемое множество строковых дат
+     */
+    @Override
+    public synchronized Set<String> getAllDates() {
+        int[] snapshot = Arrays.copyOf(days, size);
+        return new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof String)) {
+                    return false;
+                }
+                try {
+                    int day = (int) LocalDate.parse((String) o).toEpochDay();
+                    return Arrays.binarySearch(snapshot, day) >= 0;
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < snapshot.length;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (i >= snapshot.length) {
+                            throw new NoSuchElementException();
+                        }
+                        return LocalDate.ofEpochDay(snapshot[i++]).toString();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return snapshot.length;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Map<LocalDate, String> getByPeriod(LocalDate from, LocalDate to) {
+        int start = from == null ? 0 : lowerBound((int) from.toEpochDay());
+        int end = to == null ? size : lowerBound((int) to.toEpochDay() + 1);
+        Map<LocalDate, String> result = new LinkedHashMap<>();
+        for (int i = start; i < end; i++) {
+            result.put(LocalDate.ofEpochDay(days[i]), readBody(i));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Stream<NoteEntry> stream(LocalDate from, LocalDate to) {
+        return NoteCursor.stream(this::seek, from, to);
+    }
+
+    /**
+     * Находит первую запись с датой не раньше (или строго позже) указанной.
+     * Текст читается с диска сразу: после сохранения или сжатия смещение
+     * в файле тела может стать недействительным.
+     *
+     * @param date      дата; {@code null} — с первой записи
+     * @param inclusive учитывать ли запись с самой датой
+     * @return запись или {@code null}, если дальше записей нет
+     */
+    private synchronized NoteEntry seek(LocalDate date, boolean inclusive) {
+        int pos = 0;
+        if (date != null) {
+            int day = (int) date.toEpochDay();
+            pos = lowerBound(inclusive ? day : day + 1);
+        }
+        if (pos >= size) {
+            return null;
+        }
+        return new NoteEntry(LocalDate.ofEpochDay(days[pos]), NoteText.of(readBody(pos)));
+    }
+
+    @Override
+    public synchronized Map.Entry<LocalDate, String> getNearestFutureDate(LocalDate from) {
+        int pos = lowerBound((int) from.toEpochDay());
+        if (pos >= size) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(LocalDate.ofEpochDay(days[pos]), readBody(pos));
+    }
+
+    /**
+     * Находит индекс первой записи с датой не раньше указанной.
+     *
+     * @param day номер дня от эпохи
+     * @return индекс записи или {@code size}, если такой нет
+     */
+    private int lowerBound(int day) {
+        int pos = Arrays.binarySearch(days, 0, size, day);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    /**
+     * Читает текст записи из файла тела.
+     *
+     * @param pos индекс записи
+     * @return текст заметки или пустая строка при ошибке чтения
+     */
+    private String readBody(int pos) {
+        if (blob != null) {
+            return blob.decode(offsets[pos], lengths[pos]);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(lengths[pos]);
+        File blob = blobFile(fileName, generation);
+        try (FileChannel channel = FileChannel.open(blob.toPath(), StandardOpenOption.READ)) {
+            long position = offsets[pos];
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new EOFException("Файл " + blob + " обрезан");
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Дописывает текст в конец файла тела и сбрасывает его на диск.
+     *
+     * @param bytes текст в UTF-8
+     * @return смещение записанного текста
+     * @throws IOException при ошибке записи
+     */
+    private long appendBody(byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(blobFile(fileName, generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+            if (blob != null && blob.size() == offset) {
+                blob.append(bytes);
+            } else if (blob != null) {
+                loadBlob(); // файл тела изменён в обход копии
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Переписывает файл тела, оставляя в нём только живые тексты.
+     */
+    private void compact() {
+        try (Stream<NoteEntry> entries = stream()) {
+            write(fileName, entries);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        loadIndex();
+    }
+
+    /**
+     * Увеличивает массивы индекса, если в них не хватает места.
+     *
+     * @param capacity требуемая ёмкость
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > days.length) {
+            int newCapacity = Math.max(capacity, days.length + (days.length >> 1) + 16);
+            days = Arrays.copyOf(days, newCapacity);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+        }
+    }
+
+    /**
+     * Загружает индекс из файла в память.
+     */
+    private void loadIndex() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Неизвестный формат файла " + fileName);
+            }
+            generation = in.readInt();
+            int count = in.readInt();
+            days = new int[count];
+            offsets = new long[count];
+            lengths = new int[count];
+            liveBytes = 0;
+            for (int i = 0; i < count; i++) {
+                days[i] = in.readInt();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                liveBytes += lengths[i];
+            }
+            size = count;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (offHeap) {
+            loadBlob();
+        }
+    }
+
+    /**
+     * Загружает копию текущего файла тела вне кучи. Если загрузить её
+     * не удалось, тексты читаются с диска.
+     */
+    private void loadBlob() {
+        blob = null; // прежняя копия освобождается до выделения новой
+        try {
+            blob = OffHeapBlob.load(blobFile(fileName, generation));
+        } catch (IOException | OutOfMemoryError e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Атомарно записывает текущий индекс в файл.
+     */
+    private void writeIndex() {
+        try {
+            writeIndex(new File(fileName), generation, days, offsets, lengths, size);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Атомарно записывает индекс в файл.
+     *
+     * @param file       файл индекса
+     * @param generation поколение файла тела
+     * @param days    номера дней
+     * @param offsets смещения текстов
+     * @param lengths длины текстов
+     * @param count   количество записей
+     * @throws IOException при ошибке записи
+     */
+    private static void writeIndex(File file, int generation, int[] days, long[] offsets, int[] lengths,
+                                   int count) throws IOException {
+        AtomicFileWriter.writeBinary(file, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(generation);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(days[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+        });
+    }
+
+    /**
+     * Индекс, собираемый при записи нового хранилища.
+     */
+    private static final class IndexBuilder {
+        private int[] days = new int[16];
+        private long[] offsets = new long[16];
+        private int[] lengths = new int[16];
+        private int size;
+
+        /**
+         * Добавляет запись в конец индекса.
+         *
+         * @param day    номер дня от эпохи
+         * @param offset смещение текста в файле тела
+         * @param length длина текста в байтах
+         */
+        void add(int day, long offset, int length) {
+            if (size == days.length) {
+                int newCapacity = size + (size >> 1);
+                days = Arrays.copyOf(days, newCapacity);
+                offsets = Arrays.copyOf(offsets, newCapacity);
+                lengths = Arrays.copyOf(lengths, newCapacity);
+            }
+            days[size] = day;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодирование текста заметок в формате {@code дата;текст}.
+ * <p>
+ * Каждая запись занимает ровно одну строку, поэтому в тексте экранируются
+ * символы, которые могут её разорвать, и сам символ экранирования:
+ * <ul>
+ *     <li>{@code \} — {@code \\};</li>
+ *     <li>перевод строки — {@code \n};</li>
+ *     <li>возврат каретки — {@code \r}.</li>
+ * </ul>
+ * Точка с запятой не экранируется: запись делится по первому {@code ;},
+ * а в дате его не бывает. Любой текст восстанавливается без изменений.
+ * </p>
+ * <p>
+ * В файлах версии 1 ({@link CsvFormat#PLAIN}) экранировался только перевод
+ * строки, а обратная косая черта записывалась как есть. Их тексты
+ * декодируются по прежнему правилу ({@link #decodeLegacy}): иначе путь
+ * {@code C:\reports} прочитался бы с возвратом каретки. При переписывании
+ * файла в текущую версию такие тексты экранируются заново.
+ * </p>
+ * <p>
+ * Декодирование выполняется за один проход: байты UTF-8 разбираются
+ * и экранирование снимается сразу в буфер символов, повторно
+ * используемый потоком, так что на запись создаётся только итоговая строка.
+ * </p>
+ */
+public final class CsvCodec {
+
+    /**
+     * Размер буфера символов, который остаётся закреплённым за потоком.
+     */
+    private static final int MAX_CACHED_BUFFER = 64 * 1024;
+
+    /**
+     * Буфер декодирования, свой у каждого потока.
+     */
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    private CsvCodec() {
+    }
+
+    /**
+     * Записывает текст заметки с экранированием. Участки без специальных
+     * символов передаются в поток целиком, без промежуточных строк.
+     *
+     * @param writer поток записи
+     * @param text   текст заметки
+     */
+    public static void writeEscaped(PrintWriter writer, String text) {
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String escaped;
+            if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else {
+                continue;
+            }
+            writer.write(text, start, i - start);
+            writer.write(escaped);
+            start = i + 1;
+        }
+        writer.write(text, start, length - start);
+    }
+
+    /**
+     * Добавляет текст заметки с экранированием к строке
+     * (например, чтобы посчитать контрольную сумму записи, см. {@link CsvFormat}).
+     *
+     * @param out  строка, к которой добавляется текст
+     * @param text текст заметки
+     */
+    public static void appendEscaped(StringBuilder out, String text) {
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String escaped;
+            if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else {
+                continue;
+            }
+            out.append(text, start, i).append(escaped);
+            start = i + 1;
+        }
+        out.append(text, start, length);
+    }
+
+    /**
+     * Записывает строку записи {@code дата;текст} версии 1 с переводом строки:
+     * экранируется только перевод строки (см. {@link #decodeLegacy}).
+     *
+     * @param writer поток записи
+     * @param key    строка даты
+     * @param text   текст заметки
+     */
+    public static void writeLegacyRecord(PrintWriter writer, String key, String text) {
+        writer.write(key);
+        writer.write(';');
+        writer.write(text.replace("\n", "\\n"));
+        writer.println();
+    }
+
+    /**
+     * Декодирует участок массива байтов UTF-8 со снятием экранирования.
+     *
+     * @param source массив
+     * @param offset смещение начала
+     * @param length длина в байтах
+     * @return исходный текст
+     */
+    public static String decode(byte[] source, int offset, int length) {
+        return decode(ByteBuffer.wrap(source), offset, length);
+    }
+
+    /**
+     * Декодирует участок буфера с текстом в UTF-8 со снятием экранирования.
+     * Позиция и граница буфера не используются и не меняются, поэтому
+     * один буфер можно декодировать из нескольких потоков.
+     * Некорректные последовательности байтов заменяются символом U+FFFD.
+     *
+     * @param source буфер (например, отображённый в память файл)
+     * @param offset смещение начала
+     * @param length длина в байтах
+     * @return исходный текст
+     */
+    public static String decode(ByteBuffer source, int offset, int length) {
+        return decode(source, offset, length, false);
+    }
+
+    /**
+     * Декодирует текст записи версии 1, как {@link #decode(ByteBuffer, int, int)},
+     * но снимает только экранирование перевода строки {@code \n}: остальные
+     * обратные косые черты в таких файлах — часть текста.
+     *
+     * @param source буфер
+     * @param offset смещение начала
+     * @param length длина в байтах
+     * @return исходный текст
+     */
+    public static String decodeLegacy(ByteBuffer source, int offset, int length) {
+        return decode(source, offset, length, true);
+    }
+
+    /**
+     * Декодирует участок буфера в UTF-8 со снятием экранирования.
+     *
+     * @param source буфер
+     * @param offset смещение начала
+     * @param length длина в байтах
+     * @param legacy снимать только экранирование перевода строки (версия 1)
+     * @return исходный текст
+     */
+    private static String decode(ByteBuffer source, int offset, int length, boolean legacy) {
+        char[] out = BUFFER.get();
+        if (out.length < length) {
+            // символов не больше, чем байтов
+            out = new char[length];
+            if (length <= MAX_CACHED_BUFFER) {
+                BUFFER.set(out);
+            }
+        }
+
+        int count = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            int b = source.get(i);
+            if (b >= 0) {
+                if (b == '\\' && i + 1 < end) {
+                    char escaped = unescape(source.get(i + 1), legacy);
+                    if (escaped != 0) {
+                        out[count++] = escaped;
+                        i += 2;
+                        continue;
+                    }
+                }
+                out[count++] = (char) b;
+                i++;
+                continue;
+            }
+
+            int codePoint;
+            int size;
+            if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                size = 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                size = 3;
+            } else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                size = 4;
+            } else {
+                out[count++] = '\uFFFD';
+                i++;
+                continue;
+            }
+            int next = i + 1;
+            while (next < i + size && next < end && (source.get(next) & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (source.get(next) & 0x3F);
+                next++;
+            }
+            if (next < i + size || !isValid(codePoint, size)) {
+                out[count++] = '\uFFFD';
+                i = next;
+                continue;
+            }
+            if (size == 4) {
+                out[count++] = Character.highSurrogate(codePoint);
+                out[count++] = Character.lowSurrogate(codePoint);
+            } else {
+                out[count++] = (char) codePoint;
+            }
+            i = next;
+        }
+        return new String(out, 0, count);
+    }
+
+    /**
+     * Возвращает символ, обозначаемый экранированием {@code \x}.
+     *
+     * @param b      байт после обратной косой черты
+     * @param legacy правило версии 1: экранируется только перевод строки
+     * @return символ или 0, если это не экранирование
+     */
+    private static char unescape(byte b, boolean legacy) {
+        if (legacy) {
+            return b == 'n' ? '\n' : 0;
+        }
+        switch (b) {
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case '\\':
+                return '\\';
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Проверяет, что символ закодирован кратчайшей допустимой последовательностью.
+     *
+     * @param codePoint код символа
+     * @param size      длина последовательности в байтах
+     * @return true, если последовательность корректна
+     */
+    private static boolean isValid(int codePoint, int size) {
+        switch (size) {
+            case 2:
+                return codePoint >= 0x80;
+            case 3:
+                return codePoint >= 0x800 && !Character.isSurrogate((char) codePoint);
+            default:
+                return codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT;
+        }
+    }
+}
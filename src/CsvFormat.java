@@ -0,0 +1,350 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Версия формата строк CSV-файла заметок, которая определяется по строке заголовка.
+ * <ol>
+ *     <li>{@link #PLAIN} — записи {@code дата;текст};</li>
+ *     <li>{@link #CHECKSUMMED} — каждая запись заканчивается контрольной
+ *     суммой CRC32C байтов до последнего {@code ;} в виде восьми
+ *     шестнадцатеричных цифр: {@code 2024-05-01;Текст;45888683};</li>
+ *     <li>{@link #METADATA} — между датой и текстом записаны метаданные
+ *     заметки ({@link NoteMeta}), в конце — контрольная сумма.</li>
+ * </ol>
+ * <p>
+ * Текст может содержать {@code ;}, но сумма всегда занимает последние
+ * девять байтов строки, а число полей метаданных постоянно, поэтому запись
+ * разбирается однозначно. Обрезанная или испорченная строка не проходит
+ * проверку и не принимается за заметку.
+ * </p>
+ * <p>
+ * Начиная с версии 3 заголовок начинается с {@code #notes;version=N}, и
+ * версия определяется по номеру, а не по списку полей. Файл неизвестной
+ * версии (например, записанный более новой программой) не читается:
+ * разбор по правилам другой версии исказил бы записи, а их перезапись
+ * уничтожила бы данные. Файлы прежних версий
+ * читаются как есть и переводятся в {@link #CURRENT}, когда переписываются
+ * целиком — при сжатии, импорте или явно через {@link CsvMigrator}, так что
+ * открытие старого файла не ждёт миграции.
+ * </p>
+ */
+public enum CsvFormat {
+
+    /**
+     * Версия 1: записи {@code дата;текст} без контрольных сумм; в тексте
+     * экранируется только перевод строки (см. {@link CsvCodec#decodeLegacy}).
+     */
+    PLAIN(1, "date;text") {
+        @Override
+        public int textEnd(ByteBuffer buffer, int start, int end) {
+            return end;
+        }
+
+        @Override
+        public NoteText note(ByteBuffer buffer, int textStart, int textEnd, int metaLength) {
+            return NoteText.legacy(buffer, textStart, textEnd - textStart);
+        }
+
+        @Override
+        public NoteText located(FileChannel file, long textStart, int textLength, int metaLength) {
+            return NoteText.located(file, textStart, textLength, 0, true);
+        }
+
+        @Override
+        public void writeRecord(PrintWriter writer, String key, String text, NoteMeta meta) {
+            CsvCodec.writeLegacyRecord(writer, key, text);
+        }
+    },
+
+    /**
+     * Версия 2: записи {@code дата;текст;crc32c}.
+     */
+    CHECKSUMMED(2, "date;text;crc32c") {
+        @Override
+        public int textEnd(ByteBuffer buffer, int start, int end) {
+            return checksumEnd(buffer, start, end);
+        }
+
+        @Override
+        public void writeRecord(PrintWriter writer, String key, String text, NoteMeta meta) {
+            StringBuilder record = new StringBuilder(key.length() + text.length() + 16);
+            record.append(key).append(';');
+            CsvCodec.appendEscaped(record, text);
+            writeChecksummed(writer, record);
+        }
+    },
+
+    /**
+     * Версия 3: записи {@code дата;создана;изменена;приоритет;категория;текст;crc32c}.
+     */
+    METADATA(3, "#notes;version=3;date;created;modified;priority;category;text;crc32c") {
+        @Override
+        public int textEnd(ByteBuffer buffer, int start, int end) {
+            return checksumEnd(buffer, start, end);
+        }
+
+        @Override
+        public int textStart(ByteBuffer buffer, int separator, int textEnd) {
+            int metaEnd = NoteMeta.skip(buffer, separator + 1, textEnd);
+            return metaEnd < 0 ? -1 : metaEnd + 1;
+        }
+
+        @Override
+        public void writeRecord(PrintWriter writer, String key, String text, NoteMeta meta) {
+            StringBuilder record = new StringBuilder(key.length() + text.length() + 64);
+            record.append(key).append(';');
+            meta.appendTo(record);
+            record.append(';');
+            CsvCodec.appendEscaped(record, text);
+            writeChecksummed(writer, record);
+        }
+    };
+
+    /**
+     * Формат, в котором записываются новые и переписываемые файлы.
+     */
+    public static final CsvFormat CURRENT = METADATA;
+
+    /**
+     * Начало заголовка с номером версии.
+     */
+    private static final String VERSION_PREFIX = "#notes;version=";
+
+    /**
+     * Длина контрольной суммы в шестнадцатеричных цифрах.
+     */
+    static final int CHECKSUM_LENGTH = 8;
+
+    /**
+     * Наибольшая длина строки заголовка, которую имеет смысл читать.
+     */
+    private static final int MAX_HEADER_LENGTH = 256;
+
+    /**
+     * Номер версии.
+     */
+    private final int version;
+
+    /**
+     * Строка заголовка файла.
+     */
+    private final String header;
+
+    CsvFormat(int version, String header) {
+        this.version = version;
+        this.header = header;
+    }
+
+    /**
+     * Возвращает номер версии формата.
+     *
+     * @return версия начиная с 1
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Возвращает строку заголовка файла этого формата.
+     *
+     * @return заголовок без перевода строки
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Проверяет запись и находит конец её текста.
+     *
+     * @param buffer буфер со строкой (позиция и граница не используются)
+     * @param start  начало строки
+     * @param end    конец строки без перевода строки
+     * @return конец текста записи или -1, если запись повреждена
+     */
+    public abstract int textEnd(ByteBuffer buffer, int start, int end);
+
+    /**
+     * Находит начало текста записи. Всё между разделителем после даты
+     * и текстом — поля метаданных.
+     *
+     * @param buffer    буфер со строкой (позиция и граница не используются)
+     * @param separator позиция {@code ;} после даты
+     * @param textEnd   конец текста (см. {@link #textEnd})
+     * @return начало текста или -1, если полей метаданных не хватает
+     */
+    public int textStart(ByteBuffer buffer, int separator, int textEnd) {
+        return separator + 1;
+    }
+
+    /**
+     * Создаёт заметку, ссылающуюся на текст записи в буфере; текст
+     * декодируется при обращении по правилам экранирования этой версии.
+     *
+     * @param buffer     буфер с байтами записи (не отображение файла, см. {@link NoteText})
+     * @param textStart  начало текста (см. {@link #textStart})
+     * @param textEnd    конец текста (см. {@link #textEnd})
+     * @param metaLength длина метаданных с разделителем перед текстом; 0 — их нет
+     * @return заметка
+     */
+    public NoteText note(ByteBuffer buffer, int textStart, int textEnd, int metaLength) {
+        return NoteText.mapped(buffer, textStart, textEnd - textStart, metaLength);
+    }
+
+    /**
+     * Создаёт заметку, которая читает запись из файла при обращении
+     * (см. {@link NoteText#located}), по правилам экранирования этой версии.
+     *
+     * @param file       канал CSV-файла
+     * @param textStart  смещение начала текста в файле
+     * @param textLength длина текста в байтах
+     * @param metaLength длина метаданных с разделителем перед текстом; 0 — их нет
+     * @return заметка
+     */
+    public NoteText located(FileChannel file, long textStart, int textLength, int metaLength) {
+        return NoteText.located(file, textStart, textLength, metaLength, false);
+    }
+
+    /**
+     * Записывает строку записи с переводом строки. Форматы без
+     * метаданных их отбрасывают.
+     *
+     * @param writer поток записи
+     * @param key    строка даты
+     * @param text   текст заметки
+     * @param meta   метаданные заметки
+     */
+    public abstract void writeRecord(PrintWriter writer, String key, String text, NoteMeta meta);
+
+    /**
+     * Записывает строку записи без метаданных с переводом строки.
+     *
+     * @param writer поток записи
+     * @param key    строка даты
+     * @param text   текст заметки
+     */
+    public void writeRecord(PrintWriter writer, String key, String text) {
+        writeRecord(writer, key, text, NoteMeta.EMPTY);
+    }
+
+    /**
+     * Определяет формат по строке заголовка. Заголовок без номера версии
+     * (или его отсутствие) означает версию 1.
+     *
+     * @param buffer буфер со строкой (позиция и граница не используются)
+     * @param start  начало строки
+     * @param end    конец строки без перевода строки
+     * @return формат файла
+     * @throws IOException если в заголовке указана неизвестная версия
+     */
+    public static CsvFormat ofHeader(ByteBuffer buffer, int start, int end) throws IOException {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        String line = new String(toArray(buffer, start, end), StandardCharsets.UTF_8);
+        if (line.startsWith(VERSION_PREFIX)) {
+            int versionEnd = line.indexOf(';', VERSION_PREFIX.length());
+            String version = line.substring(VERSION_PREFIX.length(), versionEnd < 0 ? line.length() : versionEnd);
+            for (CsvFormat format : values()) {
+                if (version.equals(String.valueOf(format.version))) {
+                    return format;
+                }
+            }
+            throw new IOException("Неизвестная версия формата CSV: " + version
+                    + " (поддерживаются версии до " + CURRENT.version + ")");
+        }
+        return line.equals(CHECKSUMMED.header) ? CHECKSUMMED : PLAIN;
+    }
+
+    /**
+     * Определяет формат файла, читая только начало его первой строки.
+     *
+     * @param file CSV-файл
+     * @return формат файла; для отсутствующего файла — {@link #PLAIN}
+     * @throws IOException при ошибке чтения или если версия файла неизвестна
+     */
+    public static CsvFormat of(File file) throws IOException {
+        if (!file.exists()) {
+            return PLAIN;
+        }
+        byte[] head = new byte[MAX_HEADER_LENGTH];
+        int length = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (length < head.length && (read = in.read(head, length, head.length - length)) > 0) {
+                length += read;
+            }
+        }
+        int end = 0;
+        while (end < length && head[end] != '\n') {
+            end++;
+        }
+        return ofHeader(ByteBuffer.wrap(head), 0, end);
+    }
+
+    /**
+     * Проверяет контрольную сумму в конце записи.
+     *
+     * @param buffer буфер со строкой
+     * @param start  начало строки
+     * @param end    конец строки без перевода строки
+     * @return позиция {@code ;} перед суммой или -1, если сумма неверна
+     */
+    private static int checksumEnd(ByteBuffer buffer, int start, int end) {
+        int textEnd = end - CHECKSUM_LENGTH - 1;
+        if (textEnd <= start || buffer.get(textEnd) != ';') {
+            return -1;
+        }
+        long expected = 0;
+        for (int i = textEnd + 1; i < end; i++) {
+            int digit = Character.digit(buffer.get(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            expected = (expected << 4) | digit;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start, textEnd - start));
+        return crc.getValue() == expected ? textEnd : -1;
+    }
+
+    /**
+     * Записывает запись, её контрольную сумму и перевод строки.
+     *
+     * @param writer поток записи
+     * @param record запись без контрольной суммы
+     */
+    private static void writeChecksummed(PrintWriter writer, StringBuilder record) {
+        String line = record.toString();
+        CRC32C crc = new CRC32C();
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        writer.write(line);
+        writer.write(';');
+        String checksum = Long.toHexString(crc.getValue());
+        for (int i = checksum.length(); i < CHECKSUM_LENGTH; i++) {
+            writer.write('0');
+        }
+        writer.write(checksum);
+        writer.println();
+    }
+
+    /**
+     * Копирует участок буфера в массив.
+     *
+     * @param buffer буфер
+     * @param start  начало участка
+     * @param end    конец участка
+     * @return байты участка
+     */
+    private static byte[] toArray(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return bytes;
+    }
+}
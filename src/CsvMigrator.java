@@ -0,0 +1,333 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Перевод CSV-файла заметок в текущую версию формата ({@link CsvFormat#CURRENT}).
+ * <p>
+ * Файл переписывается одним последовательным проходом: отображённые в
+ * память строки разбираются по формату, указанному в заголовке, и сразу
+ * записываются в новом формате через {@link AtomicFileWriter}, поэтому в
+ * памяти не держится ничего, кроме текущей записи, а сбой во время
+ * миграции оставляет прежний файл. Текст не декодируется, а копируется
+ * байтами, и контрольная сумма считается по тем же байтам. Исключение —
+ * тексты версии 1 с обратной косой чертой (кроме {@code \n}) или возвратом
+ * каретки: там экранировался только перевод строки, поэтому такие тексты декодируются
+ * по прежнему правилу и экранируются заново (см. {@link CsvCodec}). Записи прежних версий
+ * получают пустые метаданные ({@link NoteMeta#EMPTY}): время создания
+ * и изменения у них неизвестно.
+ * Повреждённые строки (см. {@link CsvVerifier}) дописываются как есть в
+ * {@code <файл>.rejected}.
+ * </p>
+ * <p>
+ * Хранилище не ждёт миграции при открытии: файлы прежних версий читаются
+ * как есть, а записи переводятся в новую версию, когда файл переписывается
+ * целиком — при сжатии журнала или импорте (см. {@link CsvStorage}).
+ * Явная миграция нужна, чтобы обновить файл сразу, например перед
+ * передачей его другой программе.
+ * </p>
+ * <p>
+ * Без графического интерфейса: {@code java CsvMigrator data.csv ...};
+ * код завершения 0 — файлы в текущей версии, 2 — ошибка.
+ * </p>
+ */
+public final class CsvMigrator {
+
+    /**
+     * Версия, в которую переводятся файлы; записи пишутся в её раскладке.
+     */
+    private static final CsvFormat TARGET = CsvFormat.METADATA;
+
+    /**
+     * Поля пустых метаданных с разделителем перед текстом.
+     */
+    private static final byte[] EMPTY_META = (NoteMeta.EMPTY + ";").getBytes(StandardCharsets.UTF_8);
+
+    private CsvMigrator() {
+    }
+
+    /**
+     * Получатель строк файла при последовательном проходе.
+     */
+    @FunctionalInterface
+    private interface LineSink {
+
+        /**
+         * @param buffer    окно отображения
+         * @param format    формат записей файла
+         * @param start     начало строки в окне
+         * @param end       конец строки без перевода строки
+         * @param separator позиция разделителя после даты или -1, если строка повреждена
+         * @param textStart начало текста записи
+         * @param textEnd   конец текста записи
+         * @throws IOException при ошибке записи
+         */
+        void accept(MappedByteBuffer buffer, CsvFormat format, int start, int end, int separator, int textStart,
+                    int textEnd) throws IOException;
+    }
+
+    /**
+     * Переводит файл в текущую версию формата, если он в прежней.
+     * Выполняется под {@link InterProcessLock} файла, как и запись хранилищем.
+     *
+     * @param file CSV-файл
+     * @return true, если файл переписан; false, если он уже в текущей версии
+     * @throws IOException при ошибке чтения или записи или если версия файла неизвестна
+     *                     (см. {@link CsvFormat}); файл в этом случае остаётся прежним
+     */
+    public static boolean migrate(File file) throws IOException {
+        InterProcessLock lock = InterProcessLock.forFile(file.getPath());
+        lock.lock();
+        try {
+            if (CsvFormat.of(file) == TARGET) {
+                return false;
+            }
+            rewrite(file);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Атомарно переписывает файл в формате {@link CsvFormat#CURRENT} из
+     * корректных записей; повреждённые непустые строки дописываются в
+     * {@code <файл>.rejected}, который создаётся, только если такие строки есть.
+     * Вызывается под {@link InterProcessLock} файла.
+     *
+     * @param file CSV-файл
+     * @throws IOException при ошибке чтения или записи или если версия файла неизвестна
+     *                     (см. {@link CsvFormat}); файл в этом случае остаётся прежним
+     */
+    static void rewrite(File file) throws IOException {
+        try (RejectedLines rejected = new RejectedLines(new File(file.getPath() + CsvVerifier.REJECTED_EXTENSION))) {
+            AtomicFileWriter.writeBinary(file, out -> {
+                out.write(TARGET.getHeader().getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+                RecordCopier copier = new RecordCopier(out);
+                forEachLine(file, (buffer, format, start, end, separator, textStart, textEnd) -> {
+                    if (separator >= 0) {
+                        copier.copy(buffer, format == CsvFormat.PLAIN, start, separator, textStart, textEnd);
+                    } else if (end > start) {
+                        rejected.write(buffer, start, end);
+                    }
+                });
+            });
+        }
+    }
+
+    /**
+     * Последовательно проходит по строкам файла после заголовка,
+     * разбирая их по формату из заголовка.
+     *
+     * @param file CSV-файл
+     * @param sink получатель строк
+     * @throws IOException при ошибке чтения или ошибке получателя
+     */
+    private static void forEachLine(File file, LineSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            CsvFormat format = CsvFormat.PLAIN;
+
+            while (position < size) {
+                long windowSize = Math.min(Integer.MAX_VALUE, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int limit = MappedCsvReader.windowLimit(buffer, windowSize, position + windowSize >= size, file);
+                int lineStart = 0;
+                if (position == 0) {
+                    lineStart = MappedCsvReader.skipHeader(buffer, limit);
+                    format = CsvFormat.ofHeader(buffer, 0, Math.max(0, lineStart - 1));
+                }
+                while (lineStart < limit) {
+                    int lineEnd = CsvVerifier.lineEnd(buffer, lineStart, limit);
+                    int next = Math.min(lineEnd + 1, limit);
+                    if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                        lineEnd--;
+                    }
+                    int textEnd = format.textEnd(buffer, lineStart, lineEnd);
+                    int separator = CsvVerifier.separator(buffer, format, lineStart, textEnd);
+                    int textStart = separator < 0 ? -1 : format.textStart(buffer, separator, textEnd);
+                    sink.accept(buffer, format, lineStart, lineEnd, separator, textStart, textEnd);
+                    lineStart = next;
+                }
+                position += limit;
+            }
+        }
+    }
+
+    /**
+     * Запись строк {@code дата;метаданные;текст;crc32c} из байтов исходных записей.
+     */
+    private static final class RecordCopier {
+        private final DataOutputStream out;
+        private final CRC32C crc = new CRC32C();
+        private byte[] scratch = new byte[256];
+
+        RecordCopier(DataOutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Записывает запись с контрольной суммой и переводом строки. Метаданные
+         * исходной записи копируются как есть, у записей без них — пустые.
+         *
+         * @param buffer    окно отображения
+         * @param legacy    текст записан по правилу версии 1 (см. {@link CsvCodec#decodeLegacy})
+         * @param start     начало строки
+         * @param separator разделитель после даты
+         * @param textStart начало текста
+         * @param textEnd   конец текста
+         * @throws IOException при ошибке записи
+         */
+        void copy(MappedByteBuffer buffer, boolean legacy, int start, int separator, int textStart, int textEnd)
+                throws IOException {
+            crc.reset();
+            write(buffer, start, separator + 1);
+            if (textStart > separator + 1) {
+                write(buffer, separator + 1, textStart);
+            } else {
+                crc.update(EMPTY_META);
+                out.write(EMPTY_META);
+            }
+            if (legacy && needsEscaping(buffer, textStart, textEnd)) {
+                StringBuilder text = new StringBuilder(textEnd - textStart + 16);
+                CsvCodec.appendEscaped(text, CsvCodec.decodeLegacy(buffer, textStart, textEnd - textStart));
+                byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                crc.update(bytes);
+                out.write(bytes);
+            } else {
+                write(buffer, textStart, textEnd);
+            }
+            String checksum = Long.toHexString(crc.getValue());
+            out.write(';');
+            for (int i = checksum.length(); i < CsvFormat.CHECKSUM_LENGTH; i++) {
+                out.write('0');
+            }
+            out.writeBytes(checksum);
+            out.write('\n');
+        }
+
+        /**
+         * Проверяет, есть ли в тексте версии 1 символы, которые в текущей
+         * версии экранируются иначе: возврат каретки и обратная косая черта,
+         * кроме экранирования перевода строки {@code \n}, которое не изменилось.
+         *
+         * @param buffer окно отображения
+         * @param from   начало текста
+         * @param to     конец текста
+         * @return true, если текст нельзя скопировать байтами
+         */
+        private static boolean needsEscaping(MappedByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '\r') {
+                    return true;
+                }
+                if (b == '\\') {
+                    if (i + 1 == to || buffer.get(i + 1) != 'n') {
+                        return true;
+                    }
+                    i++;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Копирует участок окна в файл и добавляет его к контрольной сумме.
+         *
+         * @param buffer окно отображения
+         * @param from   начало участка
+         * @param to     конец участка
+         * @throws IOException при ошибке записи
+         */
+        private void write(MappedByteBuffer buffer, int from, int to) throws IOException {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            crc.update(scratch, 0, length);
+            out.write(scratch, 0, length);
+        }
+    }
+
+    /**
+     * Файл отброшенных строк, открываемый при первой записи.
+     */
+    private static final class RejectedLines implements Closeable {
+        private final File file;
+        private OutputStream out;
+
+        RejectedLines(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Дописывает строку как есть с переводом строки.
+         *
+         * @param buffer окно отображения
+         * @param start  начало строки
+         * @param end    конец строки
+         * @throws IOException при ошибке записи
+         */
+        void write(MappedByteBuffer buffer, int start, int end) throws IOException {
+            if (out == null) {
+                out = new BufferedOutputStream(new FileOutputStream(file, true));
+            }
+            byte[] line = new byte[end - start];
+            buffer.get(start, line);
+            out.write(line);
+            out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Переводит файлы в текущую версию формата без графического интерфейса.
+     *
+     * @param args {@code файл...}
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Использование: java CsvMigrator data.csv ...");
+            System.exit(2);
+        }
+
+        int status = 0;
+        for (String arg : args) {
+            File file = new File(arg);
+            try {
+                CsvFormat format = CsvFormat.of(file);
+                long started = System.nanoTime();
+                if (migrate(file)) {
+                    long millis = (System.nanoTime() - started) / 1_000_000;
+                    System.out.println(file.getName() + ": версия " + format.getVersion() + " → "
+                            + TARGET.getVersion() + " (" + millis + " мс)");
+                } else {
+                    System.out.println(file.getName() + ": уже версия " + TARGET.getVersion());
+                }
+            } catch (IOException e) {
+                System.err.println(file + ": " + e);
+                status = 2;
+            }
+        }
+        System.exit(status);
+    }
+}
@@ -0,0 +1,491 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Разреженный индекс смещений для CSV-файла заметок, отсортированного по датам.
+ * <p>
+ * Индекс хранится рядом с CSV в файле {@code <файл>.idx} и содержит для
+ * каждой {@link #STRIDE}-й записи номер дня от эпохи и смещение строки в
+ * файле. Чтобы найти запись, достаточно двоичного поиска по индексу и
+ * позиционного чтения не более {@link #STRIDE} строк CSV через
+ * {@link FileChannel} — без загрузки всего файла.
+ * </p>
+ * <p>
+ * В индексе записаны время изменения, размер и отпечаток содержимого CSV,
+ * по которому он построен: контрольная сумма CRC32C первых и последних
+ * {@link #FINGERPRINT_SIZE} байтов. Время изменения различается с точностью
+ * до секунды и больше, поэтому правку того же размера сразу после записи
+ * выдаёт только отпечаток. Если CSV изменён (в том числе вручную), индекс
+ * считается устаревшим и строится заново одним проходом по файлу. Индекс строится только для
+ * файла, даты в котором строго возрастают; строки с некорректными датами
+ * и повреждённые записи (см. {@link CsvFormat}) пропускаются.
+ * </p>
+ *
+ * Формат файла индекса:
+ * <pre>
+ * int  MAGIC
+ * int  VERSION
+ * long csvModified
+ * long csvLength
+ * long csvFingerprint
+ * int  count
+ * count × (int epochDay, long offset)
+ * </pre>
+ */
+public final class CsvOffsetIndex {
+
+    /**
+     * Расширение файла индекса, добавляемое к имени CSV.
+     */
+    public static final String EXTENSION = ".idx";
+
+    /**
+     * Шаг индекса: одна запись индекса на столько строк CSV.
+     */
+    public static final int STRIDE = 32;
+
+    /**
+     * Сигнатура файла индекса ("CIDX").
+     */
+    private static final int MAGIC = 0x43494458;
+
+    /**
+     * Версия формата индекса.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Размер блока позиционного чтения CSV.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Размер начала и конца CSV, по которым считается отпечаток.
+     */
+    private static final int FINGERPRINT_SIZE = 4 * 1024;
+
+    /**
+     * Время изменения, размер и отпечаток CSV, по которому построен индекс.
+     */
+    private final long csvModified;
+    private final long csvLength;
+    private final long csvFingerprint;
+
+    /**
+     * Формат записей CSV (определяется по заголовку, в индексе не хранится).
+     */
+    private final CsvFormat format;
+
+    /**
+     * Номера дней от эпохи по возрастанию.
+     */
+    private final int[] days;
+
+    /**
+     * Смещения строк с этими датами.
+     */
+    private final long[] offsets;
+
+    /**
+     * Обработчик записей при последовательном чтении CSV.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+
+        /**
+         * Вызывается для каждой строки вида {@code дата;текст}.
+         *
+         * @param offset смещение строки в файле
+         * @param key    строка даты
+         * @param text   текст и метаданные записи, ещё не разобранные
+         * @return {@code false}, чтобы прекратить чтение
+         */
+        boolean visit(long offset, String key, NoteText text);
+    }
+
+    private CsvOffsetIndex(long csvModified, long csvLength, long csvFingerprint, CsvFormat format,
+                           int[] days, long[] offsets) {
+        this.csvModified = csvModified;
+        this.csvLength = csvLength;
+        this.csvFingerprint = csvFingerprint;
+        this.format = format;
+        this.days = days;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Возвращает актуальный индекс CSV-файла: читает его с диска или,
+     * если файла индекса нет либо он устарел, строит заново и записывает.
+     * Ошибка записи индекса не мешает им пользоваться.
+     *
+     * @param csv CSV-файл
+     * @return индекс или {@code null}, если даты в файле не отсортированы
+     * @throws IOException при ошибке чтения CSV
+     */
+    public static CsvOffsetIndex open(File csv) throws IOException {
+        CsvOffsetIndex index = read(csv);
+        if (index != null) {
+            return index;
+        }
+        index = build(csv);
+        if (index != null) {
+            try {
+                index.write(csv);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Читает индекс с диска.
+     *
+     * @param csv CSV-файл
+     * @return индекс или {@code null}, если его нет, он повреждён или устарел
+     */
+    private static CsvOffsetIndex read(File csv) {
+        File file = indexFile(csv);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long modified = in.readLong();
+            long length = in.readLong();
+            long fingerprint = in.readLong();
+            if (modified != csv.lastModified() || length != csv.length() || fingerprint != fingerprint(csv)) {
+                return null; // CSV изменён после построения индекса
+            }
+            int count = in.readInt();
+            int[] days = new int[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                days[i] = in.readInt();
+                offsets[i] = in.readLong();
+            }
+            return new CsvOffsetIndex(modified, length, fingerprint, CsvFormat.of(csv), days, offsets);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Строит индекс одним проходом по CSV-файлу.
+     *
+     * @param csv CSV-файл
+     * @return индекс или {@code null}, если даты в файле не возрастают строго
+     * @throws IOException при ошибке чтения
+     */
+    public static CsvOffsetIndex build(File csv) throws IOException {
+        // отметки снимаются до чтения: изменение во время чтения сделает индекс устаревшим
+        long modified = csv.lastModified();
+        long length = csv.length();
+        long fingerprint = fingerprint(csv);
+        CsvFormat format = CsvFormat.of(csv);
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+            scan(channel, 0, format, builder);
+        }
+        if (!builder.sorted) {
+            return null;
+        }
+        return new CsvOffsetIndex(modified, length, fingerprint, format,
+                Arrays.copyOf(builder.days, builder.size), Arrays.copyOf(builder.offsets, builder.size));
+    }
+
+    /**
+     * Атомарно записывает индекс рядом с CSV-файлом.
+     *
+     * @param csv CSV-файл
+     * @throws IOException при ошибке записи
+     */
+    public void write(File csv) throws IOException {
+        AtomicFileWriter.writeBinary(indexFile(csv), out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(csvModified);
+            out.writeLong(csvLength);
+            out.writeLong(csvFingerprint);
+            out.writeInt(days.length);
+            for (int i = 0; i < days.length; i++) {
+                out.writeInt(days[i]);
+                out.writeLong(offsets[i]);
+            }
+        });
+    }
+
+    /**
+     * Проверяет, что индекс построен по текущему состоянию CSV-файла.
+     *
+     * @param csv CSV-файл
+     * @return true, если время изменения, размер и отпечаток файла совпадают
+     */
+    public boolean isCurrent(File csv) {
+        if (csv.lastModified() != csvModified || csv.length() != csvLength) {
+            return false;
+        }
+        try {
+            return fingerprint(csv) == csvFingerprint;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Считает отпечаток содержимого CSV-файла: CRC32C первых и последних
+     * {@link #FINGERPRINT_SIZE} байтов (небольшой файл — целиком).
+     * Два позиционных чтения не зависят от размера файла.
+     *
+     * @param csv CSV-файл
+     * @return отпечаток
+     * @throws IOException при ошибке чтения
+     */
+    private static long fingerprint(File csv) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_SIZE);
+            updateFingerprint(crc, channel, buffer, 0, Math.min(size, 2L * FINGERPRINT_SIZE));
+            if (size > 2L * FINGERPRINT_SIZE) {
+                updateFingerprint(crc, channel, buffer, size - FINGERPRINT_SIZE, size);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Добавляет к отпечатку участок файла.
+     *
+     * @param crc     контрольная сумма
+     * @param channel канал CSV-файла
+     * @param buffer  буфер чтения
+     * @param from    начало участка
+     * @param to      конец участка
+     * @throws IOException при ошибке чтения
+     */
+    private static void updateFingerprint(CRC32C crc, FileChannel channel, ByteBuffer buffer, long from, long to)
+            throws IOException {
+        long position = from;
+        while (position < to) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break; // файл укоротился во время чтения: отпечаток не совпадёт
+            }
+            crc.update(buffer.flip());
+            position += read;
+        }
+    }
+
+    /**
+     * Возвращает формат записей CSV-файла, по которому построен индекс.
+     *
+     * @return формат для {@link #scan}
+     */
+    public CsvFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Находит смещение, с которого нужно читать CSV, чтобы встретить
+     * запись за указанный день или первую запись после него.
+     *
+     * @param day номер дня от эпохи
+     * @return смещение строки или -1, если в файле нет записей
+     */
+    public long seek(int day) {
+        if (days.length == 0) {
+            return -1;
+        }
+        int pos = Arrays.binarySearch(days, day);
+        if (pos < 0) {
+            pos = Math.max(0, -pos - 2); // последняя запись индекса раньше дня
+        }
+        return offsets[pos];
+    }
+
+    /**
+     * Последовательно читает строки CSV начиная с указанного смещения
+     * позиционными чтениями канала. Строки без разделителя {@code ;}
+     * и повреждённые записи пропускаются; завершающий {@code \r} отбрасывается.
+     *
+     * @param channel канал CSV-файла
+     * @param from    смещение начала строки
+     * @param format  формат записей
+     * @param visitor обработчик записей
+     * @throws IOException при ошибке чтения
+     */
+    public static void scan(FileChannel channel, long from, CsvFormat format, RecordVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        long lineOffset = from;
+        long position = from;
+
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] chunk = buffer.array();
+            for (int i = 0; i < read; i++) {
+                byte b = chunk[i];
+                if (b != '\n') {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                    continue;
+                }
+                if (!visitLine(line, lineLength, lineOffset, format, visitor)) {
+                    return;
+                }
+                lineOffset = position + i + 1;
+                lineLength = 0;
+            }
+            position += read;
+        }
+        if (lineLength > 0) {
+            visitLine(line, lineLength, lineOffset, format, visitor); // последняя строка без перевода строки
+        }
+    }
+
+    /**
+     * Разбирает строку {@code дата;текст} и передаёт её обработчику.
+     *
+     * @param line       байты строки
+     * @param length     длина строки без перевода строки
+     * @param offset     смещение строки в файле
+     * @param format     формат записей
+     * @param visitor    обработчик
+     * @return результат обработчика; {@code true} для пропущенных строк
+     */
+    private static boolean visitLine(byte[] line, int length, long offset, CsvFormat format, RecordVisitor visitor) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        length = format.textEnd(ByteBuffer.wrap(line), 0, length);
+        if (length < 0) {
+            return true;
+        }
+        int separator = 0;
+        while (separator < length && line[separator] != ';') {
+            separator++;
+        }
+        if (separator == length) {
+            return true;
+        }
+        int textStart = format.textStart(ByteBuffer.wrap(line), separator, length);
+        if (textStart < 0) {
+            return true;
+        }
+        String key = new String(line, 0, separator, StandardCharsets.UTF_8);
+        int metaLength = textStart - separator - 1;
+        ByteBuffer record = ByteBuffer.wrap(Arrays.copyOfRange(line, separator + 1, length));
+        return visitor.visit(offset, key, format.note(record, metaLength, length - separator - 1, metaLength));
+    }
+
+    /**
+     * Переводит строку даты в номер дня от эпохи.
+     * Обычная запись yyyy-MM-dd разбирается по цифрам, без
+     * {@link java.time.format.DateTimeFormatter}: разбор ключа выполняется
+     * для каждой строки при чтении и импорте файла.
+     *
+     * @param key строка даты yyyy-MM-dd
+     * @return номер дня или {@link Integer#MIN_VALUE}, если строка некорректна
+     */
+    public static int parseDay(String key) {
+        try {
+            if (key.length() == 10 && key.charAt(4) == '-' && key.charAt(7) == '-') {
+                int year = digits(key, 0, 4);
+                int month = digits(key, 5, 7);
+                int day = digits(key, 8, 10);
+                if (year >= 0 && month >= 0 && day >= 0) {
+                    return (int) LocalDate.of(year, month, day).toEpochDay();
+                }
+            }
+            return (int) LocalDate.parse(key).toEpochDay();
+        } catch (Exception e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Разбирает десятичное число из цифр ASCII.
+     *
+     * @param key   строка
+     * @param start начало числа
+     * @param end   конец числа
+     * @return число или -1, если среди символов есть не цифры
+     */
+    private static int digits(String key, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Возвращает файл индекса для CSV-файла.
+     *
+     * @param csv CSV-файл
+     * @return файл индекса
+     */
+    private static File indexFile(File csv) {
+        return new File(csv.getPath() + EXTENSION);
+    }
+
+    /**
+     * Индекс, собираемый при проходе по CSV-файлу.
+     */
+    private static final class Builder implements RecordVisitor {
+        private int[] days = new int[16];
+        private long[] offsets = new long[16];
+        private int size;
+        private int records;
+        private int lastDay = Integer.MIN_VALUE;
+        private boolean sorted = true;
+
+        @Override
+        public boolean visit(long offset, String key, NoteText text) {
+            if (offset == 0) {
+                return true; // заголовок
+            }
+            int day = parseDay(key);
+            if (day == Integer.MIN_VALUE) {
+                return true;
+            }
+            if (day <= lastDay) {
+                sorted = false;
+                return false;
+            }
+            if (records % STRIDE == 0) {
+                if (size == days.length) {
+                    days = Arrays.copyOf(days, size * 2);
+                    offsets = Arrays.copyOf(offsets, size * 2);
+                }
+                days[size] = day;
+                offsets[size] = offset;
+                size++;
+            }
+            lastDay = day;
+            records++;
+            return true;
+        }
+    }
+}
@@ -1,19 +1,162 @@
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Класс для хранения и управления данными в формате CSV.
  * Используется для сохранения заметок, связанных с датами,
  * а также для их загрузки и выборки по различным критериям.
+ * <p>
+ * Файл читается один раз и хранится в памяти в виде упорядоченного индекса
+ * (ключи yyyy-MM-dd сортируются так же, как сами даты). Перед каждым обращением
+ * сверяются время изменения и размер файла — если файл был изменён извне,
+ * индекс перечитывается. Поиск по дате, периоду и ближайшей дате
+ * выполняется за логарифмическое время.
+ * </p>
+ * <p>
+ * Файл читается в кодировке UTF-8 через {@link MappedCsvReader}: тексты
+ * заметок остаются ссылками на скопированные из файла байты и декодируются
+ * только при запросе (см. {@link NoteText}). Большие файлы разбираются
+ * параллельно несколькими потоками.
+ * </p>
+ * <p>
+ * Для очень больших календарей есть режим, в котором в памяти постоянно
+ * находятся только даты и положения записей в файле (см.
+ * {@link #CsvStorage(String, long, long, long)}): байты текстов на кучу не
+ * копируются, запись читается из файла позиционным чтением при обращении
+ * (см. {@link MappedCsvReader#readLocated}), а прочитанный текст не
+ * остаётся в индексе, а попадает в {@link NoteBodyCache} с ограничением
+ * объёма в байтах. После сжатия индекс отпускается и при следующем обращении
+ * строится заново по переписанному файлу, так что тексты сохранённых заметок
+ * тоже не накапливаются. Расход памяти в этом режиме растёт только с
+ * количеством дат, а не с объёмом текстов.
+ * </p>
+ * <p>
+ * Изменения не переписывают CSV целиком, а дописываются в журнал
+ * {@code <файл>.journal} рядом с ним: строка {@code *;дата;метаданные;текст} —
+ * добавление или замена записи, {@code -;дата} — удаление (строки
+ * {@code +;дата;текст} прежних версий тоже читаются). При загрузке журнал
+ * применяется поверх CSV. Когда в журнале накапливается
+ * {@link #COMPACT_THRESHOLD} записей, в фоновом потоке выполняется сжатие:
+ * CSV атомарно переписывается целиком и журнал очищается.
+ * </p>
+ * <p>
+ * Несколько изменений сразу (см. {@link #batch()}, {@link #saveAll(Map)},
+ * {@link #deleteRange(LocalDate, LocalDate)}) дописываются в журнал одной
+ * транзакцией между строками {@code b;N} и {@code c;N}, где N — количество
+ * записей в ней, с одним сбросом на диск. Транзакция применяется только
+ * целиком: если после сбоя в журнале нет её строки {@code c;N}, записи
+ * транзакции пропускаются, а следующая запись в журнал начинается со
+ * строки {@code x;}, отменяющей недописанную транзакцию.
+ * </p>
+ * <p>
+ * Хранилище потокобезопасно. Чтение не берёт блокировок: индекс — это
+ * {@link ConcurrentSkipListMap}, опубликованный вместе с отметками файлов
+ * в неизменяемом снимке {@link Snapshot}, поэтому любое количество потоков
+ * читает параллельно. Изменения (сохранение, сжатие и перечитывание
+ * изменённого извне файла) выполняются по очереди под {@link #writeLock};
+ * перечитанный файл собирается в новый индекс и подменяет снимок целиком.
+ * Свежесть снимка проверяется одним {@code stat} CSV-файла и одним —
+ * журнала, а пока работает отслеживание файлов (см. ниже), не проверяется
+ * вовсе: изменения других процессов применяет поток отслеживания.
+ * </p>
+ * <p>
+ * Один файл могут одновременно использовать несколько процессов. Каждый цикл
+ * "перечитать — изменить — записать" выполняется под {@link InterProcessLock}
+ * (файл {@code <файл>.lock}), поэтому сохранения разных процессов не
+ * затирают друг друга. Изменения, сделанные другими процессами, отслеживаются
+ * через {@link WatchService}, как только добавлен первый
+ * {@link NoteStorage.ChangeListener}. Если другой процесс только дописал журнал,
+ * перечитывается лишь новый хвост журнала; при замене самого CSV индекс
+ * собирается заново и сравнивается с прежним. Обработчики получают только
+ * изменившиеся даты.
+ * </p>
+ * <p>
+ * В режиме отложенной записи (см. {@link #CsvStorage(String, long, long)})
+ * сохранение только обновляет индекс и набор несохранённых изменений,
+ * а в журнал они дописываются одной пачкой с одним сбросом на диск:
+ * после паузы в правках, не позже заданного интервала после первой
+ * несохранённой правки, при вызове {@link #flush()} и при завершении JVM.
+ * </p>
+ * <p>
+ * Сжатие записывает CSV в порядке дат и строит рядом разреженный индекс
+ * смещений {@code <файл>.idx} (см. {@link CsvOffsetIndex}). Пока индекс в
+ * памяти не загружен, {@link #getByDate(LocalDate)} и выборки за период читают
+ * только нужные строки CSV позиционным чтением и применяют к ним журнал,
+ * так что первые запросы после запуска не разбирают файл целиком. Такое
+ * чтение тоже не берёт блокировок: если во время чтения файлы изменились,
+ * оно повторяется.
+ * Если CSV изменён вручную, индекс строится заново; если при этом даты
+ * в файле оказались не по порядку, файл переписывается сжатием.
+ * </p>
  *
  * Формат CSV:
  * <pre>
- * date;text
- * 2025-12-07;Заметка
+ * #notes;version=3;date;created;modified;priority;category;text;crc32c
+ * 2025-12-07;2025-12-07T09:15:00Z;2025-12-07T18:40:12Z;1;работа;Заметка;92a5b3d2
+ * 2025-12-08;;;0;;Первая строка\nвторая строка;ad723a4d
  * </pre>
+ * Экранирование текста описано в {@link CsvCodec}, версии формата и
+ * контрольные суммы записей — в {@link CsvFormat}, метаданные — в
+ * {@link NoteMeta}. Файлы прежних версий открываются без миграции и
+ * переводятся в текущую при ближайшей перезаписи (сжатии или импорте);
+ * перевести файл сразу позволяет {@link CsvMigrator}, проверить и
+ * восстановить — {@link CsvVerifier}.
  */
-public class CsvStorage {
+public class CsvStorage implements NoteStorage {
+
+    /**
+     * Количество записей в журнале, после которого запускается сжатие.
+     */
+    public static final int COMPACT_THRESHOLD = 1000;
+
+    /**
+     * Количество попыток чтения периода без блокировок, прежде чем
+     * загрузить индекс в памяти (см. {@link #readRange(LocalDate, LocalDate)}).
+     */
+    private static final int RANGE_READ_ATTEMPTS = 3;
+
+    /**
+     * Пауза (мс) перед повторной записью изменений, которые не удалось
+     * записать в журнал.
+     */
+    private static final long FLUSH_RETRY_MILLIS = 5000;
+
+    /**
+     * Общий фоновый поток для сжатия журналов всех хранилищ.
+     */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "csv-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Общий фоновый поток отложенной записи для всех хранилищ.
+     */
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "csv-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Имя файла CSV, в котором хранятся данные.
@@ -21,9 +164,117 @@ public class CsvStorage {
     private final String fileName;
 
     /**
-     * Формат даты для ключей в CSV (год-месяц-день).
+     * Имя файла журнала изменений.
+     */
+    private final String journalName;
+
+    /**
+     * Путь к CSV-файлу для проверки отметок снимка.
+     */
+    private final Path csvPath;
+
+    /**
+     * Файл журнала изменений.
+     */
+    private final File journalFile;
+
+    /**
+     * Блокировка, под которой выполняются все изменения индекса и файлов.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Блокировка файла между процессами.
+     */
+    private final InterProcessLock fileLock;
+
+    /**
+     * Текущий снимок кэша; {@code null}, пока файл не загружен.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Количество записей в журнале (изменяется под {@link #writeLock}).
+     */
+    private int journalRecords;
+
+    /**
+     * Смещение конца последней применённой полной строки журнала
+     * (изменяется под {@link #writeLock}).
+     */
+    private long journalOffset;
+
+    /**
+     * Обработчики изменений, сделанных другими процессами.
+     */
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Поток отслеживания изменений; {@code null}, пока обработчиков нет.
+     * Пока поток работает, чтение не сверяет отметки файлов (см. {@link #index()}).
+     */
+    private volatile Thread watcher;
+
+    /**
+     * Пауза в правках (мс), после которой записываются несохранённые изменения;
+     * 0 — каждое сохранение сразу записывается в журнал.
+     */
+    private final long idleMillis;
+
+    /**
+     * Наибольшая задержка (мс) записи изменения в журнал.
+     */
+    private final long maxDelayMillis;
+
+    /**
+     * Несохранённые изменения "строка даты → заметка" ({@code null} — удаление);
+     * изменяется под {@link #writeLock}.
+     */
+    private final Map<String, NoteText> dirty = new LinkedHashMap<>();
+
+    /**
+     * Время первой несохранённой правки.
+     */
+    private long firstDirtyTime;
+
+    /**
+     * Время последней несохранённой правки.
+     */
+    private long lastDirtyTime;
+
+    /**
+     * Признак того, что отложенная запись уже запланирована.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Ошибка последней записи несохранённых изменений в журнал;
+     * {@code null} — последняя запись удалась (изменяется под {@link #writeLock}).
      */
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private IOException flushFailure;
+
+    /**
+     * Признак того, что сжатие уже поставлено в очередь (изменяется под {@link #writeLock}).
+     */
+    private boolean compactionScheduled;
+
+    /**
+     * Разреженный индекс смещений CSV-файла для чтения без загрузки файла;
+     * {@code null}, пока не понадобился.
+     */
+    private volatile CsvOffsetIndex offsetIndex;
+
+    /**
+     * Записи журнала, прочитанные {@link #readRange(LocalDate, LocalDate)};
+     * {@code null}, пока не понадобились.
+     */
+    private volatile JournalView journalView;
+
+    /**
+     * Кэш текстов в режиме хранения в памяти только дат;
+     * {@code null} — прочитанные тексты остаются в индексе.
+     */
+    private final NoteBodyCache bodyCache;
 
     /**
      * Конструктор. Создаёт объект хранилища и проверяет наличие CSV-файла.
@@ -32,87 +283,1219 @@ public class CsvStorage {
      * @param fileName имя CSV-файла
      */
     public CsvStorage(String fileName) {
+        this(fileName, 0, 0);
+    }
+
+    /**
+     * Конструктор хранилища с отложенной записью. Изменения записываются
+     * в журнал, когда правок не было {@code idleMillis} миллисекунд, но не
+     * позже чем через {@code maxDelayMillis} после первой несохранённой
+     * правки. При завершении JVM несохранённые изменения записываются.
+     *
+     * @param fileName       имя CSV-файла
+     * @param idleMillis     пауза в правках перед записью; 0 — писать сразу
+     * @param maxDelayMillis наибольшая задержка записи
+     */
+    public CsvStorage(String fileName, long idleMillis, long maxDelayMillis) {
+        this(fileName, idleMillis, maxDelayMillis, 0);
+    }
+
+    /**
+     * Конструктор хранилища, которое держит в памяти только даты и положения
+     * записей в файле, а прочитанные тексты — в кэше ограниченного объёма.
+     *
+     * @param fileName       имя CSV-файла
+     * @param idleMillis     пауза в правках перед записью; 0 — писать сразу
+     * @param maxDelayMillis наибольшая задержка записи
+     * @param bodyCacheBytes объём кэша текстов в байтах; 0 — хранить
+     *                       прочитанные тексты в индексе, без кэша
+     */
+    public CsvStorage(String fileName, long idleMillis, long maxDelayMillis, long bodyCacheBytes) {
         this.fileName = fileName;
+        this.bodyCache = bodyCacheBytes > 0 ? new NoteBodyCache(bodyCacheBytes) : null;
+        this.journalName = fileName + ".journal";
+        this.csvPath = Paths.get(fileName);
+        this.journalFile = new File(journalName);
+        this.fileLock = InterProcessLock.forFile(fileName);
+        this.idleMillis = idleMillis;
+        this.maxDelayMillis = Math.max(idleMillis, maxDelayMillis);
         ensureCsvExists();
+        if (idleMillis > 0) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    e.printStackTrace(); // JVM уже завершается, сообщить больше некому
+                }
+            }, "csv-flush-on-exit"));
+        }
+    }
+
+    /**
+     * Атомарно записывает поток записей в CSV-файл
+     * (используется для экспорта через меню "Сохранить как").
+     * Записи пишутся по мере чтения из потока, поэтому экспорт
+     * не загружает все тексты в память.
+     *
+     * @param file    файл для записи
+     * @param entries записи в порядке дат
+     * @throws IOException при ошибке записи; файл в этом случае остаётся прежним
+     */
+    public static void write(File file, Stream<NoteEntry> entries) throws IOException {
+        AtomicFileWriter.write(file, writer -> {
+            writer.println(CsvFormat.CURRENT.getHeader());
+            entries.forEachOrdered(entry ->
+                    CsvFormat.CURRENT.writeRecord(writer, entry.getKey(), entry.getText(), entry.getMeta()));
+        });
+    }
+
+    /**
+     * Открывает ленивый поток записей CSV-файла в порядке следования в файле
+     * (используется для импорта, см. {@link NoteMerger}). Файл читается
+     * последовательно по мере запроса записей, без индекса и без отображения
+     * в память, поэтому в памяти находится только текущая строка; текст
+     * декодируется при обращении к {@link NoteEntry#getText()}.
+     * Заголовок, строки без разделителя, с некорректными датами и
+     * с неверной контрольной суммой пропускаются. Поток нужно закрыть,
+     * чтобы закрыть файл.
+     *
+     * @param file CSV-файл
+     * @return поток записей
+     * @throws IOException если файл не удалось открыть
+     */
+    public static Stream<NoteEntry> read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        return StreamSupport.stream(new FileCursor(in), false).onClose(() -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     /**
      * Проверяет наличие CSV-файла. Если файл отсутствует,
-     * создаёт новый и записывает заголовок "date;text".
+     * создаёт новый и записывает заголовок {@link CsvFormat#CURRENT}.
      */
     private void ensureCsvExists() {
         File file = new File(fileName);
-        if (!file.exists()) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-                writer.println("date;text");
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (file.exists()) {
+            return;
+        }
+        fileLock.lock();
+        try {
+            if (!file.exists()) {
+                AtomicFileWriter.write(file, writer -> writer.println(CsvFormat.CURRENT.getHeader()));
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileLock.unlock();
         }
     }
 
     /**
      * Сохраняет или удаляет запись для указанной даты.
      * Если текст пустой — запись удаляется.
-     * Если текст непустой — сохраняется с экранированием переносов строк.
+     * Если текст непустой — сохраняется с экранированием (см. {@link CsvCodec}).
+     * Изменение дописывается в журнал и сбрасывается на диск (в режиме
+     * отложенной записи — позже, вместе с другими изменениями),
+     * сам CSV-файл при этом не переписывается.
+     * Время изменения заметки (см. {@link NoteMeta}) обновляется,
+     * приоритет и категория остаются прежними.
+     *
+     * @param day  дата записи
+     * @param text текст заметки
+     * @throws UncheckedIOException если изменение (или в режиме отложенной
+     *                              записи — прежние изменения) не удалось
+     *                              записать в журнал; изменение остаётся в
+     *                              памяти, и запись повторяется в фоне
+     */
+    public void save(LocalDate day, String text) {
+        save(day, text, null);
+    }
+
+    /**
+     * Сохраняет или удаляет запись для указанной даты, как {@link #save(LocalDate, String)},
+     * и задаёт приоритет и категорию заметки.
      *
-     * @param date дата записи
+     * @param day  дата записи
      * @param text текст заметки
+     * @param tags метаданные, из которых берутся приоритет и категория;
+     *             {@code null} — оставить прежние
+     * @throws UncheckedIOException если изменения не удалось записать в журнал
+     *                              (см. {@link #save(LocalDate, String)})
+     */
+    public void save(LocalDate day, String text, NoteMeta tags) {
+        String dateStr = day.toString();
+        writeLock.lock();
+        try {
+            Snapshot current = refresh();
+            if (bodyCache != null) {
+                bodyCache.invalidate(dateStr);
+            }
+            NoteText note = null;
+            if (text == null || text.isEmpty()) {
+                current.index.remove(dateStr);
+            } else {
+                NoteMeta meta = edited(current.index.get(dateStr), Instant.now());
+                if (tags != null) {
+                    meta = meta.withTags(tags.getPriority(), tags.getCategory());
+                }
+                note = NoteText.of(text, meta);
+                current.index.put(dateStr, note);
+            }
+
+            long now = System.currentTimeMillis();
+            if (dirty.isEmpty()) {
+                firstDirtyTime = now;
+            }
+            lastDirtyTime = now;
+            dirty.put(dateStr, note);
+
+            if (idleMillis <= 0) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    // изменение остаётся несохранённым, повторная запись уже запланирована
+                    throw new UncheckedIOException("Изменение не записано в журнал " + journalName, e);
+                }
+                return;
+            }
+            if (!flushScheduled) {
+                flushScheduled = true;
+                FLUSHER.schedule(this::flushIfDue, idleMillis, TimeUnit.MILLISECONDS);
+            }
+            if (flushFailure != null) {
+                // прежняя отложенная запись не удалась: сообщаем при следующей правке
+                throw new UncheckedIOException("Изменения не записаны в журнал " + journalName, flushFailure);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Сохраняет или удаляет записи для нескольких дат одной транзакцией
+     * (см. {@link Batch}). Пустой текст удаляет запись.
+     *
+     * @param changes записи "дата → текст"
+     * @throws IOException если журнал не удалось записать; изменения в этом случае не применяются
+     */
+    public void saveAll(Map<LocalDate, String> changes) throws IOException {
+        Batch batch = batch();
+        for (Map.Entry<LocalDate, String> change : changes.entrySet()) {
+            batch.put(change.getKey(), change.getValue());
+        }
+        batch.commit();
+    }
+
+    /**
+     * Удаляет все записи за период одной транзакцией (см. {@link Batch}).
+     *
+     * @param from начало периода (включительно)
+     * @param to   конец периода (включительно)
+     * @throws IOException если журнал не удалось записать; записи в этом случае не удаляются
+     */
+    public void deleteRange(LocalDate from, LocalDate to) throws IOException {
+        batch().deleteRange(from, to).commit();
+    }
+
+    /**
+     * Начинает транзакцию: набор изменений, которые применяются
+     * одной записью в журнал и только все вместе.
+     *
+     * @return пустая транзакция
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Применяет изменения транзакции: переводит их в записи журнала по
+     * текущему индексу, дописывает одной транзакцией вместе с несохранёнными
+     * изменениями и только после успешной записи меняет индекс.
+     *
+     * @param operations изменения в порядке добавления
+     * @throws IOException при ошибке записи журнала
+     */
+    private void commit(List<Operation> operations) throws IOException {
+        writeLock.lock();
+        fileLock.lock();
+        try {
+            Snapshot current = refreshChecked();
+            Instant now = Instant.now();
+            Map<String, NoteText> changes = new LinkedHashMap<>();
+            for (Operation operation : operations) {
+                if (!operation.range) {
+                    changes.put(operation.from, operation.text == null ? null
+                            : NoteText.of(operation.text, edited(current.index.get(operation.from), now)));
+                    continue;
+                }
+                if (operation.from.compareTo(operation.to) > 0) {
+                    continue;
+                }
+                for (String key : current.index.subMap(operation.from, true, operation.to, true).keySet()) {
+                    if (parseDay(key) != null) {
+                        changes.put(key, null);
+                    }
+                }
+                // записи, добавленные раньше в этой же транзакции
+                for (Map.Entry<String, NoteText> change : changes.entrySet()) {
+                    String key = change.getKey();
+                    if (key.compareTo(operation.from) >= 0 && key.compareTo(operation.to) <= 0) {
+                        change.setValue(null);
+                    }
+                }
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            appendJournal(changes);
+            snapshot = new Snapshot(withChanges(current.index, changes), csvPath, journalFile);
+            if (bodyCache != null) {
+                for (String key : changes.keySet()) {
+                    bodyCache.invalidate(key);
+                }
+            }
+            scheduleCompaction();
+        } finally {
+            fileLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает несохранённые изменения, если правок не было {@link #idleMillis}
+     * или истекла наибольшая задержка; иначе откладывает проверку.
+     */
+    private void flushIfDue() {
+        writeLock.lock();
+        try {
+            flushScheduled = false;
+            if (dirty.isEmpty()) {
+                return;
+            }
+            long due = Math.min(lastDirtyTime + idleMillis, firstDirtyTime + maxDelayMillis);
+            long now = System.currentTimeMillis();
+            if (now < due) {
+                flushScheduled = true;
+                FLUSHER.schedule(this::flushIfDue, due - now, TimeUnit.MILLISECONDS);
+                return;
+            }
+            flush();
+        } catch (IOException e) {
+            // изменения остаются несохранёнными, повторная запись уже запланирована,
+            // а ошибку получит следующее сохранение (см. flushFailure)
+            e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает все несохранённые изменения в журнал одной пачкой
+     * и сбрасывает журнал на диск. После возврата все сделанные до вызова
+     * сохранения переживут сбой. Если запись не удалась, изменения
+     * остаются несохранёнными, и через {@link #FLUSH_RETRY_MILLIS}
+     * запись повторяется в фоне.
+     *
+     * @throws IOException если журнал не удалось записать
+     */
+    public void flush() throws IOException {
+        writeLock.lock();
+        fileLock.lock();
+        try {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            Snapshot current = refreshChecked();
+
+            appendJournal(Collections.emptyMap());
+            snapshot = new Snapshot(current.index, csvPath, journalFile);
+            scheduleCompaction();
+        } finally {
+            fileLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает в журнал несохранённые изменения и транзакцию и сбрасывает
+     * журнал на диск. Если журнал заканчивается недописанной строкой или
+     * транзакцией (сбой при прошлой записи), они отделяются и отменяются.
+     * После успешной записи несохранённые изменения очищаются; если запись
+     * не удалась, ошибка запоминается в {@link #flushFailure} и повторная
+     * запись несохранённых изменений планируется в {@link #FLUSHER}.
+     * Вызывается под {@link #writeLock} и {@link #fileLock} после {@link #refresh()}.
+     *
+     * @param batch изменения транзакции "строка даты → заметка" ({@code null} — удаление);
+     *              пустая карта — без транзакции
+     * @throws IOException при ошибке записи; журнал в этом случае не считается изменённым
+     */
+    private void appendJournal(Map<String, NoteText> batch) throws IOException {
+        File journal = new File(journalName);
+        try {
+            writeJournal(journal, batch);
+        } catch (IOException e) {
+            if (!dirty.isEmpty()) {
+                flushFailure = e;
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    FLUSHER.schedule(this::flushIfDue, FLUSH_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+            throw e;
+        }
+        journalRecords += dirty.size() + batch.size();
+        dirty.clear();
+        flushFailure = null;
+        journalOffset = journal.length();
+    }
+
+    /**
+     * Дописывает строки {@link #appendJournal(Map)} в журнал и сбрасывает его на диск.
+     *
+     * @param journal файл журнала
+     * @param batch   изменения транзакции; пустая карта — без транзакции
+     * @throws IOException при ошибке записи
+     */
+    private void writeJournal(File journal, Map<String, NoteText> batch) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(journal, true);
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            if (!endsWithNewline(journal)) {
+                // недописанная строка после сбоя не должна склеиться с новыми записями
+                writer.println();
+            }
+            if (journal.length() > journalOffset) {
+                // под блокировкой файла никто не пишет: непрочитанный хвост остался от сбоя
+                writer.println("x;");
+            }
+            writeJournalRecords(writer, dirty);
+            if (!batch.isEmpty()) {
+                writer.println("b;" + batch.size());
+                writeJournalRecords(writer, batch);
+                writer.println("c;" + batch.size());
+            }
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Ошибка записи в журнал " + journalName);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Записывает изменения строками журнала {@code *;дата;метаданные;текст}
+     * (поля метаданных — как в {@link CsvFormat#METADATA}) и {@code -;дата}.
+     * Строки {@code +;дата;текст} без метаданных, которые писались раньше,
+     * по-прежнему читаются (см. {@link #readJournal}).
+     *
+     * @param writer  поток записи журнала
+     * @param records изменения "строка даты → заметка" ({@code null} — удаление)
+     */
+    private static void writeJournalRecords(PrintWriter writer, Map<String, NoteText> records) {
+        for (Map.Entry<String, NoteText> entry : records.entrySet()) {
+            NoteText note = entry.getValue();
+            if (note == null) {
+                writer.println("-;" + entry.getKey());
+            } else {
+                StringBuilder record = new StringBuilder("*;");
+                record.append(entry.getKey()).append(';');
+                note.meta().appendTo(record);
+                record.append(';');
+                CsvCodec.appendEscaped(record, note.peek());
+                writer.println(record);
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что файл пуст или заканчивается переводом строки.
+     *
+     * @param file файл
+     * @return true, если к файлу можно дописать новую строку
+     */
+    private static boolean endsWithNewline(File file) {
+        long length = file.length();
+        if (length == 0) {
+            return true;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(length - 1);
+            return in.read() == '\n';
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Сжимает журнал: переписывает CSV-файл по текущему состоянию кэша
+     * и очищает журнал. CSV записывается через {@link AtomicFileWriter},
+     * поэтому сбой во время сжатия не приводит к потере данных —
+     * CSV и журнал остаются прежними.
      */
-    public void save(Date date, String text) {
-        String dateStr = dateFormat.format(date);
-        Map<String, String> all = loadAll();
+    public void compact() {
+        writeLock.lock();
+        fileLock.lock();
+        try {
+            compactionScheduled = false;
+            Snapshot current = refreshChecked();
+            replaceFile(writer -> {
+                for (Map.Entry<String, NoteText> entry : current.index.entrySet()) {
+                    // заметка, читающая запись из файла, читает её здесь один раз
+                    NoteText note = entry.getValue().load();
+                    CsvFormat.CURRENT.writeRecord(writer, entry.getKey(), note.peek(), note.meta());
+                }
+            }, current);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileLock.unlock();
+            writeLock.unlock();
+        }
+    }
 
-        if (text == null || text.isEmpty()) {
-            all.remove(dateStr);
+    /**
+     * Импортирует записи другого календаря (см. {@link NoteMerger}).
+     * В отличие от реализации по умолчанию, изменения не дописываются
+     * в журнал: за один проход сортированного слияния индекса с файлом
+     * CSV переписывается целиком, как при сжатии, и журнал очищается.
+     * Поэтому импорт миллиона записей стоит одной перезаписи файла, а не
+     * журнала на миллион записей с многократным сжатием, и в памяти не
+     * остаются тексты импортированных заметок. Если индекс в памяти не
+     * загружен (см. {@link #readAll()}), он не загружается и для импорта.
+     * Пачки изменений передаются обработчику после замены файла; если
+     * импорт не удался, файл остаётся прежним и обработчик не вызывается.
+     * Записи импортируемого файла, идущие не по порядку дат, откладываются
+     * во временные файлы рядом с CSV, сортируются и сливаются вторым
+     * таким же проходом (см. {@link NoteMerger.SkippedRecords}), а не по
+     * одной через журнал. Строки с некорректными датами при перезаписи
+     * отбрасываются.
+     *
+     * @param source  импортируемый файл (CSV или двоичное хранилище)
+     * @param policy  правило для дат, на которые заметки есть в обоих календарях
+     * @param applied обработчик каждой пачки изменений "дата → новый текст"
+     * @return итог импорта
+     * @throws IOException если файл не удалось прочитать или переписать
+     */
+    public NoteMerger.Result merge(File source, NoteMerger.Policy policy,
+                                   Consumer<Map<LocalDate, String>> applied) throws IOException {
+        NoteMerger merger = new NoteMerger(this, policy, applied);
+        File directory = new File(fileName).getAbsoluteFile().getParentFile();
+        writeLock.lock();
+        fileLock.lock();
+        try (NoteMerger.SkippedRecords skipped = new NoteMerger.SkippedRecords(directory, policy)) {
+            try (Stream<NoteEntry> mine = readAll(); Stream<NoteEntry> theirs = NoteMerger.read(source)) {
+                mergeFile(merger, mine, theirs, skipped);
+            }
+            if (!skipped.isEmpty()) {
+                try (Stream<NoteEntry> mine = readAll(); Stream<NoteEntry> theirs = skipped.sorted()) {
+                    mergeFile(merger, mine, theirs, null);
+                }
+            }
+        } finally {
+            fileLock.unlock();
+            writeLock.unlock();
+        }
+        return merger.getResult();
+    }
+
+    /**
+     * Переписывает CSV одним проходом слияния и после замены файла
+     * передаёт записанные изменения обработчику импорта.
+     * Вызывается только под {@link #writeLock} и {@link InterProcessLock}.
+     *
+     * @param merger  слияние
+     * @param mine    записи хранилища в порядке дат
+     * @param theirs  импортируемые записи
+     * @param skipped получатель записей не по порядку; {@code null}, если их нет
+     * @throws IOException если файл не удалось переписать
+     */
+    private void mergeFile(NoteMerger merger, Stream<NoteEntry> mine, Stream<NoteEntry> theirs,
+                           NoteMerger.SkippedRecords skipped) throws IOException {
+        replaceFile(writer -> merger.rewrite(mine.iterator(), theirs.iterator(),
+                (day, text, meta) -> CsvFormat.CURRENT.writeRecord(writer, day.toString(), text, meta),
+                skipped), null);
+        try (Stream<NoteEntry> merged = readAll()) {
+            merger.publish(merged.iterator());
+        }
+    }
+
+    /**
+     * Возвращает поток всех записей для перезаписи файла. Если индекс
+     * в памяти загружен, записи берутся из него; иначе, если даты в CSV
+     * идут по порядку, файл читается последовательно (см. {@link #read(File)})
+     * с наложением журнала, так что в памяти оказывается только журнал.
+     * Вызывается только под {@link #writeLock} и {@link InterProcessLock}.
+     *
+     * @return поток записей с корректными датами в порядке дат
+     * @throws IOException если файл не удалось прочитать
+     */
+    private Stream<NoteEntry> readAll() throws IOException {
+        File file = new File(fileName);
+        if (snapshot == null && dirty.isEmpty()) {
+            if (offsetIndex == null || !offsetIndex.isCurrent(file)) {
+                offsetIndex = CsvOffsetIndex.open(file);
+            }
+            if (offsetIndex != null) {
+                NavigableMap<String, NoteText> journal = new TreeMap<>();
+                readJournal(new File(journalName), 0, journal::put);
+                Stream<NoteEntry> records = read(file);
+                return StreamSupport.stream(new JournalOverlay(records.iterator(), journal), false)
+                        .onClose(records::close);
+            }
+        }
+        ConcurrentSkipListMap<String, NoteText> index = refreshChecked().index;
+        return NoteCursor.stream((day, inclusive) -> seek(index, day, inclusive), null, null);
+    }
+
+    /**
+     * Атомарно переписывает CSV, очищает журнал и строит индекс смещений.
+     * Вызывается только под {@link #writeLock} и {@link InterProcessLock}.
+     *
+     * @param records запись строк CSV после заголовка
+     * @param current снимок, индекс которого совпадает с переписанным файлом;
+     *                {@code null} — индекс отпускается и при следующем
+     *                обращении собирается по переписанному файлу
+     * @throws IOException если файл не удалось переписать или его версия
+     *                     неизвестна (см. {@link CsvFormat}); файл и журнал
+     *                     в этом случае остаются прежними
+     */
+    private void replaceFile(AtomicFileWriter.Content records, Snapshot current) throws IOException {
+        // файл неизвестной версии не переписывается: его записи не прочитаны
+        CsvFormat.of(new File(fileName));
+        AtomicFileWriter.write(new File(fileName), writer -> {
+            writer.println(CsvFormat.CURRENT.getHeader());
+            records.writeTo(writer);
+        });
+        Files.deleteIfExists(new File(journalName).toPath());
+        journalRecords = 0;
+        journalOffset = 0;
+        journalView = null;
+        dirty.clear(); // несохранённые изменения вошли в переписанный CSV
+        flushFailure = null;
+        if (bodyCache != null || current == null) {
+            // тексты из журнала лежат в индексе строками — отпускаем индекс,
+            // при следующем обращении он соберётся по переписанному файлу
+            snapshot = null;
+            if (bodyCache != null) {
+                bodyCache.clear();
+            }
         } else {
-            String escaped = text.replace("\n", "\\n");
-            all.put(dateStr, escaped);
+            snapshot = new Snapshot(current.index, csvPath, journalFile);
+        }
+        try {
+            File file = new File(fileName);
+            offsetIndex = CsvOffsetIndex.build(file);
+            if (offsetIndex != null) {
+                offsetIndex.write(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // без индекса смещений файл читается целиком
+        }
+    }
+
+    /**
+     * Возвращает актуальный индекс для чтения. Если файлы не менялись,
+     * блокировка не берётся; иначе файл перечитывается под {@link #writeLock}.
+     * Пока работает поток отслеживания, отметки файлов не сверяются: об
+     * изменениях других процессов сообщает {@link WatchService}.
+     *
+     * @return индекс "строка даты → текст"
+     */
+    private ConcurrentNavigableMap<String, NoteText> index() {
+        Snapshot current = snapshot;
+        if (current != null && (watcher != null || current.isCurrent(csvPath, journalFile))) {
+            return current.index;
+        }
+        writeLock.lock();
+        try {
+            return refresh().index;
+        } finally {
+            writeLock.unlock();
         }
+    }
+
+    /**
+     * Перечитывает изменившиеся файлы, если с момента последней загрузки
+     * у CSV-файла или журнала изменились время модификации или размер.
+     * Если CSV не менялся, а журнал только вырос, применяется лишь новый
+     * хвост журнала; иначе индекс собирается заново. Об изменениях дат
+     * сообщается обработчикам. Вызывается только под {@link #writeLock}.
+     * <p>
+     * Если CSV-файл не удалось прочитать (например, его версия неизвестна,
+     * см. {@link CsvFormat}), снимок отпускается и выбрасывается исключение:
+     * пустой индекс не публикуется, поэтому чтение сообщает об ошибке,
+     * а сохранения отклоняются, пока файл не станет читаемым.
+     * </p>
+     *
+     * @return актуальный снимок
+     * @throws UncheckedIOException если CSV-файл не удалось прочитать
+     */
+    private Snapshot refresh() {
+        Snapshot current = snapshot;
+        if (current != null && current.isCurrent(csvPath, journalFile)) {
+            return current;
+        }
+
+        fileLock.lock();
+        try {
+            // отметки снимаются до чтения: изменение во время чтения приведёт к повторной загрузке
+            Snapshot stamps = new Snapshot(null, csvPath, journalFile);
+            Set<String> changed = current == null || listeners.isEmpty() ? null : new TreeSet<>();
+            ConcurrentSkipListMap<String, NoteText> index;
+            if (current != null && current.sameCsv(stamps) && stamps.journalLength >= journalOffset) {
+                // CSV не менялся — дочитываем только новые записи журнала
+                Map<String, NoteText> tail = new LinkedHashMap<>();
+                journalOffset = replayJournal(new File(journalName), journalOffset, tail, changed);
+                for (Map.Entry<String, NoteText> entry : tail.entrySet()) {
+                    // несохранённые правки новее записей других процессов
+                    if (dirty.containsKey(entry.getKey())) {
+                        entry.setValue(dirty.get(entry.getKey()));
+                    }
+                }
+                index = withChanges(current.index, tail);
+            } else {
+                index = new ConcurrentSkipListMap<>();
+                try {
+                    if (bodyCache != null) {
+                        MappedCsvReader.readLocated(new File(fileName), index);
+                    } else {
+                        MappedCsvReader.readParallel(new File(fileName), index);
+                    }
+                } catch (IOException e) {
+                    snapshot = null;
+                    throw new UncheckedIOException("Не удалось прочитать " + fileName, e);
+                }
+                journalRecords = 0;
+                Map<String, NoteText> journal = new LinkedHashMap<>();
+                journalOffset = replayJournal(new File(journalName), 0, journal, null);
+                applyChanges(index, journal);
+                applyChanges(index, dirty);
+                if (changed != null) {
+                    diff(current.index, index, changed);
+                }
+            }
+            current = new Snapshot(index, stamps);
+            snapshot = current;
+            scheduleCompaction();
+            if (changed != null && !changed.isEmpty()) {
+                fireChanged(index, changed);
+            }
+            return current;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Вызывает {@link #refresh()} для методов, сообщающих об ошибках
+     * файла через {@link IOException}.
+     *
+     * @return актуальный снимок
+     * @throws IOException если CSV-файл не удалось прочитать
+     */
+    private Snapshot refreshChecked() throws IOException {
+        try {
+            return refresh();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Применяет изменения к индексу на месте. Несохранённые изменения
+     * применяются к перечитанному индексу последними, чтобы изменения
+     * других процессов не вытеснили более новые правки.
+     *
+     * @param index   индекс
+     * @param changes изменения "строка даты → заметка" ({@code null} — удаление)
+     */
+    private static void applyChanges(Map<String, NoteText> index, Map<String, NoteText> changes) {
+        for (Map.Entry<String, NoteText> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                index.remove(entry.getKey());
+            } else {
+                index.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Применяет изменения к опубликованному индексу так, чтобы читатели
+     * видели их все сразу. Одно изменение применяется на месте; несколько
+     * применяются к копии индекса, которая затем публикуется новым
+     * снимком (см. {@link Snapshot}). Копия строится за линейное время
+     * от размера индекса.
+     *
+     * @param index   опубликованный индекс
+     * @param changes изменения "строка даты → заметка" ({@code null} — удаление)
+     * @return индекс с применёнными изменениями
+     */
+    private static ConcurrentSkipListMap<String, NoteText> withChanges(
+            ConcurrentSkipListMap<String, NoteText> index, Map<String, NoteText> changes) {
+        if (changes.size() > 1) {
+            index = new ConcurrentSkipListMap<>(index);
+        }
+        applyChanges(index, changes);
+        return index;
+    }
+
+    /**
+     * Собирает даты, записи которых отличаются в двух индексах.
+     *
+     * @param before  прежний индекс
+     * @param after   новый индекс
+     * @param changed множество, в которое добавляются изменившиеся даты
+     */
+    private static void diff(Map<String, NoteText> before, Map<String, NoteText> after, Set<String> changed) {
+        for (Map.Entry<String, NoteText> entry : before.entrySet()) {
+            NoteText now = after.get(entry.getKey());
+            if (now == null || !now.peek().equals(entry.getValue().peek())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : after.keySet()) {
+            if (!before.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+    }
+
+    /**
+     * Сообщает обработчикам об изменившихся датах.
+     *
+     * @param index   актуальный индекс
+     * @param changed изменившиеся даты
+     */
+    private void fireChanged(Map<String, NoteText> index, Set<String> changed) {
+        Map<LocalDate, String> changes = new LinkedHashMap<>();
+        for (String key : changed) {
+            LocalDate day = parseDay(key);
+            if (day != null) {
+                NoteText note = index.get(key);
+                changes.put(day, note == null ? "" : note.peek());
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<LocalDate, String> unmodifiable = Collections.unmodifiableMap(changes);
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.notesChanged(unmodifiable);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Добавляет обработчик изменений, сделанных другими процессами,
+     * и при первом вызове запускает отслеживание файлов через {@link WatchService}.
+     * Обработчик вызывается в потоке, обнаружившем изменение.
+     * Обработчик регистрируется и отслеживание запускается, даже если
+     * файл сейчас не читается: он перечитается, когда его исправят.
+     *
+     * @param listener обработчик
+     * @throws UncheckedIOException если CSV-файл не удалось прочитать
+     */
+    public void addChangeListener(ChangeListener listener) {
+        writeLock.lock();
+        try {
+            boolean started = watcher == null;
+            try {
+                index(); // изменения отсчитываются от текущего состояния файла
+            } finally {
+                listeners.add(listener);
+                if (started) {
+                    watcher = startWatcher();
+                }
+            }
+            if (started) {
+                refresh(); // изменения, сделанные до регистрации в WatchService
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Запускает поток, отслеживающий изменения CSV-файла и журнала.
+     *
+     * @return запущенный поток или {@code null}, если отслеживание недоступно
+     */
+    private Thread startWatcher() {
+        Path file = Paths.get(fileName).toAbsolutePath();
+        Path dir = file.getParent();
+        Path csvName = file.getFileName();
+        Path journal = Paths.get(journalName).getFileName();
+        WatchService service;
+        try {
+            service = dir.getFileSystem().newWatchService();
+            dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    boolean relevant = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || csvName.equals(context) || journal.equals(context)) {
+                            relevant = true;
+                        }
+                    }
+                    key.reset();
+                    if (relevant) {
+                        reload();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ignored) {
+                // отслеживание остановлено
+            }
+        }, "csv-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Перечитывает изменившиеся файлы и сообщает обработчикам об изменениях
+     * (вызывается потоком отслеживания).
+     */
+    private void reload() {
+        writeLock.lock();
+        try {
+            refresh();
+        } catch (UncheckedIOException e) {
+            // файл перечитается при следующем изменении или обращении
+            e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Ставит сжатие в очередь, если журнал достиг порога.
+     * Вызывается только под {@link #writeLock}.
+     */
+    private void scheduleCompaction() {
+        if (journalRecords >= COMPACT_THRESHOLD && !compactionScheduled) {
+            compactionScheduled = true;
+            COMPACTOR.execute(this::compact);
+        }
+    }
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
-            writer.println("date;text");
-            for (Map.Entry<String, String> entry : all.entrySet()) {
-                writer.println(entry.getKey() + ";" + entry.getValue());
+    /**
+     * Применяет записи журнала, начиная с указанного смещения, к индексу
+     * в порядке их добавления и увеличивает {@link #journalRecords}.
+     * Последняя строка без завершающего перевода строки считается
+     * недописанной (сбой или запись другим процессом) и пропускается:
+     * она будет прочитана при следующем обращении.
+     *
+     * @param journal файл журнала
+     * @param from    смещение в байтах, с которого читается журнал
+     * @param records получатель записей "строка даты → заметка" ({@code null} — удаление)
+     * @param changed множество, в которое добавляются изменённые даты, или {@code null}
+     * @return смещение конца последней полной строки
+     */
+    private long replayJournal(File journal, long from, Map<String, NoteText> records, Set<String> changed) {
+        return readJournal(journal, from, (key, text) -> {
+            records.put(key, text);
+            journalRecords++;
+            if (changed != null) {
+                changed.add(key);
             }
+        });
+    }
+
+    /**
+     * Читает полные строки журнала, начиная с указанного смещения.
+     * Записи транзакции передаются получателю только при встрече строки
+     * её завершения; транзакция, прерванная строкой {@code x;} или началом
+     * другой транзакции, пропускается. Если журнал заканчивается
+     * незавершённой транзакцией, возвращается смещение её начала.
+     *
+     * @param journal файл журнала
+     * @param from    смещение в байтах, с которого читается журнал
+     * @param sink    получатель записей "строка даты → заметка"; {@code null} — удаление
+     * @return смещение конца последней полной строки
+     */
+    private static long readJournal(File journal, long from, BiConsumer<String, NoteText> sink) {
+        byte[] content;
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= from) {
+                return from;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - from));
+            while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0) {
+                // читаем хвост журнала целиком
+            }
+            content = Arrays.copyOf(buffer.array(), buffer.position());
+        } catch (NoSuchFileException e) {
+            return from;
         } catch (IOException e) {
             e.printStackTrace();
+            return from;
+        }
+
+        int start = 0;
+        // записи открытой транзакции и смещение строки её начала
+        List<String> batchKeys = null;
+        List<NoteText> batchTexts = null;
+        int batchStart = 0;
+        for (int end = 0; end < content.length; end++) {
+            if (content[end] != '\n') {
+                continue;
+            }
+            int lineStart = start;
+            int lineEnd = end > start && content[end - 1] == '\r' ? end - 1 : end;
+            start = end + 1;
+
+            // *;дата;метаданные;текст, +;дата;текст, -;дата, b;N, c;N или x;
+            if (lineEnd - lineStart < 2 || content[lineStart + 1] != ';') {
+                continue;
+            }
+            byte type = content[lineStart];
+            if (type == 'b') {
+                batchKeys = new ArrayList<>();
+                batchTexts = new ArrayList<>();
+                batchStart = lineStart;
+                continue;
+            }
+            if (type == 'c') {
+                if (batchKeys != null && parseCount(content, lineStart + 2, lineEnd) == batchKeys.size()) {
+                    for (int i = 0; i < batchKeys.size(); i++) {
+                        sink.accept(batchKeys.get(i), batchTexts.get(i));
+                    }
+                }
+                batchKeys = null;
+                batchTexts = null;
+                continue;
+            }
+            if (type == 'x') {
+                batchKeys = null;
+                batchTexts = null;
+                continue;
+            }
+
+            int keyStart = lineStart + 2;
+            int separator = keyStart;
+            while (separator < lineEnd && content[separator] != ';') {
+                separator++;
+            }
+            String key;
+            NoteText text;
+            int metaEnd;
+            if (type == '*' && separator < lineEnd
+                    && (metaEnd = NoteMeta.skip(ByteBuffer.wrap(content), separator + 1, lineEnd)) >= 0) {
+                key = CsvCodec.decode(content, keyStart, separator - keyStart);
+                text = NoteText.of(CsvCodec.decode(content, metaEnd + 1, lineEnd - metaEnd - 1),
+                        NoteMeta.parse(ByteBuffer.wrap(content), separator + 1, metaEnd));
+            } else if (type == '+' && separator < lineEnd) {
+                key = CsvCodec.decode(content, keyStart, separator - keyStart);
+                text = NoteText.of(CsvCodec.decode(content, separator + 1, lineEnd - separator - 1));
+            } else if (type == '-' && separator == lineEnd) {
+                key = CsvCodec.decode(content, keyStart, separator - keyStart);
+                text = null;
+            } else {
+                continue;
+            }
+            if (batchKeys != null) {
+                batchKeys.add(key);
+                batchTexts.add(text);
+            } else {
+                sink.accept(key, text);
+            }
         }
+        // незавершённая транзакция будет прочитана снова, когда её допишут
+        return from + (batchKeys != null ? batchStart : start);
     }
 
     /**
-     * Загружает все записи из CSV в виде карты "строка даты → текст".
-     * При чтении переносы строк восстанавливаются.
+     * Разбирает количество записей транзакции из строки журнала.
      *
-     * @return карта всех записей
+     * @param content содержимое журнала
+     * @param start   начало числа
+     * @param end     конец строки
+     * @return количество или -1, если число некорректно
      */
-    public Map<String, String> loadAll() {
-        Map<String, String> data = new LinkedHashMap<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            reader.readLine(); // пропускаем заголовок
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(";", 2);
-                if (parts.length == 2) {
-                    String restored = parts[1].replace("\\n", "\n");
-                    data.put(parts[0], restored);
+    private static int parseCount(byte[] content, int start, int end) {
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (content[i] < '0' || content[i] > '9') {
+                return -1;
+            }
+            count = count * 10 + (content[i] - '0');
+        }
+        return count;
+    }
+
+    /**
+     * Читает записи в диапазоне дат прямо из CSV по разреженному индексу
+     * {@link CsvOffsetIndex} и применяет к ним журнал. Используется, пока
+     * индекс в памяти не загружен. Даты строк сравниваются как номера дней.
+     * <p>
+     * Блокировки не берутся: отметки CSV-файла и журнала снимаются до и после
+     * чтения, и если за это время файлы изменились (сохранение или сжатие),
+     * чтение повторяется. Прочитанный журнал запоминается в {@link #journalView}
+     * до его следующего изменения, поэтому повторные запросы читают только
+     * строки CSV.
+     * </p>
+     *
+     * @param from нижняя граница (включительно)
+     * @param to   верхняя граница (включительно)
+     * @return записи диапазона или {@code null}, если индекс в памяти уже
+     *         загружен, файл не читается, даты в CSV не по порядку либо
+     *         файлы меняются быстрее, чем читаются
+     */
+    private NavigableMap<String, NoteText> readRange(LocalDate from, LocalDate to) {
+        File file = new File(fileName);
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        try {
+            for (int attempt = 0; attempt < RANGE_READ_ATTEMPTS; attempt++) {
+                if (snapshot != null) {
+                    return null;
+                }
+                // отметки снимаются до чтения: изменение во время чтения приведёт к повтору
+                Snapshot stamps = new Snapshot(null, csvPath, journalFile);
+                CsvOffsetIndex offsets = offsetIndex;
+                if (offsets == null || !offsets.isCurrent(file)) {
+                    offsets = CsvOffsetIndex.open(file);
+                    if (offsets == null) {
+                        // даты в файле не по порядку (файл правили вручную) — сжатие перепишет его
+                        writeLock.lock();
+                        try {
+                            if (!compactionScheduled) {
+                                compactionScheduled = true;
+                                COMPACTOR.execute(this::compact);
+                            }
+                        } finally {
+                            writeLock.unlock();
+                        }
+                        return null;
+                    }
+                    offsetIndex = offsets;
+                }
+
+                NavigableMap<String, NoteText> range = new TreeMap<>();
+                long start = offsets.seek(fromDay);
+                if (start >= 0) {
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        CsvOffsetIndex.scan(channel, start, offsets.getFormat(), (offset, key, text) -> {
+                            int day = CsvOffsetIndex.parseDay(key);
+                            if (day > toDay) {
+                                return false;
+                            }
+                            if (day >= fromDay) {
+                                range.put(key, text);
+                            }
+                            return true;
+                        });
+                    }
+                }
+                for (Map.Entry<String, NoteText> change : journal(stamps).entrySet()) {
+                    int day = CsvOffsetIndex.parseDay(change.getKey());
+                    if (day < fromDay || day > toDay) {
+                        continue;
+                    }
+                    if (change.getValue() == null) {
+                        range.remove(change.getKey());
+                    } else {
+                        range.put(change.getKey(), change.getValue());
+                    }
+                }
+                if (snapshot == null && new Snapshot(null, csvPath, journalFile).sameFiles(stamps)) {
+                    return range;
                 }
             }
+            return null; // файлы всё время меняются — читаем через индекс в памяти
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Возвращает записи журнала для {@link #readRange(LocalDate, LocalDate)}:
+     * запомненные, если CSV-файл и журнал с тех пор не менялись, иначе
+     * журнал перечитывается целиком.
+     *
+     * @param stamps отметки файлов, снятые до чтения
+     * @return изменения "строка даты → заметка" ({@code null} — удаление)
+     */
+    private Map<String, NoteText> journal(Snapshot stamps) {
+        JournalView view = journalView;
+        if (view == null || !view.stamps.sameFiles(stamps)) {
+            Map<String, NoteText> records = new HashMap<>();
+            readJournal(journalFile, 0, records::put);
+            view = new JournalView(stamps, Collections.unmodifiableMap(records));
+            journalView = view;
+        }
+        return view.records;
+    }
+
+    /**
+     * Загружает все записи из CSV в виде карты "строка даты → текст".
+     * При чтении экранирование снимается. В режиме кэша текстов
+     * (см. {@link #getBodyCache()}) тексты не сохраняются ни в индексе,
+     * ни в кэше.
+     *
+     * @return карта всех записей
+     */
+    public Map<String, String> loadAll() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, NoteText> entry : index().entrySet()) {
+            NoteText note = entry.getValue();
+            result.put(entry.getKey(), bodyCache == null ? note.text() : note.peek());
         }
-        return data;
+        return result;
     }
 
     /**
      * Получает запись по конкретной дате.
      *
-     * @param date дата
+     * @param day дата
      * @return текст заметки или пустая строка, если записи нет
      */
-    public String getByDate(Date date) {
-        String key = dateFormat.format(date);
-        return loadAll().getOrDefault(key, "");
+    public String getByDate(LocalDate day) {
+        String key = day.toString();
+        if (snapshot == null) {
+            NavigableMap<String, NoteText> range = readRange(day, day);
+            if (range != null) {
+                NoteText note = range.get(key);
+                return note == null ? "" : note.text();
+            }
+        }
+        NoteText note = index().get(key);
+        if (note == null) {
+            return "";
+        }
+        return bodyCache == null ? note.text() : bodyCache.get(key, note);
+    }
+
+    /**
+     * Возвращает кэш текстов со статистикой попаданий и промахов.
+     *
+     * @return кэш или {@code null}, если хранилище держит тексты в индексе
+     */
+    public NoteBodyCache getBodyCache() {
+        return bodyCache;
     }
 
     /**
@@ -121,59 +1504,441 @@ public class CsvStorage {
      * @return множество строковых дат
      */
     public Set<String> getAllDates() {
-        return new HashSet<>(loadAll().keySet());
+        return new HashSet<>(index().keySet());
     }
 
     /**
-     * Загружает все записи в виде карты "Date → текст".
+     * Возвращает ленивый поток записей за период. Файл перечитывается
+     * (при изменении) один раз при открытии потока; дальше курсор
+     * идёт по индексу в памяти. Если индекс ещё не загружен, а период
+     * ограничен с обеих сторон, читаются только строки периода
+     * (см. {@link #readRange(LocalDate, LocalDate)}).
+     * Записи с некорректными ключами пропускаются.
      *
-     * @return карта всех записей с объектами Date
+     * @param from начало периода (включительно); {@code null} — с первой записи
+     * @param to   конец периода (включительно); {@code null} — до последней записи
+     * @return поток записей
      */
-    public Map<Date, String> getAllAsDates() {
-        Map<Date, String> result = new TreeMap<>();
-        Map<String, String> all = loadAll();
-        for (Map.Entry<String, String> entry : all.entrySet()) {
-            try {
-                Date d = dateFormat.parse(entry.getKey());
-                result.put(d, entry.getValue());
-            } catch (Exception ignored) {}
-        }
-        return result;
+    public Stream<NoteEntry> stream(LocalDate from, LocalDate to) {
+        NavigableMap<String, NoteText> range = snapshot == null && from != null && to != null
+                && !from.isAfter(to) ? readRange(from, to) : null;
+        NavigableMap<String, NoteText> index = range != null ? range : index();
+        return NoteCursor.stream((day, inclusive) -> seek(index, day, inclusive), from, to);
     }
 
     /**
-     * Возвращает записи за указанный период.
+     * Находит в индексе первую запись с корректным ключом
+     * не раньше (или строго позже) указанной даты.
+     * Ключи yyyy-MM-dd упорядочены так же, как даты, поэтому
+     * поиск идёт по строковому представлению даты.
      *
-     * @param from начало периода (включительно)
-     * @param to конец периода (включительно)
-     * @return карта записей в пределах периода
+     * @param index     индекс
+     * @param day       дата; {@code null} — с начала индекса
+     * @param inclusive учитывать ли запись за саму дату
+     * @return запись или {@code null}, если дальше записей нет
      */
-    public Map<Date, String> getByPeriod(Date from, Date to) {
-        Map<Date, String> all = getAllAsDates();
-        Map<Date, String> result = new LinkedHashMap<>();
-        for (Map.Entry<Date, String> entry : all.entrySet()) {
-            Date d = entry.getKey();
-            if (!d.before(from) && !d.after(to)) {
-                result.put(d, entry.getValue());
+    private NoteEntry seek(NavigableMap<String, NoteText> index, LocalDate day, boolean inclusive) {
+        Map.Entry<String, NoteText> entry = day == null ? index.firstEntry()
+                : inclusive ? index.ceilingEntry(day.toString()) : index.higherEntry(day.toString());
+        while (entry != null) {
+            LocalDate d = parseDay(entry.getKey());
+            if (d != null) {
+                return new NoteEntry(d, entry.getValue());
             }
+            entry = index.higherEntry(entry.getKey());
         }
-        return result;
+        return null;
     }
 
     /**
-     * Возвращает ближайшую будущую дату с записью,
-     * начиная от указанной даты.
+     * Возвращает метаданные заметки после изменения её текста.
      *
-     * @param from дата отсчёта
-     * @return ближайшая запись или null, если её нет
+     * @param old прежняя заметка или {@code null}, если её не было
+     * @param now время изменения
+     * @return метаданные с прежними временем создания, приоритетом и категорией
      */
-    public Map.Entry<Date, String> getNearestFutureDate(Date from) {
-        Map<Date, String> all = getAllAsDates();
-        for (Map.Entry<Date, String> entry : all.entrySet()) {
-            if (!entry.getKey().before(from)) {
-                return entry; // TreeMap гарантирует ближайшую
+    private static NoteMeta edited(NoteText old, Instant now) {
+        return (old == null ? NoteMeta.EMPTY : old.meta()).edited(now);
+    }
+
+    /**
+     * Разбирает строковый ключ yyyy-MM-dd.
+     *
+     * @param key строка даты
+     * @return дата или null, если ключ некорректен
+     */
+    private static LocalDate parseDay(String key) {
+        int day = CsvOffsetIndex.parseDay(key);
+        return day == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * Транзакция: изменения накапливаются в памяти и при {@link #commit()}
+     * дописываются в журнал одной записью с одним сбросом на диск.
+     * Если запись не удалась, ни одно изменение не применяется — ни в файле,
+     * ни в индексе. Период в {@link #deleteRange(LocalDate, LocalDate)}
+     * разворачивается в даты при фиксации, по актуальному состоянию файла.
+     * В режиме отложенной записи транзакция записывается сразу, вместе
+     * с накопленными к этому моменту изменениями.
+     */
+    public final class Batch {
+
+        /**
+         * Изменения в порядке добавления.
+         */
+        private final List<Operation> operations = new ArrayList<>();
+
+        /**
+         * Признак того, что транзакция уже зафиксирована.
+         */
+        private boolean committed;
+
+        private Batch() {
+        }
+
+        /**
+         * Добавляет сохранение или удаление записи.
+         *
+         * @param day  дата записи
+         * @param text текст заметки; пустой — удаление
+         * @return эта транзакция
+         */
+        public Batch put(LocalDate day, String text) {
+            String key = day.toString();
+            operations.add(new Operation(key, key, text == null || text.isEmpty() ? null : text, false));
+            return this;
+        }
+
+        /**
+         * Добавляет удаление записи.
+         *
+         * @param day дата записи
+         * @return эта транзакция
+         */
+        public Batch delete(LocalDate day) {
+            return put(day, null);
+        }
+
+        /**
+         * Добавляет удаление всех записей за период.
+         *
+         * @param from начало периода (включительно)
+         * @param to   конец периода (включительно)
+         * @return эта транзакция
+         */
+        public Batch deleteRange(LocalDate from, LocalDate to) {
+            operations.add(new Operation(from.toString(), to.toString(), null, true));
+            return this;
+        }
+
+        /**
+         * Возвращает количество добавленных изменений.
+         *
+         * @return количество изменений (период считается одним изменением)
+         */
+        public int size() {
+            return operations.size();
+        }
+
+        /**
+         * Применяет все изменения транзакции.
+         *
+         * @throws IOException если журнал не удалось записать; изменения не применяются,
+         *                     и фиксацию можно повторить
+         * @throws IllegalStateException если транзакция уже зафиксирована
+         */
+        public void commit() throws IOException {
+            if (committed) {
+                throw new IllegalStateException("Транзакция уже зафиксирована");
+            }
+            CsvStorage.this.commit(operations);
+            committed = true;
+        }
+    }
+
+    /**
+     * Изменение в транзакции: запись за один день или удаление периода.
+     */
+    private static final class Operation {
+        final String from;
+        final String to;
+        final String text;
+        final boolean range;
+
+        Operation(String from, String to, String text, boolean range) {
+            this.from = from;
+            this.to = to;
+            this.text = text;
+            this.range = range;
+        }
+    }
+
+    /**
+     * Последовательное чтение записей CSV-файла для {@link #read(File)}:
+     * файл читается блоками, на каждом шаге из них выбирается одна строка.
+     */
+    private static final class FileCursor extends Spliterators.AbstractSpliterator<NoteEntry> {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position;
+        private int limit;
+        private byte[] line = new byte[256];
+        private CsvFormat format;
+
+        FileCursor(InputStream in) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.in = in;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super NoteEntry> action) {
+            try {
+                while (true) {
+                    int length = 0;
+                    boolean eof = false;
+                    while (true) {
+                        if (position == limit) {
+                            limit = in.read(buffer);
+                            position = 0;
+                            if (limit <= 0) {
+                                limit = 0;
+                                eof = true;
+                                break;
+                            }
+                        }
+                        byte b = buffer[position++];
+                        if (b == '\n') {
+                            break;
+                        }
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                    }
+                    if (eof && length == 0) {
+                        return false;
+                    }
+                    NoteEntry entry = parseLine(length);
+                    if (entry != null) {
+                        action.accept(entry);
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Разбирает прочитанную строку {@code дата;текст}. Формат записей
+         * определяется по первой строке файла.
+         *
+         * @param length длина строки без перевода строки
+         * @return запись или {@code null}, если строка не является записью
+         * @throws IOException если версия формата файла неизвестна
+         */
+        private NoteEntry parseLine(int length) throws IOException {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (format == null) {
+                format = CsvFormat.ofHeader(ByteBuffer.wrap(line), 0, length);
+                if (format != CsvFormat.PLAIN) {
+                    return null; // заголовок
+                }
+            }
+            length = format.textEnd(ByteBuffer.wrap(line), 0, length);
+            if (length < 0) {
+                return null;
+            }
+            int separator = 0;
+            while (separator < length && line[separator] != ';') {
+                separator++;
+            }
+            if (separator == length) {
+                return null;
+            }
+            int textStart = format.textStart(ByteBuffer.wrap(line), separator, length);
+            if (textStart < 0) {
+                return null;
+            }
+            LocalDate day = parseDay(new String(line, 0, separator, StandardCharsets.UTF_8));
+            if (day == null) {
+                return null;
+            }
+            int metaLength = textStart - separator - 1;
+            ByteBuffer record = ByteBuffer.wrap(Arrays.copyOfRange(line, separator + 1, length));
+            return new NoteEntry(day, format.note(record, metaLength, length - separator - 1, metaLength));
+        }
+    }
+
+    /**
+     * Записи CSV-файла в порядке дат с наложенными поверх изменениями
+     * из журнала (см. {@link #readAll()}).
+     */
+    private static final class JournalOverlay extends Spliterators.AbstractSpliterator<NoteEntry> {
+
+        private final Iterator<NoteEntry> records;
+        private final Iterator<Map.Entry<String, NoteText>> changes;
+        private NoteEntry record;
+        private Map.Entry<String, NoteText> change;
+
+        /**
+         * Конструктор.
+         *
+         * @param records записи файла в порядке дат
+         * @param journal изменения "строка даты → заметка" ({@code null} — удаление)
+         */
+        JournalOverlay(Iterator<NoteEntry> records, NavigableMap<String, NoteText> journal) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.records = records;
+            this.changes = journal.entrySet().iterator();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super NoteEntry> action) {
+            while (true) {
+                if (record == null && records.hasNext()) {
+                    record = records.next();
+                }
+                if (change == null && changes.hasNext()) {
+                    change = changes.next();
+                }
+                if (record == null && change == null) {
+                    return false;
+                }
+                int order = record == null ? 1 : change == null ? -1 : record.getKey().compareTo(change.getKey());
+                if (order < 0) {
+                    action.accept(record);
+                    record = null;
+                    return true;
+                }
+                if (order == 0) {
+                    record = null; // запись журнала заменяет строку файла
+                }
+                Map.Entry<String, NoteText> next = change;
+                change = null;
+                LocalDate day = parseDay(next.getKey());
+                if (next.getValue() != null && day != null) {
+                    action.accept(new NoteEntry(day, next.getValue()));
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Записи журнала, прочитанные для {@link #readRange(LocalDate, LocalDate)},
+     * и отметки файлов, которым они соответствуют.
+     */
+    private static final class JournalView {
+        final Snapshot stamps;
+        final Map<String, NoteText> records;
+
+        JournalView(Snapshot stamps, Map<String, NoteText> records) {
+            this.stamps = stamps;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Неизменяемый снимок кэша: индекс и отметки файлов, которым он соответствует.
+     * На месте индекс изменяется только одиночными сохранениями под
+     * {@link #writeLock}. Транзакции и дочитанный хвост журнала применяются
+     * к копии индекса, и новый снимок публикуется один раз, поэтому читатель
+     * видит такие изменения либо все, либо ни одного; при перечитывании
+     * файла тоже создаётся новый снимок с новым индексом.
+     * <p>
+     * У журнала запоминается только размер: между сжатиями он только
+     * дописывается, а удаляется вместе с заменой CSV-файла, отметки
+     * которого тогда изменятся. Поэтому проверка снимка — это один
+     * {@code stat} CSV-файла и один — журнала.
+     * </p>
+     */
+    private static final class Snapshot {
+
+        final ConcurrentSkipListMap<String, NoteText> index;
+        final long loadedModified;
+        final long loadedLength;
+        final long journalLength;
+
+        /**
+         * Создаёт снимок с текущими отметками файлов.
+         *
+         * @param index   индекс
+         * @param csv     CSV-файл
+         * @param journal файл журнала
+         */
+        Snapshot(ConcurrentSkipListMap<String, NoteText> index, Path csv, File journal) {
+            BasicFileAttributes attributes = attributes(csv);
+            this.index = index;
+            this.loadedModified = attributes == null ? 0 : attributes.lastModifiedTime().toMillis();
+            this.loadedLength = attributes == null ? 0 : attributes.size();
+            this.journalLength = journal.length();
+        }
+
+        /**
+         * Создаёт снимок с отметками, снятыми ранее.
+         *
+         * @param index  индекс
+         * @param stamps снимок с отметками файлов
+         */
+        Snapshot(ConcurrentSkipListMap<String, NoteText> index, Snapshot stamps) {
+            this.index = index;
+            this.loadedModified = stamps.loadedModified;
+            this.loadedLength = stamps.loadedLength;
+            this.journalLength = stamps.journalLength;
+        }
+
+        /**
+         * Проверяет, что CSV-файл в двух снимках одинаков.
+         *
+         * @param other другой снимок
+         * @return true, если время изменения и размер CSV-файла совпадают
+         */
+        boolean sameCsv(Snapshot other) {
+            return loadedModified == other.loadedModified && loadedLength == other.loadedLength;
+        }
+
+        /**
+         * Проверяет, что оба файла в двух снимках одинаковы.
+         *
+         * @param other другой снимок
+         * @return true, если совпадают отметки CSV-файла и размер журнала
+         */
+        boolean sameFiles(Snapshot other) {
+            return sameCsv(other) && journalLength == other.journalLength;
+        }
+
+        /**
+         * Проверяет, что с момента снимка файлы не изменились.
+         *
+         * @param csv     CSV-файл
+         * @param journal файл журнала
+         * @return true, если время изменения и размер CSV-файла и размер журнала совпадают
+         */
+        boolean isCurrent(Path csv, File journal) {
+            if (journal.length() != journalLength) {
+                return false;
+            }
+            BasicFileAttributes attributes = attributes(csv);
+            return attributes != null && attributes.lastModifiedTime().toMillis() == loadedModified
+                    && attributes.size() == loadedLength;
+        }
+
+        /**
+         * Читает время изменения и размер файла одним обращением к файловой системе.
+         *
+         * @param file файл
+         * @return атрибуты или {@code null}, если файла нет
+         */
+        private static BasicFileAttributes attributes(Path file) {
+            try {
+                return Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                return null;
             }
         }
-        return null;
     }
 }
@@ -0,0 +1,436 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Проверка целостности CSV-файла заметок и его восстановление.
+ * <p>
+ * Повреждённой считается строка без разделителя {@code ;}, с некорректной
+ * датой, без полей метаданных или с неверной контрольной суммой (например,
+ * обрезанная при сбое или испорченная на диске). В файле версии 1 (см.
+ * {@link CsvFormat#PLAIN}) проверяется только структура строк. Пустые строки
+ * не считаются повреждением.
+ * </p>
+ * <p>
+ * Проверка {@link #verify(File)} отображает файл в память и разбирает его
+ * параллельно участками, выровненными по переводам строк, как
+ * {@link MappedCsvReader}, поэтому её можно выполнять при каждом запуске.
+ * Соседние повреждённые строки объединяются в один диапазон байтов.
+ * </p>
+ * <p>
+ * Восстановление {@link #repair(File)} одним проходом переписывает файл
+ * из корректных записей в формате {@link CsvFormat#CURRENT}
+ * (см. {@link CsvMigrator}), а повреждённые строки дописывает как есть
+ * в файл {@code <файл>.rejected}, чтобы их можно было разобрать вручную.
+ * Журнал хранилища не затрагивается.
+ * </p>
+ * <p>
+ * Без графического интерфейса:
+ * {@code java CsvVerifier [--repair] data.csv ...}; код завершения 0 —
+ * повреждений нет (или файлы восстановлены), 1 — найдены повреждения,
+ * 2 — ошибка чтения.
+ * </p>
+ */
+public final class CsvVerifier {
+
+    /**
+     * Расширение файла с отброшенными при восстановлении строками.
+     */
+    public static final String REJECTED_EXTENSION = ".rejected";
+
+    /**
+     * Максимальный размер одного окна отображения.
+     */
+    private static final long WINDOW_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Наименьший размер участка, проверяемого одной задачей.
+     */
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Сколько диапазонов показывать в отчёте.
+     */
+    private static final int MAX_REPORTED_RANGES = 10;
+
+    private CsvVerifier() {
+    }
+
+    /**
+     * Диапазон подряд идущих повреждённых строк.
+     */
+    public static final class Range {
+        private final long start;
+        private long end;
+        private long lines;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.lines = 1;
+        }
+
+        /**
+         * @return смещение начала первой повреждённой строки
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return смещение за переводом строки последней повреждённой строки
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return количество строк в диапазоне
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Итог проверки файла.
+     */
+    public static final class Report {
+        private final File file;
+        private final CsvFormat format;
+        private final long records;
+        private final List<Range> ranges;
+
+        Report(File file, CsvFormat format, long records, List<Range> ranges) {
+            this.file = file;
+            this.format = format;
+            this.records = records;
+            this.ranges = Collections.unmodifiableList(ranges);
+        }
+
+        /**
+         * @return проверенный файл
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return формат записей файла
+         */
+        public CsvFormat getFormat() {
+            return format;
+        }
+
+        /**
+         * @return количество корректных записей
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * @return диапазоны повреждённых строк в порядке следования в файле
+         */
+        public List<Range> getRanges() {
+            return ranges;
+        }
+
+        /**
+         * @return количество повреждённых строк
+         */
+        public long getCorruptLines() {
+            long lines = 0;
+            for (Range range : ranges) {
+                lines += range.lines;
+            }
+            return lines;
+        }
+
+        /**
+         * @return true, если повреждённых строк нет
+         */
+        public boolean isClean() {
+            return ranges.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(file.getName()).append(": записей ").append(records);
+            if (format == CsvFormat.PLAIN) {
+                text.append(" (без контрольных сумм)");
+            }
+            if (ranges.isEmpty()) {
+                return text.append(", повреждений нет").toString();
+            }
+            text.append(", повреждённых строк ").append(getCorruptLines()).append(", байты ");
+            for (int i = 0; i < ranges.size() && i < MAX_REPORTED_RANGES; i++) {
+                text.append(i == 0 ? "" : ", ").append(ranges.get(i));
+            }
+            if (ranges.size() > MAX_REPORTED_RANGES) {
+                text.append(" и ещё ").append(ranges.size() - MAX_REPORTED_RANGES).append(" участков");
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Проверяет файл, разбирая большие файлы параллельно
+     * в общем {@link ForkJoinPool}.
+     *
+     * @param file CSV-файл
+     * @return отчёт о проверке
+     * @throws IOException при ошибке чтения или если версия файла неизвестна
+     */
+    public static Report verify(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            CsvFormat format = CsvFormat.PLAIN;
+            int parallelism = ForkJoinPool.commonPool().getParallelism();
+            ChunkTask result = null;
+
+            while (position < size) {
+                long windowSize = Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int limit = MappedCsvReader.windowLimit(buffer, windowSize, position + windowSize >= size, file);
+                int start = 0;
+                if (position == 0) {
+                    start = MappedCsvReader.skipHeader(buffer, limit);
+                    format = CsvFormat.ofHeader(buffer, 0, Math.max(0, start - 1));
+                }
+
+                int chunkSize = Math.max(MIN_CHUNK_SIZE, (limit - start) / (parallelism * 4));
+                ChunkTask window = new ChunkTask(buffer, position, start, limit, chunkSize, format);
+                ForkJoinPool.commonPool().invoke(window);
+                result = result == null ? window : result.append(window);
+                position += limit;
+            }
+            return result == null
+                    ? new Report(file, format, 0, new ArrayList<>())
+                    : new Report(file, format, result.records, result.ranges);
+        }
+    }
+
+    /**
+     * Восстанавливает файл: атомарно переписывает его из корректных записей
+     * в формате {@link CsvFormat#CURRENT}, а повреждённые строки дописывает
+     * в {@code <файл>.rejected}. Файл без повреждений в формате
+     * {@link CsvFormat#CURRENT} не переписывается. Выполняется под
+     * {@link InterProcessLock} файла, как и запись хранилищем.
+     *
+     * @param file CSV-файл
+     * @return отчёт о проверке файла до восстановления
+     * @throws IOException при ошибке чтения или записи или если версия файла неизвестна
+     *                     (см. {@link CsvFormat}); файл в этом случае остаётся прежним
+     */
+    public static Report repair(File file) throws IOException {
+        InterProcessLock lock = InterProcessLock.forFile(file.getPath());
+        lock.lock();
+        try {
+            Report report = verify(file);
+            if (report.isClean() && report.getFormat() == CsvFormat.CURRENT) {
+                return report;
+            }
+            CsvMigrator.rewrite(file);
+            return report;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Находит конец строки.
+     *
+     * @param buffer окно отображения
+     * @param start  начало строки
+     * @param limit  конец участка
+     * @return позиция перевода строки или {@code limit}
+     */
+    static int lineEnd(MappedByteBuffer buffer, int start, int limit) {
+        int end = start;
+        while (end < limit && buffer.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Проверяет запись и находит разделитель после даты.
+     *
+     * @param buffer  окно отображения
+     * @param format  формат записей
+     * @param start   начало строки
+     * @param textEnd конец текста записи или -1, если контрольная сумма неверна
+     * @return позиция разделителя или -1, если строка повреждена
+     */
+    static int separator(MappedByteBuffer buffer, CsvFormat format, int start, int textEnd) {
+        if (textEnd < 0) {
+            return -1;
+        }
+        int separator = start;
+        while (separator < textEnd && buffer.get(separator) != ';') {
+            separator++;
+        }
+        if (separator == textEnd
+                || format.textStart(buffer, separator, textEnd) < 0
+                || CsvOffsetIndex.parseDay(CsvCodec.decode(buffer, start, separator - start)) == Integer.MIN_VALUE) {
+            return -1;
+        }
+        return separator;
+    }
+
+    /**
+     * Задача проверки участка окна. Большой участок делится пополам по
+     * ближайшему переводу строки; участок не больше {@code chunkSize}
+     * проверяется сразу. Результаты половин склеиваются по порядку.
+     */
+    private static final class ChunkTask extends RecursiveTask<ChunkTask> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient MappedByteBuffer buffer;
+        private final long base;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+        private final CsvFormat format;
+
+        private long records;
+        private final transient List<Range> ranges = new ArrayList<>();
+
+        ChunkTask(MappedByteBuffer buffer, long base, int start, int end, int chunkSize, CsvFormat format) {
+            this.buffer = buffer;
+            this.base = base;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.format = format;
+        }
+
+        @Override
+        protected ChunkTask compute() {
+            if (end - start > chunkSize) {
+                int middle = start + (end - start) / 2;
+                while (middle < end && buffer.get(middle - 1) != '\n') {
+                    middle++;
+                }
+                if (middle < end) {
+                    ChunkTask left = new ChunkTask(buffer, base, start, middle, chunkSize, format);
+                    ChunkTask right = new ChunkTask(buffer, base, middle, end, chunkSize, format);
+                    invokeAll(left, right);
+                    return append(left).append(right);
+                }
+            }
+
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineEnd = lineEnd(buffer, lineStart, end);
+                int next = Math.min(lineEnd + 1, end);
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    if (separator(buffer, format, lineStart, format.textEnd(buffer, lineStart, lineEnd)) >= 0) {
+                        records++;
+                    } else {
+                        addCorrupt(base + lineStart, base + next);
+                    }
+                }
+                lineStart = next;
+            }
+            return this;
+        }
+
+        /**
+         * Добавляет повреждённую строку, продолжая предыдущий диапазон, если он примыкает к ней.
+         *
+         * @param from начало строки в файле
+         * @param to   начало следующей строки в файле
+         */
+        private void addCorrupt(long from, long to) {
+            Range last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last.end == from) {
+                last.end = to;
+                last.lines++;
+            } else {
+                ranges.add(new Range(from, to));
+            }
+        }
+
+        /**
+         * Добавляет к результату этой задачи результат следующего по порядку участка.
+         *
+         * @param next задача следующего участка
+         * @return эта задача
+         */
+        ChunkTask append(ChunkTask next) {
+            records += next.records;
+            for (Range range : next.ranges) {
+                Range last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                if (last != null && last.end == range.start) {
+                    last.end = range.end;
+                    last.lines += range.lines;
+                } else {
+                    ranges.add(range);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Проверяет (и с ключом {@code --repair} восстанавливает) файлы без
+     * графического интерфейса.
+     *
+     * @param args {@code [--repair] файл...}
+     */
+    public static void main(String[] args) {
+        boolean repair = false;
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--repair")) {
+                repair = true;
+            } else {
+                files.add(new File(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Использование: java CsvVerifier [--repair] data.csv ...");
+            System.exit(2);
+        }
+
+        int status = 0;
+        for (File file : files) {
+            try {
+                long started = System.nanoTime();
+                Report report = repair ? repair(file) : verify(file);
+                long millis = (System.nanoTime() - started) / 1_000_000;
+                System.out.println(report + " (" + millis + " мс)");
+                if (!report.isClean()) {
+                    if (repair) {
+                        System.out.println("Файл восстановлен, повреждённые строки сохранены в "
+                                + file.getName() + REJECTED_EXTENSION);
+                    } else {
+                        status = Math.max(status, 1);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(file + ": " + e);
+                status = 2;
+            }
+        }
+        System.exit(status);
+    }
+}
@@ -1,13 +1,18 @@
 import com.toedter.calendar.IDateEvaluator;
+import com.toedter.calendar.IMonthDateEvaluator;
 import java.awt.*;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Класс для подсветки дат в компоненте {@link com.toedter.calendar.JCalendar}.
- * Реализует интерфейс {@link IDateEvaluator}, позволяя выделять даты,
- * для которых существуют записи в хранилище.
+ * Реализует интерфейс {@link IMonthDateEvaluator}, позволяя выделять даты,
+ * для которых существуют записи в хранилище. Календарь запрашивает подсветку
+ * сразу для всего месяца, и она вычисляется одним проходом по битовой карте.
  *
  * Основные возможности:
  * <ul>
@@ -15,37 +20,191 @@ import java.util.Set;
  *     <li>Изменение цвета текста для выделенных дат.</li>
  *     <li>Отображение всплывающей подсказки ("Есть запись").</li>
  * </ul>
+ * <p>
+ * Подсвечиваемые даты хранятся в виде битовой карты, индексированной номером
+ * дня от эпохи, поэтому проверка {@link #isSpecial(Date)} сводится к нескольким
+ * арифметическим операциям без форматирования и выделения памяти. Карта
+ * публикуется через {@code volatile}-ссылку, а биты меняются атомарно, так что
+ * проверки безопасны из любого потока, а не только из EDT; изменения
+ * выполняются под блокировкой объекта.
+ * </p>
  */
-public class HighlightEvaluator implements IDateEvaluator {
+public class HighlightEvaluator implements IMonthDateEvaluator {
 
     /**
-     * Множество дат в формате yyyy-MM-dd, которые должны быть подсвечены.
+     * Цвет текста для "особых" дат.
+     */
+    private static final Color SPECIAL_FOREGROUND = new Color(0, 255, 56); // тёмно‑зелёный текст
+
+    /**
+     * Количество миллисекунд в сутках.
      */
-    private final Set<String> dates;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
     /**
-     * Форматтер для преобразования объектов {@link Date} в строковый формат yyyy-MM-dd.
+     * Часовой пояс, в котором даты переводятся в номера дней.
      */
-    private final SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+    private final TimeZone zone = TimeZone.getDefault();
+
+    /**
+     * Текущая битовая карта подсвеченных дат.
+     */
+    private volatile DayBitmap bitmap = new DayBitmap(0, 0);
 
     /**
      * Конструктор.
      *
      * @param dates множество строковых дат (yyyy-MM-dd), которые будут подсвечиваться
      */
-    public HighlightEvaluator(Set<String> dates) {
-        this.dates = dates;
+    public HighlightEvaluator(Collection<String> dates) {
+        setDates(dates);
+    }
+
+    /**
+     * Заменяет множество подсвечиваемых дат.
+     * Строки, не являющиеся датами yyyy-MM-dd, пропускаются.
+     *
+     * @param dates множество строковых дат (yyyy-MM-dd)
+     */
+    public synchronized void setDates(Collection<String> dates) {
+        int[] days = parseDays(dates);
+        DayBitmap result = days.length == 0 ? new DayBitmap(0, 0)
+                : new DayBitmap(days[0], days[days.length - 1] - days[0] + 1);
+        for (int day : days) {
+            result.set(day, true);
+        }
+        bitmap = result;
+    }
+
+    /**
+     * Добавляет даты к подсвечиваемым (например, при переходе календаря
+     * в ещё не загруженный год). Карта расширяется не более одного раза.
+     * Строки, не являющиеся датами yyyy-MM-dd, пропускаются.
+     *
+     * @param dates множество строковых дат (yyyy-MM-dd)
+     */
+    public synchronized void addDates(Collection<String> dates) {
+        int[] days = parseDays(dates);
+        if (days.length == 0) {
+            return;
+        }
+        DayBitmap current = bitmap;
+        int min = days[0];
+        int max = days[days.length - 1];
+        if (!current.contains(min) || !current.contains(max)) {
+            int first = current.isEmpty() ? min : Math.min(current.firstDay, min);
+            int last = current.isEmpty() ? max : Math.max(current.lastDay(), max);
+            current = current.copyTo(first, last - first + 1);
+        }
+        for (int day : days) {
+            current.set(day, true);
+        }
+        bitmap = current;
+    }
+
+    /**
+     * Переводит строковые даты в отсортированные номера дней от эпохи,
+     * пропуская некорректные строки.
+     *
+     * @param dates строковые даты (yyyy-MM-dd)
+     * @return номера дней по возрастанию
+     */
+    private static int[] parseDays(Collection<String> dates) {
+        int[] days = new int[dates.size()];
+        int count = 0;
+        for (String date : dates) {
+            try {
+                days[count++] = (int) LocalDate.parse(date).toEpochDay();
+            } catch (Exception ignored) {
+                count--;
+            }
+        }
+        days = Arrays.copyOf(days, count);
+        Arrays.sort(days);
+        return days;
+    }
+
+    /**
+     * Включает или выключает подсветку указанной даты.
+     *
+     * @param date        дата
+     * @param highlighted {@code true}, чтобы подсветить дату
+     */
+    public void setHighlighted(Date date, boolean highlighted) {
+        setHighlighted(toEpochDay(date), highlighted);
+    }
+
+    /**
+     * Включает или выключает подсветку указанной даты.
+     *
+     * @param date        дата
+     * @param highlighted {@code true}, чтобы подсветить дату
+     */
+    public void setHighlighted(LocalDate date, boolean highlighted) {
+        setHighlighted((int) date.toEpochDay(), highlighted);
+    }
+
+    /**
+     * Включает или выключает подсветку дня.
+     *
+     * @param day         номер дня от эпохи
+     * @param highlighted {@code true}, чтобы подсветить день
+     */
+    private synchronized void setHighlighted(int day, boolean highlighted) {
+        DayBitmap current = bitmap;
+        if (current.contains(day)) {
+            current.set(day, highlighted);
+        } else if (highlighted) {
+            int first = current.isEmpty() ? day : Math.min(current.firstDay, day);
+            int last = current.isEmpty() ? day : Math.max(current.lastDay(), day);
+            DayBitmap grown = current.copyTo(first, last - first + 1);
+            grown.set(day, true);
+            bitmap = grown;
+        }
     }
 
     /**
      * Определяет, является ли указанная дата "особой" (требующей подсветки).
      *
      * @param date проверяемая дата
-     * @return {@code true}, если дата содержится в множестве {@code dates}, иначе {@code false}
+     * @return {@code true}, если дата отмечена в битовой карте, иначе {@code false}
      */
     @Override
     public boolean isSpecial(Date date) {
-        return dates.contains(df.format(date));
+        return bitmap.get(toEpochDay(date));
+    }
+
+    /**
+     * Определяет "особые" даты сразу для всего месяца.
+     *
+     * @param year     год
+     * @param month    месяц (с нуля, как в {@link java.util.Calendar#MONTH})
+     * @param firstDay первый день месяца (начало суток)
+     * @param dayCount количество дней в месяце
+     * @return массив флагов {@link #SPECIAL} по дням месяца
+     */
+    @Override
+    public int[] evaluateMonth(int year, int month, Date firstDay, int dayCount) {
+        DayBitmap current = bitmap;
+        int first = toEpochDay(firstDay);
+        int[] flags = new int[dayCount];
+        for (int i = 0; i < dayCount; i++) {
+            if (current.get(first + i)) {
+                flags[i] = SPECIAL;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Переводит дату в номер дня от эпохи в локальном часовом поясе без выделения памяти.
+     *
+     * @param date дата
+     * @return номер дня
+     */
+    private int toEpochDay(Date date) {
+        long millis = date.getTime();
+        return (int) Math.floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
     }
 
     /**
@@ -55,7 +214,7 @@ public class HighlightEvaluator implements IDateEvaluator {
      */
     @Override
     public Color getSpecialForegroundColor() {
-        return new Color(0, 255, 56); // тёмно‑зелёный текст
+        return SPECIAL_FOREGROUND;
     }
 
     /**
@@ -119,4 +278,74 @@ public class HighlightEvaluator implements IDateEvaluator {
     public String getInvalidTooltip() {
         return null;
     }
+
+    /**
+     * Битовая карта дней в диапазоне {@code [firstDay, firstDay + 64 * words.length())}.
+     * Диапазон карты неизменен; при выходе за него создаётся новая карта.
+     */
+    private static final class DayBitmap {
+
+        /**
+         * Номер дня, соответствующий нулевому биту.
+         */
+        final int firstDay;
+
+        /**
+         * Биты дней, по 64 дня в слове.
+         */
+        final AtomicLongArray words;
+
+        DayBitmap(int firstDay, int dayCount) {
+            this.firstDay = firstDay;
+            this.words = new AtomicLongArray((dayCount + 63) >>> 6);
+        }
+
+        boolean isEmpty() {
+            return words.length() == 0;
+        }
+
+        int lastDay() {
+            return firstDay + (words.length() << 6) - 1;
+        }
+
+        boolean contains(int day) {
+            long offset = (long) day - firstDay;
+            return offset >= 0 && offset < ((long) words.length() << 6);
+        }
+
+        boolean get(int day) {
+            if (!contains(day)) {
+                return false;
+            }
+            int offset = day - firstDay;
+            return (words.get(offset >>> 6) & (1L << offset)) != 0;
+        }
+
+        void set(int day, boolean value) {
+            int offset = day - firstDay;
+            long mask = 1L << offset;
+            if (value) {
+                words.getAndAccumulate(offset >>> 6, mask, (word, m) -> word | m);
+            } else {
+                words.getAndAccumulate(offset >>> 6, mask, (word, m) -> word & ~m);
+            }
+        }
+
+        /**
+         * Копирует отмеченные дни в новую карту, покрывающую указанный диапазон
+         * (с запасом в год в обе стороны, чтобы не пересоздавать карту на каждую новую дату).
+         */
+        DayBitmap copyTo(int first, int dayCount) {
+            DayBitmap copy = new DayBitmap(first - 366, dayCount + 2 * 366);
+            for (int i = 0; i < words.length(); i++) {
+                long word = words.get(i);
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    copy.set(firstDay + (i << 6) + bit, true);
+                    word &= word - 1;
+                }
+            }
+            return copy;
+        }
+    }
 }
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Блокировка файла данных, общая для всех процессов и потоков.
+ * <p>
+ * Между процессами используется {@link java.nio.channels.FileLock} на
+ * отдельном файле {@code <файл>.lock} рядом с файлом данных (сам файл данных
+ * заменяется переименованием, поэтому блокировать его нельзя). Внутри одной
+ * JVM {@code FileLock} не различает потоки, поэтому поверх него стоит
+ * {@link ReentrantLock}, общий для всех хранилищ одного файла.
+ * Блокировка повторно входима: вложенные захваты в одном потоке
+ * не обращаются к файлу.
+ * </p>
+ * <p>
+ * Если файл блокировки нельзя создать (например, папка только для чтения),
+ * ошибка выводится в консоль и работа продолжается только с блокировкой
+ * внутри процесса.
+ * </p>
+ */
+public final class InterProcessLock {
+
+    /**
+     * Блокировки по абсолютному пути файла блокировки.
+     */
+    private static final Map<Path, InterProcessLock> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Путь к файлу блокировки.
+     */
+    private final Path path;
+
+    /**
+     * Блокировка внутри процесса.
+     */
+    private final ReentrantLock local = new ReentrantLock();
+
+    /**
+     * Открытый канал файла блокировки, пока блокировка захвачена.
+     */
+    private FileChannel channel;
+
+    private InterProcessLock(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Возвращает блокировку для файла данных.
+     *
+     * @param fileName имя файла данных
+     * @return блокировка, общая для всех обращений к этому файлу в процессе
+     */
+    public static InterProcessLock forFile(String fileName) {
+        Path path = Paths.get(fileName + ".lock").toAbsolutePath().normalize();
+        return LOCKS.computeIfAbsent(path, InterProcessLock::new);
+    }
+
+    /**
+     * Захватывает блокировку, ожидая, пока её освободят другие потоки и процессы.
+     */
+    public void lock() {
+        local.lock();
+        if (local.getHoldCount() > 1) {
+            return;
+        }
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.lock();
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeChannel();
+        }
+    }
+
+    /**
+     * Освобождает блокировку.
+     */
+    public void unlock() {
+        try {
+            if (local.getHoldCount() == 1) {
+                closeChannel(); // закрытие канала снимает FileLock
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    /**
+     * Закрывает канал файла блокировки.
+     */
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
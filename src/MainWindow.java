@@ -4,13 +4,19 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Главное окно приложения "Каталог компьютерной техники".
@@ -25,16 +31,84 @@ import java.util.Set;
  *     <li>Выбор даты в календаре и работа с заметками для этой даты.</li>
  *     <li>Сохранение заметок в файл {@code data.csv} или экспорт в другой CSV.</li>
  *     <li>Загрузка данных из выбранного CSV-файла.</li>
+ *     <li>Импорт заметок из другого CSV-файла со слиянием (см. {@link NoteMerger}).</li>
+ *     <li>Проверка целостности {@code data.csv} при запуске и по команде меню,
+ *     восстановление повреждённого файла (см. {@link CsvVerifier}).</li>
  *     <li>Подсветка дат с записями.</li>
  *     <li>Меню с настройками (изменение размера шрифта), списком памятных дат и информацией об авторе.</li>
  *     <li>Отображение SplashScreen при запуске.</li>
  * </ul>
+ * <p>
+ * Файловый ввод-вывод не выполняется в потоке обработки событий:
+ * операции отправляются в {@link AsyncStorage}, а их результаты
+ * применяются к интерфейсу через {@link SwingUtilities#invokeLater(Runnable)}.
+ * </p>
  */
 public class MainWindow extends JFrame {
     /**
-     * Хранилище данных по умолчанию (файл {@code data.csv}).
+     * Пауза в правках (мс), после которой заметки записываются на диск.
+     */
+    private static final long WRITE_BEHIND_IDLE_MILLIS = 3000;
+
+    /**
+     * Наибольшая задержка (мс) записи заметки на диск при непрерывных правках.
+     */
+    private static final long WRITE_BEHIND_MAX_DELAY_MILLIS = 30000;
+
+    /**
+     * Размер {@code data.csv}, начиная с которого в памяти держатся только
+     * даты, а тексты заметок читаются по запросу через кэш.
+     */
+    private static final long LARGE_CALENDAR_BYTES = 16L << 20;
+
+    /**
+     * Объём кэша текстов заметок для большого календаря.
+     */
+    private static final long BODY_CACHE_BYTES = 4L << 20;
+
+    /**
+     * Хранилище по годам, которое используется вместо {@code data.csv},
+     * если оно есть в рабочей папке.
+     */
+    private static final String PARTITIONED_FILE = "data" + PartitionedStorage.EXTENSION;
+
+    /**
+     * Колоночное хранилище, которое используется вместо {@code data.csv},
+     * если оно есть в рабочей папке (и нет хранилища по годам).
+     */
+    private static final String COLUMNAR_FILE = "data" + ColumnarStorage.EXTENSION;
+
+    /**
+     * Имя файла хранилища по умолчанию в рабочей папке.
+     */
+    private final String defaultFileName = new File(PARTITIONED_FILE).exists() ? PARTITIONED_FILE
+            : new File(COLUMNAR_FILE).exists() ? COLUMNAR_FILE : "data.csv";
+
+    /**
+     * Хранилище данных по умолчанию (см. {@link #openDefaultStorage(String)}).
+     * Все обращения к нему выполняются вне EDT через {@link AsyncStorage}.
+     */
+    private final AsyncStorage storage = new AsyncStorage(openDefaultStorage(defaultFileName));
+
+    /**
+     * Открывает хранилище по умолчанию: {@code data.parts} — по годам,
+     * {@code data.rmdb} — колоночное с текстами вне кучи, иначе
+     * {@code data.csv} с отложенной записью (для большого файла — с кэшем
+     * текстов вместо хранения всех текстов в памяти).
+     *
+     * @param fileName имя файла хранилища
+     * @return хранилище
      */
-    private final CsvStorage storage = new CsvStorage("data.csv");
+    private static NoteStorage openDefaultStorage(String fileName) {
+        if (fileName.equals(PARTITIONED_FILE)) {
+            return new PartitionedStorage(fileName);
+        }
+        if (fileName.equals(COLUMNAR_FILE)) {
+            return new ColumnarStorage(fileName, true);
+        }
+        return new CsvStorage(fileName, WRITE_BEHIND_IDLE_MILLIS, WRITE_BEHIND_MAX_DELAY_MILLIS,
+                new File(fileName).length() >= LARGE_CALENDAR_BYTES ? BODY_CACHE_BYTES : 0);
+    }
 
     /**
      * Компонент календаря для выбора даты.
@@ -52,9 +126,15 @@ public class MainWindow extends JFrame {
     private JButton saveButton;
 
     /**
-     * Множество дат, для которых есть записи (используется для подсветки).
+     * Подсветка дат, для которых есть записи.
      */
-    private Set<String> highlightedDates;
+    private HighlightEvaluator highlighter;
+
+    /**
+     * Годы, подсветка которых уже загружена из хранилища по умолчанию
+     * (только в EDT). {@code null} — подсветка загружена из другого файла целиком.
+     */
+    private Set<Integer> highlightedYears = new HashSet<>();
 
     /**
      * Точка входа в приложение.
@@ -99,7 +179,10 @@ public class MainWindow extends JFrame {
 
         saveButton.addActionListener(this::saveData);
         // событие при выборе даты
-        calendar.addPropertyChangeListener("calendar", evt -> loadForSelectedDate());
+        calendar.addPropertyChangeListener("calendar", evt -> {
+            loadForSelectedDate();
+            loadHighlightsForSelectedYear(); // при переходе в другой год подгружаем его подсветку
+        });
 
 
         // Обработчик события нажатия Enter, будучи внутри textArea
@@ -159,20 +242,54 @@ public class MainWindow extends JFrame {
         Date selectedDate = calendar.getDate();
         String text = textArea.getText().trim();
 
-        storage.save(selectedDate, text);
+        AsyncStorage.onEdt(storage.submit(s -> {
+            s.save(selectedDate, text);
+            return null;
+        }), ignored -> {
+            highlighter.setHighlighted(selectedDate, !text.isEmpty()); // добавляем или убираем подсветку
+            calendar.getDayChooser().invalidateDecorations(selectedDate); // перерисовываем только этот месяц
 
-        String dateKey = new java.text.SimpleDateFormat("yyyy-MM-dd").format(selectedDate);
+            JOptionPane.showMessageDialog(null, text.isEmpty() ? "Удалено!" : "Сохранено!");
+        }, this::showError);
+    }
 
-        if (text.isEmpty()) {
-            highlightedDates.remove(dateKey); // убираем подсветку
-            calendar.setCalendar(calendar.getCalendar()); // форс обновления
-        } else {
-            highlightedDates.add(dateKey);    // добавляем подсветку
-            calendar.setCalendar(calendar.getCalendar()); // форс обновления
-        }
+    /**
+     * Сохраняет текущую заметку в {@code data.csv} в рабочей папке,
+     * дожидается записи всех отложенных изменений на диск
+     * и обновляет подсветку даты.
+     *
+     * @param afterSave действие, выполняемое в EDT после успешного сохранения
+     */
+    private void saveToDefaultFile(Runnable afterSave) {
+        Date selectedDate = calendar.getDate();
+        String text = textArea.getText().trim();
+
+        AsyncStorage.onEdt(storage.submit(s -> {
+            s.save(selectedDate, text);
+            try {
+                s.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return null;
+        }), ignored -> {
+            // обновляем подсветку
+            highlighter.setHighlighted(selectedDate, !text.isEmpty());
+            calendar.getDayChooser().invalidateDecorations(selectedDate);
 
+            JOptionPane.showMessageDialog(this, "Данные сохранены в " + defaultFileName);
+            afterSave.run();
+        }, this::showError);
+    }
 
-        JOptionPane.showMessageDialog(null, text.isEmpty() ? "Удалено!" : "Сохранено!");
+    /**
+     * Показывает сообщение об ошибке ввода-вывода.
+     *
+     * @param error ошибка
+     */
+    private void showError(Throwable error) {
+        error.printStackTrace();
+        JOptionPane.showMessageDialog(this, "Ошибка при работе с файлом!", "Ошибка", JOptionPane.ERROR_MESSAGE);
     }
 
     /**
@@ -180,7 +297,7 @@ public class MainWindow extends JFrame {
      * <p>
      * Включает вкладки:
      * <ul>
-     *     <li>Файл (сохранение, загрузка, выход)</li>
+     *     <li>Файл (сохранение, загрузка, импорт, проверка целостности, выход)</li>
      *     <li>Настройки (изменение размера шрифта)</li>
      *     <li>Дополнительно (список дат, ближайшая дата)</li>
      *     <li>? (об авторе)</li>
@@ -211,6 +328,8 @@ public class MainWindow extends JFrame {
         JMenuItem fileSave = new JMenuItem("Сохранить");
         JMenuItem fileSaveAs = new JMenuItem("Сохранить как");
         JMenuItem fileLoadAs = new JMenuItem("Загрузить");
+        JMenuItem fileImport = new JMenuItem("Импортировать");
+        JMenuItem fileVerify = new JMenuItem("Проверить целостность");
         JMenuItem exitProgram = new JMenuItem("Выход");
         exitProgram.setForeground(new Color(220, 53, 69));
         exitProgram.setFont(new Font("Arial", Font.BOLD, 12));
@@ -236,83 +355,68 @@ public class MainWindow extends JFrame {
 
             if (choice == JOptionPane.YES_OPTION) {
                 // сохраняем текущую дату и текст в data.csv
-                File file = new File("data.csv");
-                CsvStorage defaultStorage = new CsvStorage(file.getAbsolutePath());
-
-                Date selectedDate = calendar.getDate();
-                String text = textArea.getText().trim();
-                defaultStorage.save(selectedDate, text);
-
-                // обновляем подсветку
-                String dateKey = new SimpleDateFormat("yyyy-MM-dd").format(selectedDate);
-                if (text.isEmpty()) {
-                    highlightedDates.remove(dateKey);
-                } else {
-                    highlightedDates.add(dateKey);
-                }
-                calendar.setCalendar(calendar.getCalendar());
-
-                JOptionPane.showMessageDialog(this, "Данные сохранены в data.csv");
-                System.exit(0);
+                saveToDefaultFile(() -> System.exit(0));
             } else if (choice == JOptionPane.NO_OPTION) {
-                System.exit(0);
+                // дожидаемся уже отправленных операций и записи отложенных изменений
+                // при ошибке записи программа не закрывается, чтобы правки не потерялись
+                AsyncStorage.onEdt(storage.submit(s -> {
+                    try {
+                        s.flush();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    return null;
+                }), ignored -> System.exit(0), this::showError);
             }
             // если Cancel — ничего не делаем
         });
 
         fileSave.addActionListener(e -> {
             // всегда сохраняем в data.csv в рабочей папке
-            File file = new File("data.csv");
-            CsvStorage defaultStorage = new CsvStorage(file.getAbsolutePath());
-
-            Date selectedDate = calendar.getDate();
-            String text = textArea.getText().trim();
-
-            defaultStorage.save(selectedDate, text);
-
-            // обновляем подсветку
-            String dateKey = new SimpleDateFormat("yyyy-MM-dd").format(selectedDate);
-            if (text.isEmpty()) {
-                highlightedDates.remove(dateKey);
-            } else {
-                highlightedDates.add(dateKey);
-            }
-            calendar.setCalendar(calendar.getCalendar()); // форс обновления
-
-            JOptionPane.showMessageDialog(this, "Данные сохранены в data.csv");
+            saveToDefaultFile(() -> {});
         });
 
 
         fileSaveAs.addActionListener(e -> {
             JFileChooser chooser = new JFileChooser();
             chooser.setDialogTitle("Сохранить все данные как CSV");
-            chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV файлы", "csv"));
+            javax.swing.filechooser.FileNameExtensionFilter csvFilter =
+                    new javax.swing.filechooser.FileNameExtensionFilter("CSV файлы", "csv");
+            chooser.addChoosableFileFilter(csvFilter);
+            chooser.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                    "Двоичное хранилище", ColumnarStorage.EXTENSION.substring(1)));
+            chooser.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                    "Хранилище по годам", PartitionedStorage.EXTENSION.substring(1)));
+            chooser.setFileFilter(csvFilter);
             chooser.setSelectedFile(new File("data.csv"));
 
             int result = chooser.showSaveDialog(this);
             if (result == JFileChooser.APPROVE_OPTION) {
-                File file = chooser.getSelectedFile();
-                String path = file.getAbsolutePath();
-                if (!path.toLowerCase().endsWith(".csv")) {
-                    file = new File(path + ".csv");
-                }
-
-                // Загружаем все данные из текущего storage
-                Map<String, String> allData = storage.loadAll();
-
-                try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-                    writer.println("date;text");
-                    for (Map.Entry<String, String> entry : allData.entrySet()) {
-                        String escaped = entry.getValue().replace("\n", "\\n");
-                        writer.println(entry.getKey() + ";" + escaped);
+                File chosen = chooser.getSelectedFile();
+                String path = chosen.getAbsolutePath();
+                boolean columnar = path.toLowerCase().endsWith(ColumnarStorage.EXTENSION);
+                boolean partitioned = path.toLowerCase().endsWith(PartitionedStorage.EXTENSION);
+                File file = columnar || partitioned || path.toLowerCase().endsWith(".csv") ? chosen : new File(path + ".csv");
+
+                AsyncStorage.onEdt(storage.submit(s -> {
+                    // Переписываем записи текущего storage потоком, не загружая их все в память
+                    try (Stream<NoteEntry> entries = s.stream()) {
+                        if (columnar) {
+                            ColumnarStorage.write(file.getAbsolutePath(), entries);
+                        } else if (partitioned) {
+                            PartitionedStorage.write(file.getAbsolutePath(), entries);
+                        } else {
+                            CsvStorage.write(file, entries);
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
                     }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    JOptionPane.showMessageDialog(this, "Ошибка при сохранении!", "Ошибка", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-
-                JOptionPane.showMessageDialog(this, "Все данные сохранены в: " + file.getName());
+                    return null;
+                }), ignored -> JOptionPane.showMessageDialog(this, "Все данные сохранены в: " + file.getName()),
+                        ex -> {
+                            ex.printStackTrace();
+                            JOptionPane.showMessageDialog(this, "Ошибка при сохранении!", "Ошибка", JOptionPane.ERROR_MESSAGE);
+                        });
             }
         });
 
@@ -321,33 +425,46 @@ public class MainWindow extends JFrame {
         fileLoadAs.addActionListener(e -> {
             JFileChooser chooser = new JFileChooser();
             chooser.setDialogTitle("Загрузить данные из CSV");
-            chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV файлы", "csv"));
+            chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                    "CSV файлы и двоичные хранилища", "csv", ColumnarStorage.EXTENSION.substring(1),
+                    PartitionedStorage.EXTENSION.substring(1)));
 
             int result = chooser.showOpenDialog(this);
             if (result == JFileChooser.APPROVE_OPTION) {
                 File file = chooser.getSelectedFile();
-                CsvStorage customStorage = new CsvStorage(file.getAbsolutePath());
-
                 Date selectedDate = calendar.getDate();
-                String text = customStorage.getByDate(selectedDate);
-                textArea.setText(text == null ? "" : text);
 
-                // Обновляем подсветку дат
-                highlightedDates = customStorage.getAllDates();
-                HighlightEvaluator evaluator = new HighlightEvaluator(highlightedDates);
-                calendar.getDayChooser().addDateEvaluator(evaluator);
-                calendar.setCalendar(calendar.getCalendar());
-
-                JOptionPane.showMessageDialog(this, "Данные загружены из: " + file.getName());
+                AsyncStorage.onEdt(AsyncStorage.run(() -> {
+                    NoteStorage customStorage = NoteStorage.open(file.getAbsolutePath());
+                    return Map.entry(customStorage.getByDate(selectedDate), customStorage.getAllDates());
+                }), loaded -> {
+                    String text = loaded.getKey();
+                    textArea.setText(text == null ? "" : text);
+
+                    // Обновляем подсветку дат
+                    highlighter = new HighlightEvaluator(loaded.getValue());
+                    highlightedYears = null;
+                    calendar.getDayChooser().addDateEvaluator(highlighter);
+                    calendar.getDayChooser().invalidateDecorations();
+
+                    JOptionPane.showMessageDialog(this, "Данные загружены из: " + file.getName());
+                }, this::showError);
             }
         });
 
 
 
+        fileImport.addActionListener(e -> importNotes());
+        fileVerify.addActionListener(e -> verifyDefaultFile(false));
+
+
+
         // Привязываем элементы к вкладке -Файл-
         fileMenu.add(fileSave);
         fileMenu.add(fileSaveAs);
         fileMenu.add(fileLoadAs);
+        fileMenu.add(fileImport);
+        fileMenu.add(fileVerify);
         fileMenu.add(exitProgram);
 
         // Привязываем элементы к вкладке -Настройки-
@@ -416,14 +533,22 @@ public class MainWindow extends JFrame {
 
 
         // Применяем особый стиль к датам, где есть запись
-        highlightedDates = storage.getAllDates();
-        HighlightEvaluator evaluator = new HighlightEvaluator(highlightedDates);
-        calendar.getDayChooser().addDateEvaluator(evaluator);
+        // (даты подгружаются асинхронно и только за отображаемый год)
+        highlighter = new HighlightEvaluator(Collections.emptySet());
+        calendar.getDayChooser().addDateEvaluator(highlighter);
+        loadHighlightsForSelectedYear();
+        // заметки, сохранённые другими запущенными копиями программы, сразу подсвечиваются
+        storage.submit(s -> {
+            s.addChangeListener(changes -> SwingUtilities.invokeLater(() -> applyExternalChanges(changes)));
+            return null;
+        });
+        // после первых загрузок проверяем файл; сообщение — только если он повреждён
+        verifyDefaultFile(true);
         calendar.getDayChooser().repaint();
         calendar.setFont(new Font("Arial", Font.PLAIN, 18));
         calendar.revalidate();
         calendar.repaint();
-        calendar.setCalendar(calendar.getCalendar()); // форс обновления
+        calendar.getDayChooser().invalidateDecorations();
 
 
         // Добавляем на форму основной splitPane и отображаем на форме :)
@@ -433,13 +558,167 @@ public class MainWindow extends JFrame {
         setJMenuBar(menuBar);
     }
 
+    /**
+     * Обновляет подсветку дат, изменённых в {@code data.csv} другим процессом.
+     *
+     * @param changes изменившиеся записи "дата → новый текст"
+     */
+    private void applyExternalChanges(Map<LocalDate, String> changes) {
+        for (Map.Entry<LocalDate, String> change : changes.entrySet()) {
+            highlighter.setHighlighted(change.getKey(), !change.getValue().isEmpty());
+        }
+        calendar.getDayChooser().invalidateDecorations();
+    }
+
+    /**
+     * Импортирует заметки из выбранного файла в хранилище по умолчанию.
+     * Пользователь выбирает, что делать с датами, на которые заметки есть
+     * в обоих календарях (см. {@link NoteMerger.Policy}). Слияние выполняется
+     * в потоке ввода-вывода (см. {@link NoteStorage#merge}), а подсветка
+     * и текст выбранной даты обновляются после записи каждой пачки изменений.
+     */
+    private void importNotes() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Импортировать заметки из CSV");
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                "CSV файлы и двоичные хранилища", "csv", ColumnarStorage.EXTENSION.substring(1),
+                PartitionedStorage.EXTENSION.substring(1)));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+
+        NoteMerger.Policy[] policies = NoteMerger.Policy.values();
+        int choice = JOptionPane.showOptionDialog(
+                this,
+                "Что делать, если на дату уже есть заметка?",
+                "Импорт",
+                JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE,
+                null,
+                policies,
+                NoteMerger.Policy.CONCATENATE
+        );
+        if (choice < 0) {
+            return;
+        }
+        NoteMerger.Policy policy = policies[choice];
+
+        AsyncStorage.onEdt(storage.submit(s -> {
+            try {
+                return s.merge(file, policy,
+                        changes -> SwingUtilities.invokeLater(() -> applyImportedChanges(changes)));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }), result -> JOptionPane.showMessageDialog(this, "Импорт из " + file.getName() + ": " + result),
+                ex -> {
+                    loadForSelectedDate(); // текст мог быть показан из неудавшегося импорта
+                    showError(ex);
+                });
+    }
+
+    /**
+     * Проверяет целостность {@code data.csv} в потоке ввода-вывода
+     * (см. {@link CsvVerifier#verify}) и, если в файле есть повреждённые
+     * строки, предлагает его восстановить.
+     *
+     * @param quiet не сообщать о целом файле и о хранилище не в CSV (проверка при запуске)
+     */
+    private void verifyDefaultFile(boolean quiet) {
+        File file = new File(defaultFileName);
+        if (!defaultFileName.endsWith(".csv") || !file.exists()) {
+            if (!quiet) {
+                JOptionPane.showMessageDialog(this, "Проверка целостности доступна только для файла data.csv");
+            }
+            return;
+        }
+        AsyncStorage.onEdt(storage.submit(s -> {
+            try {
+                return CsvVerifier.verify(file);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }), report -> {
+            if (report.isClean()) {
+                if (!quiet) {
+                    JOptionPane.showMessageDialog(this, report.toString());
+                }
+                return;
+            }
+            int choice = JOptionPane.showConfirmDialog(
+                    this,
+                    report + "\nВосстановить файл? Повреждённые строки будут сохранены в "
+                            + file.getName() + CsvVerifier.REJECTED_EXTENSION,
+                    "Проверка целостности",
+                    JOptionPane.YES_NO_OPTION,
+                    JOptionPane.WARNING_MESSAGE
+            );
+            if (choice == JOptionPane.YES_OPTION) {
+                AsyncStorage.onEdt(storage.submit(s -> {
+                    try {
+                        return CsvVerifier.repair(file);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }), repaired -> {
+                    loadForSelectedDate();
+                    JOptionPane.showMessageDialog(this, "Файл " + file.getName() + " восстановлен, записей: "
+                            + repaired.getRecords());
+                }, this::showError);
+            }
+        }, this::showError);
+    }
+
+    /**
+     * Обновляет подсветку и текст выбранной даты после записи пачки импортированных заметок.
+     *
+     * @param changes записанные изменения "дата → новый текст"
+     */
+    private void applyImportedChanges(Map<LocalDate, String> changes) {
+        applyExternalChanges(changes);
+        String text = changes.get(NoteStorage.toDay(calendar.getDate()));
+        if (text != null) {
+            textArea.setText(text);
+        }
+    }
+
+    /**
+     * Загружает подсветку дат за год, отображаемый в календаре, если она
+     * ещё не загружена. Хранилище по годам при этом открывает только
+     * файл этого года.
+     */
+    private void loadHighlightsForSelectedYear() {
+        int year = calendar.getCalendar().get(Calendar.YEAR);
+        if (highlightedYears == null || !highlightedYears.add(year)) {
+            return;
+        }
+        LocalDate from = LocalDate.of(year, 1, 1);
+        LocalDate to = LocalDate.of(year, 12, 31);
+        HighlightEvaluator target = highlighter;
+        AsyncStorage.onEdt(storage.submit(s -> {
+            try (Stream<NoteEntry> entries = s.stream(from, to)) {
+                return entries.map(NoteEntry::getKey).collect(Collectors.toList());
+            }
+        }), dates -> {
+            target.addDates(dates);
+            calendar.getDayChooser().invalidateDecorations();
+        }, ex -> {
+            if (highlightedYears != null) {
+                highlightedYears.remove(year); // попробуем снова при следующем переходе
+            }
+            showError(ex);
+        });
+    }
+
     /**
      * Загружает заметку для выбранной даты и отображает её в текстовой области.
      */
     private void loadForSelectedDate() {
         Date selectedDate = calendar.getDate();
-        String text = storage.getByDate(selectedDate);
-        textArea.setText(text == null ? "" : text);
+        // при быстром переключении дат выполняется только последняя загрузка
+        AsyncStorage.onEdt(storage.submitLatest("load", s -> s.getByDate(selectedDate)),
+                text -> textArea.setText(text == null ? "" : text), this::showError);
     }
 
     /**
@@ -448,15 +727,16 @@ public class MainWindow extends JFrame {
      */
     private void checkTodayPlan() {
         Date today = new Date();
-        String text = storage.getByDate(today);
-        if (text != null && !text.isEmpty()) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    "Сегодня у вас запланировано: " + text,
-                    "Напоминание",
-                    JOptionPane.INFORMATION_MESSAGE
-            );
-        }
+        AsyncStorage.onEdt(storage.submit(s -> s.getByDate(today)), text -> {
+            if (text != null && !text.isEmpty()) {
+                JOptionPane.showMessageDialog(
+                        this,
+                        "Сегодня у вас запланировано: " + text,
+                        "Напоминание",
+                        JOptionPane.INFORMATION_MESSAGE
+                );
+            }
+        }, this::showError);
     }
 
     /**
@@ -464,7 +744,15 @@ public class MainWindow extends JFrame {
      */
     private void showDatesList() {
         // Для простоты пока берём все даты (можно расширить до выбора диапазона)
-        Map<Date, String> data = storage.getAllAsDates();
+        AsyncStorage.onEdt(storage.submit(NoteStorage::getAllAsDates), this::showDatesList, this::showError);
+    }
+
+    /**
+     * Показывает загруженный список памятных дат в диалоговом окне.
+     *
+     * @param data записи "Date → текст"
+     */
+    private void showDatesList(Map<Date, String> data) {
         if (data.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Нет памятных дат.");
             return;
@@ -486,7 +774,16 @@ public class MainWindow extends JFrame {
      * Показывает ближайшую будущую памятную дату.
      */
     private void showNearestDate() {
-        Map.Entry<Date, String> nearest = storage.getNearestFutureDate(new Date());
+        Date now = new Date();
+        AsyncStorage.onEdt(storage.submit(s -> s.getNearestFutureDate(now)), this::showNearestDate, this::showError);
+    }
+
+    /**
+     * Показывает найденную ближайшую памятную дату.
+     *
+     * @param nearest ближайшая запись или null, если её нет
+     */
+    private void showNearestDate(Map.Entry<Date, String> nearest) {
         if (nearest == null) {
             JOptionPane.showMessageDialog(this, "Ближайших дат нет.");
             return;
@@ -0,0 +1,439 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+/**
+ * Быстрое чтение CSV-файла заметок через отображение файла в память.
+ * <p>
+ * Файл отображается с помощью {@link FileChannel#map}, границы записей и
+ * разделитель {@code ;} ищутся побайтово (оба символа ASCII, поэтому
+ * однозначны в UTF-8), без построчного чтения и {@code String.split}.
+ * Для каждой записи создаётся только строка ключа даты, а текст
+ * передаётся как {@link NoteText} — ссылка на экранированные байты,
+ * которые декодируются лишь при обращении.
+ * </p>
+ * <p>
+ * Отображение не переживает чтения: строки копируются на кучу блоками
+ * по {@link #BLOCK_SIZE}, и заметки ссылаются на эти копии. Иначе
+ * недекодированные заметки удерживали бы отображение файла, который
+ * тогда нельзя заменить ({@link AtomicFileWriter}) в Windows, а его
+ * усечение другой программой приводило бы к аварийному завершению JVM.
+ * </p>
+ * <p>
+ * Большие файлы {@link #readParallel(File, ConcurrentMap)} разбирает
+ * параллельно: отображение делится на участки, выровненные по переводам
+ * строк, и участки разбираются задачами {@link ForkJoinPool}.
+ * </p>
+ *
+ * Файлы больше 2 ГБ отображаются последовательными окнами,
+ * выровненными по границам строк.
+ * <p>
+ * Формат записей определяется по строке заголовка (см. {@link CsvFormat});
+ * записи с неверной контрольной суммой пропускаются, а найти и
+ * восстановить их позволяет {@link CsvVerifier}.
+ * </p>
+ */
+public final class MappedCsvReader {
+
+    /**
+     * Максимальный размер одного окна отображения.
+     */
+    private static final long WINDOW_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Размер файла, начиная с которого он разбирается параллельно.
+     */
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * Наименьший размер участка, разбираемого одной задачей.
+     */
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Размер блока, копируемого из отображения на кучу за один раз.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private MappedCsvReader() {
+    }
+
+    /**
+     * Читает все записи файла, пропуская строку заголовка.
+     * Строки без разделителя {@code ;} и повреждённые записи пропускаются.
+     *
+     * @param file CSV-файл
+     * @param sink получатель пар "строка даты → текст" в порядке следования в файле
+     * @throws IOException при ошибке чтения
+     */
+    public static void read(File file, BiConsumer<String, NoteText> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            read(channel, file, sink, null);
+        }
+    }
+
+    /**
+     * Читает все записи файла в индекс, разбирая большие файлы параллельно
+     * в общем {@link ForkJoinPool}. Результат тот же, что у
+     * {@link #read(File, BiConsumer)} с {@code index::put}: при повторе даты
+     * остаётся запись, стоящая в файле последней.
+     * <p>
+     * Участки вставляют записи в индекс через {@code putIfAbsent}. Даты,
+     * встретившиеся больше одного раза, запоминаются, и после разбора
+     * записи с этими датами вставляются повторно в порядке файла.
+     * В отсортированном файле повторов нет, и второй проход не нужен.
+     * Небольшие файлы и файлы на одноядерной машине читаются последовательно.
+     * </p>
+     *
+     * @param file  CSV-файл
+     * @param index индекс "строка даты → текст", допускающий параллельную запись
+     * @throws IOException при ошибке чтения
+     */
+    public static void readParallel(File file, ConcurrentMap<String, NoteText> index) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readParallel(channel, file, index, null);
+        }
+    }
+
+    /**
+     * Читает все записи файла в индекс, как {@link #readParallel(File, ConcurrentMap)},
+     * но без байтов текстов: заметки помнят только смещение и длины записи
+     * и читают её из открытого канала файла при обращении
+     * (см. {@link NoteText#located}). Строки разбираются прямо в отображении,
+     * и на куче остаются только ключи и объекты заметок. Канал закрывается
+     * сборщиком мусора, когда на него перестанут ссылаться заметки.
+     *
+     * @param file  CSV-файл
+     * @param index индекс "строка даты → заметка", допускающий параллельную запись
+     * @throws IOException при ошибке чтения
+     */
+    public static void readLocated(File file, ConcurrentMap<String, NoteText> index) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            readParallel(channel, file, index, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Последовательно читает записи открытого файла.
+     *
+     * @param channel канал файла
+     * @param file    файл (для сообщений об ошибках)
+     * @param sink    получатель записей в порядке файла
+     * @param located канал, из которого заметки читают записи при обращении;
+     *                {@code null} — заметки ссылаются на копии строк
+     * @throws IOException при ошибке чтения
+     */
+    private static void read(FileChannel channel, File file, BiConsumer<String, NoteText> sink,
+                             FileChannel located) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        CsvFormat format = CsvFormat.PLAIN;
+
+        while (position < size) {
+            long windowSize = Math.min(WINDOW_SIZE, size - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            int limit = windowLimit(buffer, windowSize, position + windowSize >= size, file);
+            int start = 0;
+            if (position == 0) {
+                start = skipHeader(buffer, limit);
+                format = CsvFormat.ofHeader(buffer, 0, Math.max(0, start - 1));
+            }
+            parseLines(buffer, start, limit, format, sink, located, position);
+            position += limit;
+        }
+    }
+
+    /**
+     * Читает записи открытого файла в индекс, большие файлы — параллельно
+     * (см. {@link #readParallel(File, ConcurrentMap)}).
+     *
+     * @param channel канал файла
+     * @param file    файл
+     * @param index   индекс
+     * @param located канал для заметок, читающих записи при обращении; {@code null} — без него
+     * @throws IOException при ошибке чтения
+     */
+    private static void readParallel(FileChannel channel, File file, ConcurrentMap<String, NoteText> index,
+                                     FileChannel located) throws IOException {
+        if (file.length() < PARALLEL_THRESHOLD || Runtime.getRuntime().availableProcessors() < 2) {
+            read(channel, file, index::put, located);
+            return;
+        }
+        long size = channel.size();
+        long position = 0;
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        CsvFormat format = CsvFormat.PLAIN;
+
+        while (position < size) {
+            long windowSize = Math.min(WINDOW_SIZE, size - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            int limit = windowLimit(buffer, windowSize, position + windowSize >= size, file);
+            int start = 0;
+            if (position == 0) {
+                start = skipHeader(buffer, limit);
+                format = CsvFormat.ofHeader(buffer, 0, Math.max(0, start - 1));
+            }
+
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, (limit - start) / (parallelism * 4));
+            Set<String> duplicates = ConcurrentHashMap.newKeySet();
+            ChunkTask root = new ChunkTask(buffer, start, limit, chunkSize, format, index, duplicates,
+                    located, position);
+            ForkJoinPool.commonPool().invoke(root);
+            if (!duplicates.isEmpty()) {
+                // повторы внутри окна и с предыдущими окнами: побеждает последняя запись
+                root.putDuplicates(index, duplicates);
+            }
+            position += limit;
+        }
+    }
+
+    /**
+     * Возвращает длину окна без недочитанной последней строки.
+     *
+     * @param buffer     окно отображения
+     * @param windowSize размер окна
+     * @param last       окно доходит до конца файла
+     * @param file       файл (для сообщения об ошибке)
+     * @return длина окна, заканчивающегося последним полным переводом строки
+     * @throws IOException если в окне нет ни одного перевода строки
+     */
+    static int windowLimit(MappedByteBuffer buffer, long windowSize, boolean last, File file) throws IOException {
+        int limit = (int) windowSize;
+        if (!last) {
+            // окно заканчивается на последнем полном переводе строки
+            while (limit > 0 && buffer.get(limit - 1) != '\n') {
+                limit--;
+            }
+            if (limit == 0) {
+                throw new IOException("Слишком длинная строка в файле " + file);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Находит начало строки, следующей за заголовком.
+     *
+     * @param buffer окно отображения
+     * @param limit  длина окна
+     * @return смещение первой записи
+     */
+    static int skipHeader(MappedByteBuffer buffer, int limit) {
+        int pos = 0;
+        while (pos < limit && buffer.get(pos) != '\n') {
+            pos++;
+        }
+        return Math.min(pos + 1, limit);
+    }
+
+    /**
+     * Разбирает строки участка окна. Если заметки ссылаются на байты
+     * текстов, строки копируются на кучу блоками, выровненными по переводам
+     * строк; заметкам, читающим записи из файла, копии не нужны, и строки
+     * разбираются прямо в отображении.
+     *
+     * @param buffer  окно отображения
+     * @param start   начало первой строки
+     * @param limit   конец участка (перевод строки или конец файла)
+     * @param format  формат записей
+     * @param sink    получатель записей
+     * @param located канал для заметок, читающих записи из файла; {@code null} — без него
+     * @param base    смещение окна в файле
+     */
+    private static void parseLines(MappedByteBuffer buffer, int start, int limit, CsvFormat format,
+                                   BiConsumer<String, NoteText> sink, FileChannel located, long base) {
+        if (located != null) {
+            parseBlock(buffer, start, limit, format, sink, located, base);
+            return;
+        }
+        while (start < limit) {
+            int blockEnd = Math.min(limit, start + BLOCK_SIZE);
+            if (blockEnd < limit) {
+                int lineEnd = blockEnd;
+                while (lineEnd > start && buffer.get(lineEnd - 1) != '\n') {
+                    lineEnd--;
+                }
+                if (lineEnd == start) {
+                    // строка длиннее блока: блок расширяется до её конца
+                    while (blockEnd < limit && buffer.get(blockEnd - 1) != '\n') {
+                        blockEnd++;
+                    }
+                } else {
+                    blockEnd = lineEnd;
+                }
+            }
+            byte[] block = new byte[blockEnd - start];
+            buffer.get(start, block);
+            parseBlock(ByteBuffer.wrap(block), 0, block.length, format, sink, null, 0);
+            start = blockEnd;
+        }
+    }
+
+    /**
+     * Разбирает строки блока.
+     *
+     * @param buffer  блок, скопированный из отображения, или само окно отображения
+     * @param start   начало первой строки
+     * @param limit   конец блока
+     * @param format  формат записей
+     * @param sink    получатель записей
+     * @param located канал для заметок, читающих записи из файла; {@code null} — без него
+     * @param base    смещение буфера в файле
+     */
+    private static void parseBlock(ByteBuffer buffer, int start, int limit, CsvFormat format,
+                                   BiConsumer<String, NoteText> sink, FileChannel located, long base) {
+        int lineStart = start;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            parseLine(buffer, lineStart, lineEnd, format, sink, located, base);
+            lineStart = next;
+        }
+    }
+
+    /**
+     * Разбирает одну строку {@code дата;текст}. Метаданные между датой
+     * и текстом (см. {@link CsvFormat#METADATA}) не разбираются, пока не понадобятся.
+     *
+     * @param buffer  блок строк
+     * @param start   начало строки
+     * @param end     конец строки (без перевода строки)
+     * @param format  формат записей
+     * @param sink    получатель записи
+     * @param located канал для заметок, читающих записи из файла; {@code null} — без него
+     * @param base    смещение буфера в файле
+     */
+    private static void parseLine(ByteBuffer buffer, int start, int end, CsvFormat format,
+                                  BiConsumer<String, NoteText> sink, FileChannel located, long base) {
+        end = format.textEnd(buffer, start, end);
+        if (end < 0) {
+            return;
+        }
+        int separator = start;
+        while (separator < end && buffer.get(separator) != ';') {
+            separator++;
+        }
+        if (separator == end) {
+            return;
+        }
+        int textStart = format.textStart(buffer, separator, end);
+        if (textStart < 0) {
+            return;
+        }
+
+        String key = CsvCodec.decode(buffer, start, separator - start);
+        int metaLength = textStart - separator - 1;
+        sink.accept(key, located == null ? format.note(buffer, textStart, end, metaLength)
+                : format.located(located, base + textStart, end - textStart, metaLength));
+    }
+
+    /**
+     * Задача разбора участка окна. Большой участок делится пополам по
+     * ближайшему переводу строки; участок не больше {@code chunkSize}
+     * разбирается сразу. Разобранные записи остаются в задаче до
+     * повторной вставки дат, встретившихся несколько раз.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient MappedByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+        private final CsvFormat format;
+        private final transient ConcurrentMap<String, NoteText> index;
+        private final transient Set<String> duplicates;
+        private final transient FileChannel located;
+        private final long base;
+
+        private ChunkTask left;
+        private ChunkTask right;
+        private String[] keys;
+        private NoteText[] texts;
+        private int count;
+
+        ChunkTask(MappedByteBuffer buffer, int start, int end, int chunkSize, CsvFormat format,
+                  ConcurrentMap<String, NoteText> index, Set<String> duplicates, FileChannel located, long base) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.format = format;
+            this.index = index;
+            this.duplicates = duplicates;
+            this.located = located;
+            this.base = base;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > chunkSize) {
+                int middle = start + (end - start) / 2;
+                while (middle < end && buffer.get(middle - 1) != '\n') {
+                    middle++;
+                }
+                if (middle < end) {
+                    left = new ChunkTask(buffer, start, middle, chunkSize, format, index, duplicates, located, base);
+                    right = new ChunkTask(buffer, middle, end, chunkSize, format, index, duplicates, located, base);
+                    invokeAll(left, right);
+                    return;
+                }
+            }
+
+            keys = new String[16];
+            texts = new NoteText[16];
+            parseLines(buffer, start, end, format, (key, text) -> {
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                    texts = Arrays.copyOf(texts, count * 2);
+                }
+                keys[count] = key;
+                texts[count] = text;
+                count++;
+                if (index.putIfAbsent(key, text) != null) {
+                    duplicates.add(key);
+                }
+            }, located, base);
+        }
+
+        /**
+         * Повторно вставляет записи с повторяющимися датами в порядке файла,
+         * чтобы в индексе осталась последняя из них.
+         *
+         * @param index      индекс
+         * @param duplicates даты, встретившиеся несколько раз
+         */
+        void putDuplicates(ConcurrentMap<String, NoteText> index, Set<String> duplicates) {
+            if (left != null) {
+                left.putDuplicates(index, duplicates);
+                right.putDuplicates(index, duplicates);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (duplicates.contains(keys[i])) {
+                    index.put(keys[i], texts[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш декодированных текстов заметок с ограничением по объёму в байтах
+ * и вытеснением давно не использованных записей (LRU).
+ * <p>
+ * Используется {@link CsvStorage} в режиме, когда в памяти постоянно
+ * находятся только даты и положения записей в файле, а тексты читаются
+ * из файла при обращении: декодированная строка живёт в кэше, пока её вес укладывается в лимит.
+ * Запись кэша помнит, из какого {@link NoteText} она получена, поэтому
+ * после сохранения новой версии заметки старый текст не возвращается.
+ * </p>
+ * <p>
+ * Вес записи оценивается как два байта на символ плюс постоянные
+ * накладные расходы на объекты строки и записи карты.
+ * </p>
+ */
+public final class NoteBodyCache {
+
+    /**
+     * Оценка накладных расходов на одну запись кэша в байтах.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * Наибольший суммарный вес записей.
+     */
+    private final long capacity;
+
+    /**
+     * Записи в порядке обращения: первая — давно не использованная.
+     */
+    private final LinkedHashMap<String, Body> bodies = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Текущий суммарный вес записей.
+     */
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Декодированный текст и заметка, из которой он получен.
+     */
+    private static final class Body {
+        final NoteText source;
+        final String text;
+        final long weight;
+
+        Body(NoteText source, String text) {
+            this.source = source;
+            this.text = text;
+            this.weight = ENTRY_OVERHEAD + 2L * text.length();
+        }
+    }
+
+    /**
+     * Конструктор.
+     *
+     * @param capacity наибольший суммарный вес текстов в байтах
+     */
+    public NoteBodyCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Возвращает текст заметки из кэша либо декодирует его и помещает в кэш.
+     * Декодирование выполняется без блокировки кэша.
+     *
+     * @param key  строка даты
+     * @param note заметка
+     * @return текст заметки
+     */
+    public String get(String key, NoteText note) {
+        synchronized (this) {
+            Body body = bodies.get(key);
+            if (body != null && body.source == note) {
+                hits++;
+                return body.text;
+            }
+            misses++;
+        }
+
+        Body body = new Body(note, note.peek());
+        if (body.weight > capacity) {
+            return body.text; // не поместится даже в пустой кэш
+        }
+        synchronized (this) {
+            Body old = bodies.put(key, body);
+            if (old != null) {
+                weight -= old.weight;
+            }
+            weight += body.weight;
+            Iterator<Body> eldest = bodies.values().iterator();
+            while (weight > capacity) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return body.text;
+    }
+
+    /**
+     * Удаляет текст заметки из кэша (например, после её изменения).
+     *
+     * @param key строка даты
+     */
+    public synchronized void invalidate(String key) {
+        Body old = bodies.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+        }
+    }
+
+    /**
+     * Очищает кэш. Статистика обращений сохраняется.
+     */
+    public synchronized void clear() {
+        bodies.clear();
+        weight = 0;
+    }
+
+    /**
+     * Возвращает наибольший суммарный вес текстов.
+     *
+     * @return лимит в байтах
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Возвращает текущий суммарный вес текстов в кэше.
+     *
+     * @return оценка занятой памяти в байтах
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Возвращает количество текстов в кэше.
+     *
+     * @return количество записей
+     */
+    public synchronized int size() {
+        return bodies.size();
+    }
+
+    /**
+     * Возвращает количество обращений, обслуженных из кэша.
+     *
+     * @return количество попаданий
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Возвращает количество обращений, потребовавших декодирования текста.
+     *
+     * @return количество промахов
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Возвращает количество текстов, вытесненных из-за лимита объёма.
+     *
+     * @return количество вытеснений
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Возвращает долю обращений, обслуженных из кэша.
+     *
+     * @return доля попаданий от 0 до 1; 0, если обращений не было
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("попаданий %d, промахов %d, вытеснено %d, занято %d из %d байт",
+                hits, misses, evictions, weight, capacity);
+    }
+}
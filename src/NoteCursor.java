@@ -0,0 +1,91 @@
+import java.time.LocalDate;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Курсор по записям хранилища в порядке дат.
+ * <p>
+ * Курсор не копирует записи: на каждом шаге он запрашивает у хранилища
+ * следующую запись после последнего выданного ключа. Поэтому курсор
+ * занимает постоянную память, не мешает сохранениям во время обхода
+ * (изменения, сделанные после текущей позиции, будут видны) и
+ * прекращает работу, как только потребитель потока перестаёт
+ * запрашивать записи (например, в {@code findFirst}).
+ * </p>
+ */
+public final class NoteCursor extends Spliterators.AbstractSpliterator<NoteEntry> {
+
+    /**
+     * Поиск записи в хранилище по ключу.
+     */
+    @FunctionalInterface
+    public interface Seek {
+
+        /**
+         * Находит первую запись с датой не раньше (или строго позже) указанной.
+         *
+         * @param day       дата; {@code null} — с начала хранилища
+         * @param inclusive учитывать ли запись за саму дату
+         * @return запись или {@code null}, если дальше записей нет
+         */
+        NoteEntry next(LocalDate day, boolean inclusive);
+    }
+
+    /**
+     * Поиск следующей записи.
+     */
+    private final Seek seek;
+
+    /**
+     * Верхняя граница (включительно) — номер дня от эпохи.
+     */
+    private final long toDay;
+
+    /**
+     * Дата последней выданной записи либо нижняя граница до первого шага.
+     */
+    private LocalDate position;
+
+    /**
+     * Признак того, что записи ещё не выдавались.
+     */
+    private boolean first = true;
+
+    private NoteCursor(Seek seek, LocalDate from, LocalDate to) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        this.seek = seek;
+        this.position = from;
+        this.toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+    }
+
+    /**
+     * Создаёт последовательный поток записей в диапазоне дат.
+     *
+     * @param seek поиск записи в хранилище
+     * @param from нижняя граница (включительно); {@code null} — без границы
+     * @param to   верхняя граница (включительно); {@code null} — без границы
+     * @return поток записей в порядке дат
+     */
+    public static Stream<NoteEntry> stream(Seek seek, LocalDate from, LocalDate to) {
+        return StreamSupport.stream(new NoteCursor(seek, from, to), false);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super NoteEntry> action) {
+        if (!first && position == null) {
+            return false; // записи закончились
+        }
+        NoteEntry entry = seek.next(position, first);
+        first = false;
+        if (entry == null || entry.getDay().toEpochDay() > toDay) {
+            position = null;
+            return false;
+        }
+        position = entry.getDay();
+        action.accept(entry);
+        return true;
+    }
+}
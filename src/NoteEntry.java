@@ -0,0 +1,85 @@
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * Запись хранилища, выдаваемая потоком {@link NoteStorage#stream(LocalDate, LocalDate)}.
+ * <p>
+ * Текст заметки не хранится в записи, а декодируется при каждом вызове
+ * {@link #getText()} и не остаётся в кэше хранилища, поэтому обход
+ * потока не накапливает тексты в памяти.
+ * </p>
+ */
+public final class NoteEntry {
+
+    /**
+     * Дата записи.
+     */
+    private final LocalDate day;
+
+    /**
+     * Текст заметки.
+     */
+    private final NoteText note;
+
+    /**
+     * Конструктор.
+     *
+     * @param day  дата записи
+     * @param note текст заметки
+     */
+    public NoteEntry(LocalDate day, NoteText note) {
+        this.day = day;
+        this.note = note;
+    }
+
+    /**
+     * Возвращает дату записи.
+     *
+     * @return дата
+     */
+    public LocalDate getDay() {
+        return day;
+    }
+
+    /**
+     * Возвращает строку даты.
+     *
+     * @return дата в формате yyyy-MM-dd
+     */
+    public String getKey() {
+        return day.toString();
+    }
+
+    /**
+     * Возвращает дату записи в виде {@link Date}
+     * (начало дня в часовом поясе по умолчанию).
+     *
+     * @return начало дня записи
+     */
+    public Date getDate() {
+        return NoteStorage.toDate(day);
+    }
+
+    /**
+     * Возвращает текст заметки, не сохраняя его в кэше хранилища.
+     *
+     * @return текст заметки
+     */
+    public String getText() {
+        return note.peek();
+    }
+
+    /**
+     * Возвращает метаданные заметки (время создания и изменения, приоритет, категорию).
+     *
+     * @return метаданные; {@link NoteMeta#EMPTY}, если хранилище их не ведёт
+     */
+    public NoteMeta getMeta() {
+        return note.meta();
+    }
+
+    @Override
+    public String toString() {
+        return day + "=" + getText();
+    }
+}
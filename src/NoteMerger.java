@@ -0,0 +1,691 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Слияние заметок из другого календаря с хранилищем (импорт).
+ * <p>
+ * Слияние выполняется проходом сортированного слияния: импортируемые
+ * записи и записи хранилища идут по датам навстречу друг другу, и для
+ * каждой импортируемой даты своя запись находится без поиска по индексу.
+ * Ни один из календарей не загружается целиком: в памяти находятся текущие
+ * записи обоих потоков и пачка изменений не больше {@link #BATCH_SIZE},
+ * которая после записи передаётся обработчику, так что подсветку можно
+ * обновлять по ходу импорта.
+ * </p>
+ * <p>
+ * Способ записи выбирает хранилище (см. {@link NoteStorage#merge(File, Policy, Consumer)}):
+ * <ul>
+ *     <li>по умолчанию изменения записываются пачками через
+ *     {@link NoteStorage#saveAll(Map)} во время обхода {@link NoteStorage#stream()};
+ *     записываемые даты всегда лежат не дальше позиции курсора хранилища,
+ *     поэтому курсор не встречает уже слитых записей;</li>
+ *     <li>{@link CsvStorage} за тот же проход переписывает CSV целиком
+ *     (см. {@link #rewrite(Iterator, Iterator, RecordSink, SkippedRecords)}),
+ *     вместо того чтобы дописывать в журнал каждую изменённую дату
+ *     и многократно сжимать его; пачки передаются обработчику только
+ *     после замены файла (см. {@link #publish(Iterator)}).</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Если в импортируемом файле даты идут не по порядку или повторяются, такие
+ * записи при записи пачками сливаются с изменениями ещё не записанной пачки
+ * или со своей заметкой, найденной через {@link NoteStorage#getByDate(LocalDate)}.
+ * При переписывании файла они откладываются в {@link SkippedRecords},
+ * сортируются там по датам и сливаются вторым проходом.
+ * Записи с пустым текстом не импортируются и ничего не удаляют.
+ * </p>
+ */
+public final class NoteMerger {
+
+    /**
+     * Наибольшее количество изменений в одной пачке.
+     */
+    public static final int BATCH_SIZE = 10000;
+
+    /**
+     * Разделитель своего и импортированного текста при объединении заметок.
+     */
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * Правило разрешения конфликта, когда заметка на дату есть в обоих календарях.
+     */
+    public enum Policy {
+
+        /**
+         * Оставить свою заметку.
+         */
+        KEEP_MINE("Оставить мои") {
+            @Override
+            String merge(String mine, String theirs) {
+                return mine;
+            }
+        },
+
+        /**
+         * Заменить свою заметку импортированной.
+         */
+        KEEP_THEIRS("Заменить импортированными") {
+            @Override
+            String merge(String mine, String theirs) {
+                return theirs;
+            }
+        },
+
+        /**
+         * Дописать импортированную заметку к своей с новой строки.
+         * Одинаковые заметки не дублируются, поэтому повторный импорт
+         * того же файла ничего не меняет.
+         */
+        CONCATENATE("Объединить") {
+            @Override
+            String merge(String mine, String theirs) {
+                if (mine.equals(theirs) || mine.endsWith(SEPARATOR + theirs)) {
+                    return mine;
+                }
+                return mine + SEPARATOR + theirs;
+            }
+        };
+
+        private final String title;
+
+        Policy(String title) {
+            this.title = title;
+        }
+
+        /**
+         * Возвращает текст заметки после слияния для даты, которая есть в обоих календарях.
+         *
+         * @param mine   своя заметка (не пустая)
+         * @param theirs импортированная заметка (не пустая)
+         * @return итоговый текст
+         */
+        abstract String merge(String mine, String theirs);
+
+        /**
+         * Возвращает название правила для интерфейса.
+         *
+         * @return название
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    /**
+     * Итог импорта.
+     */
+    public static final class Result {
+        private long added;
+        private long replaced;
+        private long unchanged;
+
+        private Result() {
+        }
+
+        /**
+         * Возвращает количество дат, которых в хранилище не было.
+         *
+         * @return количество добавленных заметок
+         */
+        public long getAdded() {
+            return added;
+        }
+
+        /**
+         * Возвращает количество своих заметок, изменённых слиянием.
+         *
+         * @return количество изменённых заметок
+         */
+        public long getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * Возвращает количество импортированных записей, не изменивших хранилище.
+         *
+         * @return количество пропущенных записей
+         */
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("добавлено %d, изменено %d, без изменений %d", added, replaced, unchanged);
+        }
+    }
+
+    /**
+     * Получатель записей слитого календаря.
+     */
+    @FunctionalInterface
+    interface RecordSink {
+
+        /**
+         * Вызывается для каждой записи в порядке дат.
+         *
+         * @param day  дата
+         * @param text текст заметки
+         * @param meta метаданные заметки
+         * @throws IOException при ошибке записи
+         */
+        void accept(LocalDate day, String text, NoteMeta meta) throws IOException;
+    }
+
+    /**
+     * Хранилище, в которое выполняется импорт.
+     */
+    private final NoteStorage target;
+    private final Policy policy;
+    private final Consumer<Map<LocalDate, String>> applied;
+    private final Result result = new Result();
+    private Map<LocalDate, String> pending = new LinkedHashMap<>();
+
+    /**
+     * Записывать ли пачки в хранилище; во время
+     * {@link #rewrite(Iterator, Iterator, RecordSink, SkippedRecords)}
+     * записи пишет {@link RecordSink}.
+     */
+    private boolean saving = true;
+
+    /**
+     * Наибольшая дата просмотренных импортируемых записей; записи не позже
+     * неё идут не по порядку.
+     */
+    private LocalDate last;
+
+    /**
+     * Даты изменений, записанных {@link #rewrite(Iterator, Iterator, RecordSink, SkippedRecords)}
+     * и ещё не переданных обработчику, как номера дней по возрастанию.
+     */
+    private long[] written = new long[16];
+    private int writtenCount;
+
+    /**
+     * Конструктор.
+     *
+     * @param target  хранилище, в которое выполняется импорт
+     * @param policy  правило разрешения конфликтов
+     * @param applied обработчик каждой записанной пачки
+     */
+    NoteMerger(NoteStorage target, Policy policy, Consumer<Map<LocalDate, String>> applied) {
+        this.target = target;
+        this.policy = policy;
+        this.applied = applied;
+    }
+
+    /**
+     * Открывает импортируемый файл как поток записей: CSV читается
+     * последовательно по строкам ({@link CsvStorage#read(File)}),
+     * двоичные хранилища — своим курсором ({@link NoteStorage#stream()}).
+     *
+     * @param file импортируемый файл
+     * @return поток записей
+     * @throws IOException если файл не удалось открыть
+     */
+    public static Stream<NoteEntry> read(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        if (path.toLowerCase().endsWith(ColumnarStorage.EXTENSION)
+                || path.toLowerCase().endsWith(PartitionedStorage.EXTENSION)) {
+            return NoteStorage.open(path).stream();
+        }
+        return CsvStorage.read(file);
+    }
+
+    /**
+     * Сливает записи файла с хранилищем, записывая изменения пачками
+     * через {@link NoteStorage#saveAll(Map)}.
+     *
+     * @param target  хранилище, в которое выполняется импорт
+     * @param source  импортируемый файл (см. {@link #read(File)})
+     * @param policy  правило разрешения конфликтов
+     * @param applied обработчик каждой записанной пачки "дата → новый текст";
+     *                вызывается в потоке импорта
+     * @return итог импорта
+     * @throws IOException если файл не удалось прочитать или пачку не удалось
+     *                     записать; пачки, записанные до ошибки, остаются в хранилище
+     */
+    public static Result merge(NoteStorage target, File source, Policy policy,
+                               Consumer<Map<LocalDate, String>> applied) throws IOException {
+        NoteMerger merger = new NoteMerger(target, policy, applied);
+        try (Stream<NoteEntry> mine = target.stream(); Stream<NoteEntry> theirs = read(source)) {
+            merger.mergeInto(mine.iterator(), theirs.iterator());
+        }
+        merger.apply();
+        return merger.result;
+    }
+
+    /**
+     * Возвращает итог слияния.
+     *
+     * @return итог
+     */
+    Result getResult() {
+        return result;
+    }
+
+    /**
+     * Проход слияния с записью изменений в хранилище.
+     *
+     * @param mine   записи хранилища в порядке дат
+     * @param theirs импортируемые записи
+     * @throws IOException при ошибке записи пачки
+     */
+    private void mergeInto(Iterator<NoteEntry> mine, Iterator<NoteEntry> theirs) throws IOException {
+        NoteEntry current = mine.hasNext() ? mine.next() : null;
+        while (theirs.hasNext()) {
+            NoteEntry entry = theirs.next();
+            String text = entry.getText();
+            if (text.isEmpty()) {
+                continue;
+            }
+            LocalDate day = entry.getDay();
+            if (!advance(day)) {
+                mergeOne(day, text);
+                continue;
+            }
+            while (current != null && current.getDay().isBefore(day)) {
+                current = mine.hasNext() ? mine.next() : null;
+            }
+            String own = "";
+            if (current != null && current.getDay().equals(day)) {
+                own = current.getText();
+                current = mine.hasNext() ? mine.next() : null;
+            }
+            change(day, own, text);
+        }
+    }
+
+    /**
+     * Проход слияния, выдающий все записи слитого календаря по порядку дат,
+     * в том числе не изменившиеся. Изменения в хранилище не записываются
+     * и обработчику сразу не передаются: запоминаются только их даты, а
+     * сами пачки передаёт {@link #publish(Iterator)} после того, как
+     * записанное сохранено. Импортируемые записи не по порядку откладываются
+     * в {@code skipped}; отсортированные, они сливаются следующим проходом.
+     * Метаданные своих заметок сохраняются, у изменённых обновляется время
+     * изменения; добавленные заметки получают метаданные импортированных,
+     * а если время их изменения неизвестно — время импорта.
+     *
+     * @param mine    записи хранилища в порядке дат
+     * @param theirs  импортируемые записи
+     * @param out     получатель записей
+     * @param skipped получатель записей не по порядку; {@code null}, если
+     *                импортируемые записи уже идут по возрастанию дат
+     * @throws IOException при ошибке записи
+     */
+    void rewrite(Iterator<NoteEntry> mine, Iterator<NoteEntry> theirs, RecordSink out,
+                 SkippedRecords skipped) throws IOException {
+        saving = false;
+        last = null;
+        Instant now = Instant.now();
+        NoteEntry current = mine.hasNext() ? mine.next() : null;
+        while (theirs.hasNext()) {
+            NoteEntry entry = theirs.next();
+            String text = entry.getText();
+            if (text.isEmpty()) {
+                continue;
+            }
+            LocalDate day = entry.getDay();
+            if (!advance(day)) {
+                if (skipped == null) {
+                    throw new IllegalArgumentException("Записи не по порядку дат: " + day);
+                }
+                skipped.add(entry);
+                continue;
+            }
+            while (current != null && current.getDay().isBefore(day)) {
+                out.accept(current.getDay(), current.getText(), current.getMeta());
+                current = mine.hasNext() ? mine.next() : null;
+            }
+            String own = "";
+            NoteMeta ownMeta = null;
+            if (current != null && current.getDay().equals(day)) {
+                own = current.getText();
+                ownMeta = current.getMeta();
+                current = mine.hasNext() ? mine.next() : null;
+            }
+            String merged = change(day, own, text);
+            if (merged == null) {
+                out.accept(day, own, ownMeta);
+            } else if (ownMeta != null) {
+                out.accept(day, merged, ownMeta.edited(now));
+            } else {
+                NoteMeta meta = entry.getMeta();
+                out.accept(day, merged, meta.getModified() != null ? meta : meta.edited(now));
+            }
+        }
+        while (current != null) {
+            out.accept(current.getDay(), current.getText(), current.getMeta());
+            current = mine.hasNext() ? mine.next() : null;
+        }
+        apply();
+        saving = true;
+    }
+
+    /**
+     * Передаёт обработчику изменения, записанные последним
+     * {@link #rewrite(Iterator, Iterator, RecordSink, SkippedRecords)},
+     * пачками не больше {@link #BATCH_SIZE}. Тексты берутся из уже
+     * сохранённого результата, поэтому вызывается после замены файла.
+     *
+     * @param merged записи сохранённого календаря в порядке дат
+     */
+    void publish(Iterator<NoteEntry> merged) {
+        Map<LocalDate, String> batch = new LinkedHashMap<>();
+        int next = 0;
+        while (next < writtenCount && merged.hasNext()) {
+            NoteEntry entry = merged.next();
+            long day = entry.getDay().toEpochDay();
+            while (next < writtenCount && written[next] < day) {
+                next++; // изменённой даты в файле нет
+            }
+            if (next < writtenCount && written[next] == day) {
+                batch.put(entry.getDay(), entry.getText());
+                next++;
+                if (batch.size() >= BATCH_SIZE) {
+                    applied.accept(batch);
+                    batch = new LinkedHashMap<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            applied.accept(batch);
+        }
+        writtenCount = 0;
+    }
+
+    /**
+     * Сдвигает наибольшую просмотренную дату.
+     *
+     * @param day дата импортируемой записи
+     * @return {@code false}, если запись идёт не по порядку
+     */
+    private boolean advance(LocalDate day) {
+        if (last != null && !day.isAfter(last)) {
+            return false;
+        }
+        last = day;
+        return true;
+    }
+
+    /**
+     * Сливает запись, которую курсор хранилища уже прошёл. Если дата есть
+     * в ещё не записанной пачке, своей заметкой считается изменение из пачки;
+     * иначе своя заметка берётся поиском по дате — пачка на неё не влияет,
+     * поэтому записывать её ради поиска не нужно.
+     *
+     * @param day  дата
+     * @param text импортируемый текст
+     * @throws IOException при ошибке записи заполненной пачки
+     */
+    private void mergeOne(LocalDate day, String text) throws IOException {
+        String own = pending.get(day);
+        change(day, own != null ? own : target.getByDate(day), text);
+    }
+
+    /**
+     * Разрешает конфликт по правилу и добавляет изменение в пачку.
+     *
+     * @param day    дата
+     * @param own    своя заметка; пустая, если её нет
+     * @param theirs импортируемая заметка
+     * @return новый текст или {@code null}, если своя заметка не меняется
+     * @throws IOException при ошибке записи заполненной пачки
+     */
+    private String change(LocalDate day, String own, String theirs) throws IOException {
+        String merged;
+        if (own.isEmpty()) {
+            merged = theirs;
+            result.added++;
+        } else {
+            merged = policy.merge(own, theirs);
+            if (merged.equals(own)) {
+                result.unchanged++;
+                return null;
+            }
+            result.replaced++;
+        }
+        pending.put(day, merged);
+        if (pending.size() >= BATCH_SIZE) {
+            apply();
+        }
+        return merged;
+    }
+
+    /**
+     * Записывает накопленную пачку изменений в хранилище и передаёт её
+     * обработчику. Во время прохода
+     * {@link #rewrite(Iterator, Iterator, RecordSink, SkippedRecords)}
+     * только запоминает даты пачки для {@link #publish(Iterator)}.
+     *
+     * @throws IOException при ошибке записи
+     */
+    private void apply() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<LocalDate, String> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (saving) {
+            target.saveAll(batch);
+            applied.accept(batch);
+            return;
+        }
+        if (writtenCount + batch.size() > written.length) {
+            written = Arrays.copyOf(written, Math.max(written.length * 2, writtenCount + batch.size()));
+        }
+        for (LocalDate day : batch.keySet()) {
+            written[writtenCount++] = day.toEpochDay();
+        }
+    }
+
+    /**
+     * Импортируемые записи, идущие не по порядку дат, отложенные проходом
+     * {@link #rewrite(Iterator, Iterator, RecordSink, SkippedRecords)}.
+     * <p>
+     * Записи собираются в памяти в отсортированные серии по
+     * {@link #RUN_SIZE} записей; заполненная серия сбрасывается во временный
+     * CSV-файл. {@link #sorted()} сливает серии в один поток по возрастанию
+     * дат. Несколько записей на одну дату объединяются по правилу слияния
+     * в порядке их следования в импортируемом файле, так что второй проход
+     * применяет их так же, как применил бы по одной; в итоге импорта
+     * такая дата учитывается один раз.
+     * </p>
+     */
+    static final class SkippedRecords implements Closeable {
+
+        /**
+         * Наибольшее количество записей в одной серии.
+         */
+        static final int RUN_SIZE = 100000;
+
+        private final File directory;
+        private final Policy policy;
+        private final List<File> runs = new ArrayList<>();
+        private TreeMap<LocalDate, NoteEntry> run = new TreeMap<>();
+        private long count;
+
+        /**
+         * Конструктор.
+         *
+         * @param directory каталог для временных файлов серий
+         * @param policy    правило, по которому объединяются записи на одну дату
+         */
+        SkippedRecords(File directory, Policy policy) {
+            this.directory = directory;
+            this.policy = policy;
+        }
+
+        /**
+         * Откладывает запись.
+         *
+         * @param entry импортируемая запись с непустым текстом
+         * @throws IOException если заполненную серию не удалось записать
+         */
+        void add(NoteEntry entry) throws IOException {
+            // текст декодируется сразу: запись может ссылаться на буфер курсора
+            entry = new NoteEntry(entry.getDay(), NoteText.of(entry.getText(), entry.getMeta()));
+            NoteEntry earlier = run.get(entry.getDay());
+            run.put(entry.getDay(), earlier == null ? entry : combine(earlier, entry));
+            count++;
+            if (run.size() >= RUN_SIZE) {
+                File file = File.createTempFile("merge-", ".csv", directory);
+                runs.add(file);
+                CsvStorage.write(file, run.values().stream());
+                run = new TreeMap<>();
+            }
+        }
+
+        /**
+         * Проверяет, были ли отложены записи.
+         *
+         * @return true, если записей нет
+         */
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Возвращает отложенные записи по возрастанию дат, по одной на дату.
+         * Поток нужно закрыть, чтобы закрыть файлы серий.
+         *
+         * @return поток записей
+         * @throws IOException если файл серии не удалось открыть
+         */
+        Stream<NoteEntry> sorted() throws IOException {
+            List<Stream<NoteEntry>> streams = new ArrayList<>();
+            try {
+                for (File file : runs) {
+                    streams.add(CsvStorage.read(file));
+                }
+            } catch (IOException e) {
+                streams.forEach(Stream::close);
+                throw e;
+            }
+            streams.add(run.values().stream());
+            List<Iterator<NoteEntry>> iterators = new ArrayList<>();
+            for (Stream<NoteEntry> stream : streams) {
+                iterators.add(stream.iterator());
+            }
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new RunMerger(iterators),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> streams.forEach(Stream::close));
+        }
+
+        /**
+         * Удаляет временные файлы серий.
+         */
+        @Override
+        public void close() {
+            for (File file : runs) {
+                if (!file.delete() && file.exists()) {
+                    file.deleteOnExit();
+                }
+            }
+            runs.clear();
+        }
+
+        /**
+         * Объединяет две записи на одну дату по правилу слияния:
+         * результат слить со своей заметкой — то же, что слить с ней
+         * сначала более раннюю, потом более позднюю запись.
+         *
+         * @param earlier запись, встретившаяся раньше
+         * @param later   запись, встретившаяся позже
+         * @return объединённая запись с метаданными более ранней
+         */
+        private NoteEntry combine(NoteEntry earlier, NoteEntry later) {
+            String text = policy.merge(earlier.getText(), later.getText());
+            return new NoteEntry(earlier.getDay(), NoteText.of(text, earlier.getMeta()));
+        }
+
+        /**
+         * Слияние отсортированных серий в один поток. Записи на одну дату
+         * из разных серий объединяются в порядке серий, то есть в порядке
+         * их следования в импортируемом файле.
+         */
+        private final class RunMerger implements Iterator<NoteEntry> {
+
+            private final List<Iterator<NoteEntry>> iterators;
+            private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+            RunMerger(List<Iterator<NoteEntry>> iterators) {
+                this.iterators = iterators;
+                for (int i = 0; i < iterators.size(); i++) {
+                    advance(i);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public NoteEntry next() {
+                if (heads.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Head head = heads.poll();
+                NoteEntry entry = head.entry;
+                advance(head.run);
+                while (!heads.isEmpty() && heads.peek().entry.getDay().equals(entry.getDay())) {
+                    Head same = heads.poll();
+                    entry = combine(entry, same.entry);
+                    advance(same.run);
+                }
+                return entry;
+            }
+
+            private void advance(int index) {
+                Iterator<NoteEntry> iterator = iterators.get(index);
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), index));
+                }
+            }
+        }
+
+        /**
+         * Текущая запись серии; упорядочивается по дате, затем по номеру серии.
+         */
+        private static final class Head implements Comparable<Head> {
+            final NoteEntry entry;
+            final int run;
+
+            Head(NoteEntry entry, int run) {
+                this.entry = entry;
+                this.run = run;
+            }
+
+            @Override
+            public int compareTo(Head other) {
+                int order = entry.getDay().compareTo(other.entry.getDay());
+                return order != 0 ? order : Integer.compare(run, other.run);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+/**
+ * Метаданные заметки: время создания и последнего изменения текста,
+ * приоритет и категория.
+ * <p>
+ * Хранятся в полях записи CSV начиная с версии 3 формата (см. {@link CsvFormat#METADATA})
+ * в виде {@code создана;изменена;приоритет;категория}: время — в ISO-8601
+ * с точностью до секунды, пустое поле — неизвестно (у записей, перенесённых
+ * из файлов прежних версий). Категория не может содержать {@code ;} и
+ * переводы строк: при создании они заменяются пробелами, поэтому поля
+ * разбираются по разделителям однозначно.
+ * </p>
+ * <p>
+ * Время изменения проставляет хранилище при сохранении текста
+ * (см. {@link #edited(Instant)}), поэтому объект неизменяем.
+ * </p>
+ */
+public final class NoteMeta {
+
+    /**
+     * Метаданные заметки, о которой ничего не известно.
+     */
+    public static final NoteMeta EMPTY = new NoteMeta(null, null, 0, "");
+
+    /**
+     * Количество полей метаданных в записи.
+     */
+    static final int FIELDS = 4;
+
+    /**
+     * Поля пустых метаданных.
+     */
+    private static final byte[] EMPTY_FIELDS = {';', ';', '0', ';'};
+
+    private final Instant created;
+    private final Instant modified;
+    private final int priority;
+    private final String category;
+
+    /**
+     * Конструктор.
+     *
+     * @param created  время создания или {@code null}, если неизвестно
+     * @param modified время последнего изменения или {@code null}, если неизвестно
+     * @param priority приоритет (0 — обычный)
+     * @param category категория; {@code null} — без категории
+     */
+    public NoteMeta(Instant created, Instant modified, int priority, String category) {
+        this.created = created == null ? null : created.truncatedTo(ChronoUnit.SECONDS);
+        this.modified = modified == null ? null : modified.truncatedTo(ChronoUnit.SECONDS);
+        this.priority = priority;
+        this.category = category == null ? "" : category.replace(';', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Возвращает метаданные заметки, текст которой изменён:
+     * время изменения — указанное, время создания — прежнее
+     * или, если оно неизвестно, тоже указанное.
+     *
+     * @param now время изменения
+     * @return новые метаданные
+     */
+    public NoteMeta edited(Instant now) {
+        return new NoteMeta(created == null ? now : created, now, priority, category);
+    }
+
+    /**
+     * Возвращает метаданные с другими приоритетом и категорией.
+     *
+     * @param priority приоритет
+     * @param category категория
+     * @return новые метаданные с прежним временем
+     */
+    public NoteMeta withTags(int priority, String category) {
+        return new NoteMeta(created, modified, priority, category);
+    }
+
+    /**
+     * @return время создания или {@code null}, если неизвестно
+     */
+    public Instant getCreated() {
+        return created;
+    }
+
+    /**
+     * @return время последнего изменения или {@code null}, если неизвестно
+     */
+    public Instant getModified() {
+        return modified;
+    }
+
+    /**
+     * @return приоритет
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return категория; пустая строка — без категории
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Записывает поля {@code создана;изменена;приоритет;категория} без завершающего разделителя.
+     *
+     * @param out строка, к которой добавляются поля
+     */
+    public void appendTo(StringBuilder out) {
+        if (created != null) {
+            out.append(created);
+        }
+        out.append(';');
+        if (modified != null) {
+            out.append(modified);
+        }
+        out.append(';').append(priority).append(';');
+        CsvCodec.appendEscaped(out, category);
+    }
+
+    /**
+     * Находит конец полей метаданных, начинающихся с указанной позиции.
+     *
+     * @param buffer буфер (позиция и граница не используются)
+     * @param start  начало первого поля
+     * @param end    граница поиска
+     * @return позиция разделителя после последнего поля или -1, если полей меньше
+     */
+    static int skip(ByteBuffer buffer, int start, int end) {
+        int fields = 0;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ';' && ++fields == FIELDS) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Разбирает поля метаданных. Некорректное время считается неизвестным,
+     * некорректный приоритет — обычным. Пустые метаданные записей,
+     * перенесённых из прежних версий, распознаются без декодирования.
+     *
+     * @param buffer буфер (позиция и граница не используются)
+     * @param start  начало первого поля
+     * @param end    конец последнего поля
+     * @return метаданные
+     */
+    static NoteMeta parse(ByteBuffer buffer, int start, int end) {
+        if (isEmpty(buffer, start, end)) {
+            return EMPTY;
+        }
+        String[] fields = CsvCodec.decode(buffer, start, end - start).split(";", FIELDS);
+        if (fields.length < FIELDS) {
+            return EMPTY;
+        }
+        int priority;
+        try {
+            priority = fields[2].isEmpty() ? 0 : Integer.parseInt(fields[2]);
+        } catch (NumberFormatException e) {
+            priority = 0;
+        }
+        NoteMeta meta = new NoteMeta(parseInstant(fields[0]), parseInstant(fields[1]), priority, fields[3]);
+        return meta.equals(EMPTY) ? EMPTY : meta;
+    }
+
+    /**
+     * Проверяет, что участок буфера — поля пустых метаданных.
+     *
+     * @param buffer буфер
+     * @param start  начало первого поля
+     * @param end    конец последнего поля
+     * @return true для {@code ;;0;}
+     */
+    private static boolean isEmpty(ByteBuffer buffer, int start, int end) {
+        if (end - start != EMPTY_FIELDS.length) {
+            return false;
+        }
+        for (int i = 0; i < EMPTY_FIELDS.length; i++) {
+            if (buffer.get(start + i) != EMPTY_FIELDS[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Разбирает время в ISO-8601.
+     *
+     * @param field поле записи
+     * @return время или {@code null}, если поле пустое или некорректное
+     */
+    private static Instant parseInstant(String field) {
+        if (field.isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(field);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NoteMeta)) {
+            return false;
+        }
+        NoteMeta other = (NoteMeta) o;
+        return priority == other.priority && Objects.equals(created, other.created)
+                && Objects.equals(modified, other.modified) && category.equals(other.category);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(created, modified, priority, category);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        appendTo(text);
+        return text.toString();
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.AbstractMap;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище заметок, привязанных к датам.
+ * <p>
+ * Реализации:
+ * <ul>
+ *     <li>{@link CsvStorage} — текстовый файл с версией формата в заголовке (см. {@link CsvFormat});</li>
+ *     <li>{@link ColumnarStorage} — двоичный колоночный формат для больших календарей;</li>
+ *     <li>{@link PartitionedStorage} — отдельный CSV-файл на каждый год, годы загружаются по запросу.</li>
+ * </ul>
+ * Конкретная реализация выбирается по расширению файла в {@link #open(String)}.
+ * </p>
+ * <p>
+ * Записи адресуются датами {@link LocalDate}, без времени суток и часового
+ * пояса. Методы с {@link Date} — переходники для календаря: момент переводится
+ * в день по часовому поясу по умолчанию один раз, на входе в хранилище.
+ * </p>
+ */
+public interface NoteStorage {
+
+    /**
+     * Обработчик изменений, сделанных в хранилище другими процессами.
+     */
+    @FunctionalInterface
+    interface ChangeListener {
+
+        /**
+         * Вызывается после того, как хранилище обнаружило внешние изменения.
+         *
+         * @param changes изменившиеся записи "дата → новый текст";
+         *                пустой текст означает, что запись удалена
+         */
+        void notesChanged(Map<LocalDate, String> changes);
+    }
+
+    /**
+     * Открывает хранилище, выбирая реализацию по расширению файла:
+     * {@link ColumnarStorage#EXTENSION} — колоночное хранилище,
+     * {@link PartitionedStorage#EXTENSION} — хранилище по годам,
+     * любое другое — CSV.
+     *
+     * @param fileName имя файла хранилища
+     * @return хранилище
+     */
+    static NoteStorage open(String fileName) {
+        if (fileName.toLowerCase().endsWith(ColumnarStorage.EXTENSION)) {
+            return new ColumnarStorage(fileName);
+        }
+        if (fileName.toLowerCase().endsWith(PartitionedStorage.EXTENSION)) {
+            return new PartitionedStorage(fileName);
+        }
+        return new CsvStorage(fileName);
+    }
+
+    /**
+     * Сохраняет или удаляет запись для указанной даты.
+     * Если текст пустой — запись удаляется.
+     *
+     * @param day  дата записи
+     * @param text текст заметки
+     */
+    void save(LocalDate day, String text);
+
+    /**
+     * Сохраняет или удаляет записи для нескольких дат.
+     * Пустой текст удаляет запись.
+     * <p>
+     * Реализация по умолчанию сохраняет записи по одной, и при ошибке часть
+     * изменений может остаться применённой; {@link CsvStorage} применяет
+     * все изменения одной транзакцией.
+     * </p>
+     *
+     * @param changes записи "дата → текст"
+     * @throws IOException если изменения не удалось записать
+     */
+    default void saveAll(Map<LocalDate, String> changes) throws IOException {
+        for (Map.Entry<LocalDate, String> change : changes.entrySet()) {
+            save(change.getKey(), change.getValue());
+        }
+    }
+
+    /**
+     * Удаляет все записи за период.
+     * <p>
+     * Реализация по умолчанию удаляет записи по одной (см. {@link #saveAll(Map)}).
+     * </p>
+     *
+     * @param from начало периода (включительно)
+     * @param to   конец периода (включительно)
+     * @throws IOException если изменения не удалось записать
+     */
+    default void deleteRange(LocalDate from, LocalDate to) throws IOException {
+        Map<LocalDate, String> changes = new LinkedHashMap<>();
+        try (Stream<NoteEntry> entries = stream(from, to)) {
+            entries.forEach(entry -> changes.put(entry.getDay(), ""));
+        }
+        saveAll(changes);
+    }
+
+    /**
+     * Импортирует записи другого календаря, сливая их со своими
+     * (см. {@link NoteMerger}).
+     * <p>
+     * Реализация по умолчанию записывает изменения пачками через
+     * {@link #saveAll(Map)}; {@link CsvStorage} переписывает файл
+     * за один проход.
+     * </p>
+     *
+     * @param source  импортируемый файл (CSV или двоичное хранилище)
+     * @param policy  правило для дат, на которые заметки есть в обоих календарях
+     * @param applied обработчик каждой пачки изменений "дата → новый текст";
+     *                вызывается в потоке импорта
+     * @return итог импорта
+     * @throws IOException если файл не удалось прочитать или изменения не удалось записать
+     */
+    default NoteMerger.Result merge(File source, NoteMerger.Policy policy,
+                                    Consumer<Map<LocalDate, String>> applied) throws IOException {
+        return NoteMerger.merge(this, source, policy, applied);
+    }
+
+    /**
+     * Загружает все записи в виде карты "строка даты (yyyy-MM-dd) → текст",
+     * упорядоченной по дате.
+     *
+     * @return карта всех записей
+     */
+    Map<String, String> loadAll();
+
+    /**
+     * Получает запись по конкретной дате.
+     *
+     * @param day дата
+     * @return текст заметки или пустая строка, если записи нет
+     */
+    String getByDate(LocalDate day);
+
+    /**
+     * Возвращает множество всех дат (yyyy-MM-dd), для которых есть записи.
+     * Множество может быть неизменяемым.
+     *
+     * @return множество строковых дат
+     */
+    Set<String> getAllDates();
+
+    /**
+     * Возвращает записи за указанный период.
+     *
+     * @param from начало периода (включительно)
+     * @param to   конец периода (включительно)
+     * @return карта записей в пределах периода, упорядоченная по дате
+     */
+    default Map<LocalDate, String> getByPeriod(LocalDate from, LocalDate to) {
+        try (Stream<NoteEntry> entries = stream(from, to)) {
+            return entries.collect(Collectors.toMap(NoteEntry::getDay, NoteEntry::getText,
+                    (a, b) -> b, LinkedHashMap::new));
+        }
+    }
+
+    /**
+     * Возвращает ближайшую запись, начиная с указанной даты (включительно).
+     *
+     * @param from дата отсчёта
+     * @return ближайшая запись или null, если её нет
+     */
+    default Map.Entry<LocalDate, String> getNearestFutureDate(LocalDate from) {
+        try (Stream<NoteEntry> entries = stream(from, null)) {
+            return entries.findFirst()
+                    .<Map.Entry<LocalDate, String>>map(entry ->
+                            new AbstractMap.SimpleImmutableEntry<>(entry.getDay(), entry.getText()))
+                    .orElse(null);
+        }
+    }
+
+    /**
+     * Возвращает ленивый поток записей за период в порядке дат.
+     * <p>
+     * В отличие от {@link #loadAll()} и {@link #getByPeriod(LocalDate, LocalDate)},
+     * записи не собираются в карту: каждая следующая запись ищется в
+     * хранилище только тогда, когда потребитель её запрашивает, а тексты
+     * декодируются при обращении к {@link NoteEntry#getText()}. Поэтому
+     * обход занимает постоянную память и может быть прерван в любой момент.
+     * </p>
+     *
+     * @param from начало периода (включительно); {@code null} — с первой записи
+     * @param to   конец периода (включительно); {@code null} — до последней записи
+     * @return поток записей
+     */
+    Stream<NoteEntry> stream(LocalDate from, LocalDate to);
+
+    /**
+     * Возвращает ленивый поток всех записей в порядке дат.
+     *
+     * @return поток записей
+     */
+    default Stream<NoteEntry> stream() {
+        return stream((LocalDate) null, null);
+    }
+
+    // Переходники для java.util.Date (дата берётся в часовом поясе по умолчанию)
+
+    /**
+     * Сохраняет или удаляет запись для дня, в который попадает момент {@code date}.
+     *
+     * @param date дата записи
+     * @param text текст заметки
+     */
+    default void save(Date date, String text) {
+        save(toDay(date), text);
+    }
+
+    /**
+     * Получает запись для дня, в который попадает момент {@code date}.
+     *
+     * @param date дата
+     * @return текст заметки или пустая строка, если записи нет
+     */
+    default String getByDate(Date date) {
+        return getByDate(toDay(date));
+    }
+
+    /**
+     * Загружает все записи в виде карты "Date → текст", упорядоченной по дате.
+     *
+     * @return карта всех записей с объектами Date (начало дня)
+     */
+    default Map<Date, String> getAllAsDates() {
+        return getByPeriod((Date) null, null);
+    }
+
+    /**
+     * Возвращает записи за дни, в которые попадают моменты {@code from} и {@code to},
+     * и все дни между ними.
+     *
+     * @param from начало периода (включительно); {@code null} — с первой записи
+     * @param to   конец периода (включительно); {@code null} — до последней записи
+     * @return карта записей "Date (начало дня) → текст", упорядоченная по дате
+     */
+    default Map<Date, String> getByPeriod(Date from, Date to) {
+        Map<Date, String> result = new LinkedHashMap<>();
+        getByPeriod(from == null ? null : toDay(from), to == null ? null : toDay(to))
+                .forEach((day, text) -> result.put(toDate(day), text));
+        return result;
+    }
+
+    /**
+     * Возвращает ближайшую будущую дату с записью, начиная от указанного момента.
+     * Запись за день отсчёта учитывается, только если отсчёт ведётся
+     * ровно с начала дня.
+     *
+     * @param from момент отсчёта
+     * @return ближайшая запись (Date — начало дня) или null, если её нет
+     */
+    default Map.Entry<Date, String> getNearestFutureDate(Date from) {
+        LocalDate day = toDay(from);
+        if (toDate(day).before(from)) {
+            day = day.plusDays(1);
+        }
+        Map.Entry<LocalDate, String> nearest = getNearestFutureDate(day);
+        return nearest == null ? null
+                : new AbstractMap.SimpleImmutableEntry<>(toDate(nearest.getKey()), nearest.getValue());
+    }
+
+    /**
+     * Возвращает ленивый поток записей за дни, в которые попадают
+     * моменты {@code from} и {@code to}, и все дни между ними.
+     *
+     * @param from начало периода (включительно); {@code null} — с первой записи
+     * @param to   конец периода (включительно); {@code null} — до последней записи
+     * @return поток записей
+     */
+    default Stream<NoteEntry> stream(Date from, Date to) {
+        return stream(from == null ? null : toDay(from), to == null ? null : toDay(to));
+    }
+
+    /**
+     * Возвращает день, в который попадает момент, в часовом поясе по умолчанию.
+     *
+     * @param date момент
+     * @return дата
+     */
+    static LocalDate toDay(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    /**
+     * Возвращает начало дня в часовом поясе по умолчанию.
+     *
+     * @param day дата
+     * @return момент начала дня
+     */
+    static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Барьер долговечности: записывает на диск все изменения, сделанные
+     * до вызова. Хранилища, которые пишут каждое изменение сразу,
+     * ничего не делают.
+     *
+     * @throws IOException если изменения не удалось записать; они остаются
+     *                     несохранёнными, и вызов можно повторить
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Добавляет обработчик изменений, сделанных другими процессами.
+     * Хранилища, которые не отслеживают внешние изменения, обработчик игнорируют.
+     *
+     * @param listener обработчик
+     */
+    default void addChangeListener(ChangeListener listener) {
+    }
+}
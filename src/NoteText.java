@@ -0,0 +1,300 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Текст заметки, хранящийся в кэше {@link CsvStorage}.
+ * <p>
+ * Текст может быть задан готовой строкой либо ссылкой на участок
+ * прочитанных из CSV-файла байтов. Во втором случае строка декодируется
+ * из UTF-8 и восстанавливается (см. {@link CsvCodec}) только при
+ * первом обращении к {@link #text()}; до этого заметка не создаёт на куче
+ * ничего, кроме самого объекта-ссылки.
+ * </p>
+ * <p>
+ * Заметка режима хранения только дат (см. {@link #located}) не ссылается
+ * на байты вовсе: она помнит только смещение и длины записи в файле и при
+ * каждом обращении читает их позиционным чтением из открытого канала.
+ * Такая заметка не запоминает декодированный текст — его держит
+ * {@link NoteBodyCache}.
+ * </p>
+ * <p>
+ * Метаданные заметки ({@link NoteMeta}) в записи CSV стоят прямо перед
+ * текстом, поэтому для заметки из файла хватает их длины: они
+ * разбираются при обращении к {@link #meta()} и, в отличие от текста,
+ * не сохраняются, пока не декодирован сам текст.
+ * </p>
+ */
+public final class NoteText {
+
+    /**
+     * Байты записей с экранированным текстом; {@code null} после декодирования.
+     */
+    private ByteBuffer source;
+
+    /**
+     * Канал CSV-файла, из которого читается текст; {@code null} — текст
+     * в {@link #source} или задан строкой.
+     */
+    private final FileChannel file;
+
+    /**
+     * Смещение текста в {@link #source} либо в файле {@link #file}.
+     */
+    private final long offset;
+
+    /**
+     * Длина текста в байтах.
+     */
+    private final int length;
+
+    /**
+     * Длина метаданных вместе с разделителем перед текстом в байтах;
+     * 0 — в записи их нет.
+     */
+    private final int metaLength;
+
+    /**
+     * Текст записан по правилу версии 1 (см. {@link CsvCodec#decodeLegacy}).
+     */
+    private final boolean legacy;
+
+    /**
+     * Метаданные; {@code null} — ещё не разобраны из {@link #source} или их нет.
+     */
+    private NoteMeta meta;
+
+    /**
+     * Декодированный текст; {@code null}, пока к нему не обращались.
+     */
+    private volatile String text;
+
+    private NoteText(ByteBuffer source, FileChannel file, long offset, int length, int metaLength,
+                     boolean legacy, String text, NoteMeta meta) {
+        this.source = source;
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.metaLength = metaLength;
+        this.legacy = legacy;
+        this.text = text;
+        this.meta = meta;
+    }
+
+    /**
+     * Создаёт заметку из готового текста.
+     *
+     * @param text текст заметки
+     * @return заметка
+     */
+    public static NoteText of(String text) {
+        return new NoteText(null, null, 0, 0, 0, false, text, null);
+    }
+
+    /**
+     * Создаёт заметку из готового текста с метаданными.
+     *
+     * @param text текст заметки
+     * @param meta метаданные
+     * @return заметка
+     */
+    public static NoteText of(String text, NoteMeta meta) {
+        return new NoteText(null, null, 0, 0, 0, false, text, meta);
+    }
+
+    /**
+     * Создаёт заметку, ссылающуюся на экранированный текст в буфере.
+     * Буфер не копируется, поэтому после вызова его содержимое не должно меняться.
+     *
+     * @param source буфер с байтами записей; не должен быть отображением
+     *               файла, иначе заметка удерживает отображение
+     * @param offset смещение начала текста
+     * @param length длина текста в байтах
+     * @return заметка
+     */
+    public static NoteText mapped(ByteBuffer source, int offset, int length) {
+        return new NoteText(source, null, offset, length, 0, false, null, null);
+    }
+
+    /**
+     * Создаёт заметку, ссылающуюся на запись с метаданными в буфере:
+     * поля метаданных и разделитель занимают {@code metaLength} байтов
+     * непосредственно перед текстом.
+     *
+     * @param source     буфер с байтами записей (не отображение файла)
+     * @param offset     смещение начала текста
+     * @param length     длина текста в байтах
+     * @param metaLength длина метаданных с разделителем; 0 — их нет
+     * @return заметка
+     */
+    public static NoteText mapped(ByteBuffer source, int offset, int length, int metaLength) {
+        return new NoteText(source, null, offset, length, metaLength, false, null, null);
+    }
+
+    /**
+     * Создаёт заметку, ссылающуюся на текст записи версии 1 в буфере,
+     * где экранирован только перевод строки (см. {@link CsvFormat#PLAIN}).
+     *
+     * @param source буфер с байтами записей (не отображение файла)
+     * @param offset смещение начала текста
+     * @param length длина текста в байтах
+     * @return заметка
+     */
+    public static NoteText legacy(ByteBuffer source, int offset, int length) {
+        return new NoteText(source, null, offset, length, 0, true, null, null);
+    }
+
+    /**
+     * Создаёт заметку, которая читает запись из файла при каждом обращении.
+     * Канал не закрывается, пока на него ссылаются заметки: его закрывает
+     * сборщик мусора вместе с последней из них. Замене файла
+     * ({@link AtomicFileWriter}) открытый канал не мешает, и заметка
+     * по-прежнему читает файл, из которого получена.
+     *
+     * @param file       канал CSV-файла
+     * @param offset     смещение начала текста в файле
+     * @param length     длина текста в байтах
+     * @param metaLength длина метаданных с разделителем перед текстом; 0 — их нет
+     * @param legacy     текст записан по правилу версии 1 (см. {@link CsvFormat#PLAIN})
+     * @return заметка
+     */
+    public static NoteText located(FileChannel file, long offset, int length, int metaLength, boolean legacy) {
+        return new NoteText(null, file, offset, length, metaLength, legacy, null, null);
+    }
+
+    /**
+     * Возвращает текст заметки, при необходимости декодируя его.
+     * Заметка, читающая текст из файла, его не запоминает.
+     *
+     * @return текст заметки без экранирования
+     * @throws UncheckedIOException если текст не удалось прочитать из файла
+     */
+    public String text() {
+        if (file != null) {
+            return peek();
+        }
+        String result = text;
+        if (result == null) {
+            synchronized (this) {
+                result = text;
+                if (result == null) {
+                    result = decode(source, (int) offset);
+                    if (meta == null && metaLength > 0) {
+                        meta = decodeMeta(source, (int) offset);
+                    }
+                    text = result;
+                    source = null; // больше не удерживаем байты записи
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает текст заметки, не сохраняя декодированную строку.
+     * Используется при потоковом обходе хранилища, чтобы тексты
+     * не накапливались в памяти.
+     *
+     * @return текст заметки без экранирования
+     * @throws UncheckedIOException если текст не удалось прочитать из файла
+     */
+    public String peek() {
+        if (file != null) {
+            return decode(read(offset, length), 0);
+        }
+        String result = text;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            return text != null ? text : decode(source, (int) offset);
+        }
+    }
+
+    /**
+     * Возвращает метаданные заметки.
+     *
+     * @return метаданные; {@link NoteMeta#EMPTY}, если их нет
+     * @throws UncheckedIOException если метаданные не удалось прочитать из файла
+     */
+    public NoteMeta meta() {
+        if (file != null) {
+            return metaLength > 0 ? decodeMeta(read(offset - metaLength, metaLength), metaLength) : NoteMeta.EMPTY;
+        }
+        synchronized (this) {
+            if (meta != null) {
+                return meta;
+            }
+            return source != null && metaLength > 0 ? decodeMeta(source, (int) offset) : NoteMeta.EMPTY;
+        }
+    }
+
+    /**
+     * Возвращает заметку с уже декодированными текстом и метаданными:
+     * для заметки из файла запись читается одним позиционным чтением.
+     * Используется, когда нужны и текст, и метаданные (перезапись файла).
+     *
+     * @return эта заметка или её копия в памяти
+     * @throws UncheckedIOException если запись не удалось прочитать из файла
+     */
+    public NoteText load() {
+        if (file == null) {
+            return this;
+        }
+        ByteBuffer record = read(offset - metaLength, metaLength + length);
+        return of(decode(record, metaLength), metaLength > 0 ? decodeMeta(record, metaLength) : NoteMeta.EMPTY);
+    }
+
+    /**
+     * Разбирает метаданные из участка буфера перед текстом.
+     *
+     * @param buffer     байты записи
+     * @param textOffset смещение текста в буфере
+     * @return метаданные
+     */
+    private NoteMeta decodeMeta(ByteBuffer buffer, int textOffset) {
+        return NoteMeta.parse(buffer, textOffset - metaLength, textOffset - 1);
+    }
+
+    /**
+     * Декодирует текст из участка буфера.
+     *
+     * @param buffer     байты записи
+     * @param textOffset смещение текста в буфере
+     * @return текст заметки
+     */
+    private String decode(ByteBuffer buffer, int textOffset) {
+        return legacy ? CsvCodec.decodeLegacy(buffer, textOffset, length)
+                : CsvCodec.decode(buffer, textOffset, length);
+    }
+
+    /**
+     * Читает участок файла позиционным чтением; канал при этом
+     * не блокируется, и потоки читают его параллельно.
+     *
+     * @param position смещение в файле
+     * @param count    количество байтов
+     * @return буфер с прочитанными байтами
+     * @throws UncheckedIOException при ошибке чтения или если файл укоротился
+     */
+    private ByteBuffer read(long position, int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        try {
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Файл заметок укоротился после чтения");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Копия файла тела {@link ColumnarStorage} вне кучи Java.
+ * <p>
+ * Тексты заметок хранятся в UTF-8 в прямых буферах ({@link ByteBuffer#allocateDirect})
+ * по {@link #CHUNK_SIZE} байт, и смещение текста в копии совпадает со
+ * смещением в файле тела. Поэтому на куче остаются только примитивные
+ * массивы индекса хранилища и несколько объектов буферов, а сборщику мусора
+ * не приходится обходить тексты, сколько бы их ни было. Строка создаётся
+ * только при чтении конкретного текста.
+ * </p>
+ * <p>
+ * Копия только растёт, как и сам файл тела; место устаревших текстов
+ * освобождается, когда хранилище переходит к файлу тела следующего
+ * поколения и загружает для него новую копию. Память прямых буферов
+ * возвращается системе, когда сборщик мусора освобождает прежнюю копию.
+ * </p>
+ */
+public final class OffHeapBlob {
+
+    /**
+     * Двоичный логарифм размера блока.
+     */
+    private static final int CHUNK_BITS = 20;
+
+    /**
+     * Размер одного прямого буфера.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Блоки копии; заполнены все, кроме последнего.
+     */
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * Количество занятых байтов.
+     */
+    private long size;
+
+    /**
+     * Создаёт пустую копию.
+     */
+    public OffHeapBlob() {
+    }
+
+    /**
+     * Загружает файл тела в прямые буферы, читая его сразу в них,
+     * без промежуточных массивов на куче.
+     *
+     * @param file файл тела; если его нет, копия пустая
+     * @return копия файла
+     * @throws IOException при ошибке чтения
+     */
+    public static OffHeapBlob load(File file) throws IOException {
+        OffHeapBlob blob = new OffHeapBlob();
+        if (!file.exists()) {
+            return blob;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            while (blob.size < length) {
+                ByteBuffer chunk = blob.writableChunk();
+                int count = (int) Math.min(chunk.remaining(), length - blob.size);
+                ByteBuffer target = chunk.duplicate();
+                target.limit(target.position() + count);
+                while (target.hasRemaining()) {
+                    if (channel.read(target, blob.size + (target.position() - chunk.position())) < 0) {
+                        throw new EOFException("Файл " + file + " обрезан");
+                    }
+                }
+                chunk.position(chunk.position() + count);
+                blob.size += count;
+            }
+        }
+        return blob;
+    }
+
+    /**
+     * Дописывает байты в конец копии.
+     *
+     * @param bytes текст в UTF-8
+     * @return смещение записанного текста
+     */
+    public long append(byte[] bytes) {
+        long offset = size;
+        int written = 0;
+        while (written < bytes.length) {
+            ByteBuffer chunk = writableChunk();
+            int count = Math.min(chunk.remaining(), bytes.length - written);
+            chunk.put(bytes, written, count);
+            written += count;
+            size += count;
+        }
+        return offset;
+    }
+
+    /**
+     * Декодирует текст из UTF-8.
+     *
+     * @param offset смещение текста
+     * @param length длина текста в байтах
+     * @return текст
+     */
+    public String decode(long offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Текст [" + offset + ", " + (offset + length)
+                    + ") за пределами копии размером " + size);
+        }
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            long position = offset + read;
+            ByteBuffer chunk = chunks.get((int) (position >>> CHUNK_BITS));
+            int index = (int) (position & (CHUNK_SIZE - 1));
+            int count = Math.min(CHUNK_SIZE - index, length - read);
+            chunk.get(index, bytes, read, count);
+            read += count;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает количество занятых байтов (совпадает с размером файла тела).
+     *
+     * @return размер копии
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Возвращает объём выделенной памяти вне кучи.
+     *
+     * @return объём прямых буферов в байтах
+     */
+    public long capacity() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+
+    /**
+     * Возвращает блок, в котором есть свободное место, выделяя новый при необходимости.
+     *
+     * @return последний блок с позицией на первом свободном байте
+     */
+    private ByteBuffer writableChunk() {
+        ByteBuffer last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (last == null || !last.hasRemaining()) {
+            last = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunks.add(last);
+        }
+        return last;
+    }
+}
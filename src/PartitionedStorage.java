@@ -0,0 +1,528 @@
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Хранилище заметок, разбитое по годам, — для календарей за много лет.
+ * <p>
+ * Хранилище состоит из манифеста {@code <имя>.parts} со списком лет, за
+ * которые есть записи, и отдельного CSV-файла на каждый год
+ * ({@code <имя>.parts.<год>.csv}). Файл года открывается как
+ * {@link CsvStorage} (со своим журналом и межпроцессной блокировкой) только
+ * при первом обращении к датам этого года, поэтому время открытия хранилища
+ * зависит от объёма текущего года, а не всей истории.
+ * </p>
+ * <p>
+ * Несколько последних использованных лет удерживаются в памяти всегда,
+ * остальные открытые годы — через {@link SoftReference}: при нехватке памяти
+ * сборщик мусора выгружает их, а при следующем обращении год загружается
+ * с диска снова. Записи годов пишутся на диск сразу, поэтому выгрузка
+ * не теряет изменений.
+ * </p>
+ * <p>
+ * Изменения, сделанные другими процессами, подхватываются при следующем
+ * обращении к году, но обработчики {@link ChangeListener} не вызываются.
+ * </p>
+ *
+ * Формат манифеста:
+ * <pre>
+ * parts;1
+ * &lt;год&gt;
+ * ...
+ * </pre>
+ */
+public class PartitionedStorage implements NoteStorage {
+
+    /**
+     * Расширение файла манифеста.
+     */
+    public static final String EXTENSION = ".parts";
+
+    /**
+     * Заголовок манифеста с версией формата.
+     */
+    private static final String HEADER = "parts;1";
+
+    /**
+     * Сколько последних использованных лет не выгружается из памяти.
+     */
+    private static final int HOT_PARTITIONS = 3;
+
+    /**
+     * Имя файла манифеста.
+     */
+    private final String fileName;
+
+    /**
+     * Блокировка манифеста, общая с другими процессами.
+     */
+    private final InterProcessLock manifestLock;
+
+    /**
+     * Годы, за которые есть файлы, по возрастанию.
+     */
+    private final NavigableSet<Integer> years = new ConcurrentSkipListSet<>();
+
+    /**
+     * Время изменения и размер манифеста при последнем чтении.
+     */
+    private long manifestModified;
+    private long manifestLength;
+
+    /**
+     * Открытые годы. Значение очищается сборщиком мусора,
+     * если год не используется и памяти не хватает.
+     */
+    private final Map<Integer, SoftReference<CsvStorage>> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Последние использованные годы в порядке обращения — жёсткие ссылки,
+     * не позволяющие выгрузить их.
+     */
+    private final Map<Integer, CsvStorage> hot = new LinkedHashMap<Integer, CsvStorage>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CsvStorage> eldest) {
+            return size() > HOT_PARTITIONS;
+        }
+    };
+
+    /**
+     * Конструктор. Читает манифест; если его нет, создаёт пустое хранилище.
+     * Файлы годов не открываются.
+     *
+     * @param fileName имя файла манифеста
+     */
+    public PartitionedStorage(String fileName) {
+        this.fileName = fileName;
+        this.manifestLock = InterProcessLock.forFile(fileName);
+        manifestLock.lock();
+        try {
+            if (!new File(fileName).exists()) {
+                writeManifest(new File(fileName), Collections.emptySet());
+            }
+            readManifest();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            manifestLock.unlock();
+        }
+    }
+
+    /**
+     * Создаёт хранилище по годам из потока записей
+     * (используется для экспорта через меню "Сохранить как").
+     * Каждый год пишется отдельным файлом по мере чтения потока, поэтому
+     * записи не собираются в память. Записи с некорректными ключами и
+     * записи, год которых меньше уже записанного, пропускаются.
+     * Существующее хранилище с тем же именем заменяется.
+     *
+     * @param fileName имя файла манифеста
+     * @param entries  записи в порядке дат
+     * @throws IOException при ошибке записи
+     */
+    public static void write(String fileName, Stream<NoteEntry> entries) throws IOException {
+        InterProcessLock lock = InterProcessLock.forFile(fileName);
+        lock.lock();
+        try {
+            Set<Integer> oldYears = readYears(new File(fileName));
+            Set<Integer> newYears = new TreeSet<>();
+            YearSplitter splitter = new YearSplitter(entries.iterator());
+            while (splitter.nextYear()) {
+                int year = splitter.year;
+                File partition = partitionFile(fileName, year);
+                CsvStorage.write(partition, StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(splitter, Spliterator.ORDERED), false));
+                // журнал относится к прежнему содержимому года
+                Files.deleteIfExists(new File(partition + ".journal").toPath());
+                newYears.add(year);
+            }
+            writeManifest(new File(fileName), newYears);
+            for (int year : oldYears) {
+                if (!newYears.contains(year)) {
+                    File partition = partitionFile(fileName, year);
+                    Files.deleteIfExists(new File(partition + ".journal").toPath());
+                    Files.deleteIfExists(partition.toPath());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает файл записей указанного года.
+     *
+     * @param fileName имя файла манифеста
+     * @param year     год
+     * @return CSV-файл года
+     */
+    private static File partitionFile(String fileName, int year) {
+        return new File(fileName + "." + year + ".csv");
+    }
+
+    /**
+     * Читает список лет из манифеста.
+     *
+     * @param manifest файл манифеста
+     * @return годы; пустое множество, если манифеста нет
+     * @throws IOException при ошибке чтения или неизвестном формате
+     */
+    private static Set<Integer> readYears(File manifest) throws IOException {
+        Set<Integer> result = new TreeSet<>();
+        if (!manifest.exists()) {
+            return result;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("Неизвестный формат файла " + manifest);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    result.add(Integer.parseInt(line.trim()));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Атомарно записывает манифест.
+     *
+     * @param manifest файл манифеста
+     * @param years    годы, за которые есть файлы
+     * @throws IOException при ошибке записи
+     */
+    private static void writeManifest(File manifest, Set<Integer> years) throws IOException {
+        AtomicFileWriter.write(manifest, writer -> {
+            writer.println(HEADER);
+            for (int year : years) {
+                writer.println(year);
+            }
+        });
+    }
+
+    /**
+     * Перечитывает манифест, если его изменил другой процесс.
+     * Вызывается под {@link #manifestLock}.
+     *
+     * @throws IOException при ошибке чтения
+     */
+    private void readManifest() throws IOException {
+        File manifest = new File(fileName);
+        long modified = manifest.lastModified();
+        long length = manifest.length();
+        if (modified == manifestModified && length == manifestLength) {
+            return;
+        }
+        Set<Integer> current = readYears(manifest);
+        years.retainAll(current);
+        years.addAll(current);
+        manifestModified = modified;
+        manifestLength = length;
+    }
+
+    /**
+     * Возвращает годы, за которые есть записи, перечитав манифест при изменении.
+     *
+     * @return годы по возрастанию
+     */
+    private NavigableSet<Integer> years() {
+        manifestLock.lock();
+        try {
+            readManifest();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            manifestLock.unlock();
+        }
+        return years;
+    }
+
+    /**
+     * Возвращает хранилище года, открывая его при первом обращении.
+     *
+     * @param year   год
+     * @param create создать год, если его ещё нет
+     * @return хранилище года или {@code null}, если года нет и {@code create} ложно
+     */
+    private CsvStorage partition(int year, boolean create) {
+        if (!years().contains(year)) {
+            if (!create) {
+                return null;
+            }
+            addYear(year);
+        }
+        SoftReference<CsvStorage> ref = partitions.compute(year, (y, old) ->
+                old != null && old.get() != null ? old
+                        : new SoftReference<>(new CsvStorage(partitionFile(fileName, y).getPath())));
+        CsvStorage partition = ref.get();
+        if (partition == null) {
+            // выгружен между compute и get — открываем заново
+            partition = new CsvStorage(partitionFile(fileName, year).getPath());
+            partitions.put(year, new SoftReference<>(partition));
+        }
+        synchronized (hot) {
+            hot.put(year, partition);
+        }
+        return partition;
+    }
+
+    /**
+     * Добавляет год в манифест.
+     *
+     * @param year год
+     */
+    private void addYear(int year) {
+        manifestLock.lock();
+        try {
+            readManifest();
+            if (years.contains(year)) {
+                return;
+            }
+            Set<Integer> updated = new TreeSet<>(years);
+            updated.add(year);
+            writeManifest(new File(fileName), updated);
+            years.add(year);
+            File manifest = new File(fileName);
+            manifestModified = manifest.lastModified();
+            manifestLength = manifest.length();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            manifestLock.unlock();
+        }
+    }
+
+    @Override
+    public void save(LocalDate date, String text) {
+        // пустой текст удаляет запись — для несуществующего года делать нечего
+        CsvStorage partition = partition(date.getYear(), text != null && !text.isEmpty());
+        if (partition != null) {
+            partition.save(date, text);
+        }
+    }
+
+    /**
+     * Сохраняет записи нескольких дат: изменения каждого года применяются
+     * одной транзакцией его файла, но годы фиксируются по очереди.
+     *
+     * @param changes записи "дата → текст"
+     * @throws IOException если изменения какого-либо года не удалось записать
+     */
+    @Override
+    public void saveAll(Map<LocalDate, String> changes) throws IOException {
+        Map<Integer, Map<LocalDate, String>> byYear = new TreeMap<>();
+        for (Map.Entry<LocalDate, String> change : changes.entrySet()) {
+            byYear.computeIfAbsent(change.getKey().getYear(), y -> new LinkedHashMap<>())
+                    .put(change.getKey(), change.getValue());
+        }
+        for (Map.Entry<Integer, Map<LocalDate, String>> year : byYear.entrySet()) {
+            boolean adds = year.getValue().values().stream().anyMatch(text -> text != null && !text.isEmpty());
+            CsvStorage partition = partition(year.getKey(), adds);
+            if (partition != null) {
+                partition.saveAll(year.getValue());
+            }
+        }
+    }
+
+    /**
+     * Удаляет записи за период; каждый год очищается одной транзакцией.
+     *
+     * @param from начало периода (включительно)
+     * @param to   конец периода (включительно)
+     * @throws IOException если записи какого-либо года не удалось удалить
+     */
+    @Override
+    public void deleteRange(LocalDate from, LocalDate to) throws IOException {
+        if (from.isAfter(to)) {
+            return;
+        }
+        for (int year : years().subSet(from.getYear(), true, to.getYear(), true)) {
+            CsvStorage partition = partition(year, false);
+            if (partition != null) {
+                LocalDate first = LocalDate.of(year, 1, 1);
+                LocalDate last = LocalDate.of(year, 12, 31);
+                partition.deleteRange(from.isAfter(first) ? from : first, to.isBefore(last) ? to : last);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> loadAll() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int year : years()) {
+            CsvStorage partition = partition(year, false);
+            if (partition != null) {
+                result.putAll(partition.loadAll());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getByDate(LocalDate date) {
+        CsvStorage partition = partition(date.getYear(), false);
+        return partition == null ? "" : partition.getByDate(date);
+    }
+
+    /**
+     * Возвращает множество всех дат с записями.
+     * Открывает все годы хранилища.
+     *
+     * @return множество строковых дат
+     */
+    @Override
+    public Set<String> getAllDates() {
+        Set<String> result = new HashSet<>();
+        for (int year : years()) {
+            CsvStorage partition = partition(year, false);
+            if (partition != null) {
+                result.addAll(partition.getAllDates());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает ленивый поток записей за период. Годы открываются
+     * по мере того, как поток до них доходит, поэтому, например, поиск
+     * ближайшей даты читает только годы до первой найденной записи.
+     *
+     * @param from начало периода (включительно); {@code null} — с первой записи
+     * @param to   конец периода (включительно); {@code null} — до последней записи
+     * @return поток записей
+     */
+    @Override
+    public Stream<NoteEntry> stream(LocalDate from, LocalDate to) {
+        NavigableSet<Integer> range = years();
+        Integer fromYear = from == null ? null : from.getYear();
+        Integer toYear = to == null ? null : to.getYear();
+        if (fromYear != null && toYear != null && fromYear > toYear) {
+            return Stream.empty();
+        }
+        if (fromYear != null) {
+            range = range.tailSet(fromYear, true);
+        }
+        if (toYear != null) {
+            range = range.headSet(toYear, true);
+        }
+        return range.stream().flatMap(year -> {
+            CsvStorage partition = partition(year, false);
+            if (partition == null) {
+                return Stream.empty();
+            }
+            // границы периода действуют только внутри крайних лет
+            return partition.stream(year.equals(fromYear) ? from : null, year.equals(toYear) ? to : null);
+        });
+    }
+
+    /**
+     * Записывает на диск изменения всех открытых лет. Ошибка одного года
+     * не мешает записи остальных.
+     *
+     * @throws IOException если изменения хотя бы одного года не удалось записать
+     */
+    @Override
+    public void flush() throws IOException {
+        IOException failure = null;
+        for (SoftReference<CsvStorage> ref : partitions.values()) {
+            CsvStorage partition = ref.get();
+            if (partition == null) {
+                continue;
+            }
+            try {
+                partition.flush();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Делит упорядоченный поток записей на годы: итератор выдаёт записи
+     * текущего года, {@link #nextYear()} переходит к следующему.
+     */
+    private static final class YearSplitter implements Iterator<NoteEntry> {
+        private final Iterator<NoteEntry> source;
+        private NoteEntry pending;
+        private int pendingYear;
+        int year = Integer.MIN_VALUE;
+
+        YearSplitter(Iterator<NoteEntry> source) {
+            this.source = source;
+        }
+
+        /**
+         * Переходит к году следующей записи, пропуская оставшиеся
+         * записи текущего года.
+         *
+         * @return {@code false}, если записей больше нет
+         */
+        boolean nextYear() {
+            while (hasNext()) {
+                next();
+            }
+            if (!advance(Integer.MIN_VALUE)) {
+                return false;
+            }
+            year = pendingYear;
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null && pendingYear == year;
+        }
+
+        @Override
+        public NoteEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            NoteEntry entry = pending;
+            pending = null;
+            advance(year);
+            return entry;
+        }
+
+        /**
+         * Читает следующую корректную запись не раньше указанного года.
+         *
+         * @param minYear наименьший допустимый год
+         * @return {@code true}, если запись прочитана
+         */
+        private boolean advance(int minYear) {
+            if (pending != null) {
+                return true;
+            }
+            while (source.hasNext()) {
+                NoteEntry entry = source.next();
+                int entryYear = entry.getDay().getYear();
+                if (entryYear < Math.max(minYear, year)) {
+                    continue;
+                }
+                pending = entry;
+                pendingYear = entryYear;
+                return true;
+            }
+            return false;
+        }
+    }
+}
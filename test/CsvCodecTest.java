@@ -0,0 +1,123 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Экранирование текстов и совместимость с файлами версии 1
+ * ({@link CsvFormat#PLAIN}), где экранировался только перевод строки.
+ */
+public class CsvCodecTest {
+
+    /**
+     * Запись версии 1: обратные косые черты — часть текста, {@code \n} — перевод строки.
+     */
+    private static final String LEGACY_RECORD = "2024-01-02;see C:\\reports\\q1 and \\\\server\\nnext";
+
+    /**
+     * Текст этой записи.
+     */
+    private static final String LEGACY_TEXT = "see C:\\reports\\q1 and \\\\server\nnext";
+
+    /**
+     * Запись версии 1, которая одинаково выглядит в текущей версии.
+     */
+    private static final String PLAIN_RECORD = "2024-01-03;line 1\\nline 2";
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("csv-codec");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void escapedTextRoundTrips() {
+        String text = "a\\b\nc\rd;e\\n";
+        StringBuilder escaped = new StringBuilder();
+        CsvCodec.appendEscaped(escaped, text);
+        byte[] bytes = escaped.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(text, CsvCodec.decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void legacyDecodingKeepsBackslashes() {
+        byte[] bytes = LEGACY_RECORD.getBytes(StandardCharsets.UTF_8);
+        int offset = LEGACY_RECORD.indexOf(';') + 1;
+        assertEquals(LEGACY_TEXT, CsvCodec.decodeLegacy(ByteBuffer.wrap(bytes), offset, bytes.length - offset));
+    }
+
+    @Test
+    public void legacyRecordIsWrittenAsBefore() {
+        StringWriter out = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(out)) {
+            CsvFormat.PLAIN.writeRecord(writer, "2024-01-02", LEGACY_TEXT);
+        }
+        assertEquals(LEGACY_RECORD, out.toString().trim());
+    }
+
+    @Test
+    public void legacyFileIsReadUnchanged() throws IOException {
+        File file = legacyFile();
+        assertEquals(LEGACY_TEXT, new CsvStorage(file.getPath()).loadAll().get("2024-01-02"));
+        try (Stream<NoteEntry> entries = CsvStorage.read(file)) {
+            assertEquals(LEGACY_TEXT, entries.findFirst().orElseThrow().getText());
+        }
+    }
+
+    @Test
+    public void legacyFileSurvivesMigration() throws IOException {
+        File file = legacyFile();
+        assertTrue(CsvMigrator.migrate(file));
+        assertEquals(CsvFormat.CURRENT, CsvFormat.of(file));
+        assertTrue(CsvVerifier.verify(file).isClean());
+        assertEquals(LEGACY_TEXT, new CsvStorage(file.getPath()).loadAll().get("2024-01-02"));
+        assertEquals("line 1\nline 2", new CsvStorage(file.getPath()).loadAll().get("2024-01-03"));
+    }
+
+    @Test
+    public void legacyFileSurvivesCompaction() throws IOException {
+        File file = legacyFile();
+        CsvStorage storage = new CsvStorage(file.getPath());
+        storage.save(LocalDate.of(2024, 1, 4), "x");
+        storage.compact();
+        assertEquals(CsvFormat.CURRENT, CsvFormat.of(file));
+        assertEquals(LEGACY_TEXT, new CsvStorage(file.getPath()).loadAll().get("2024-01-02"));
+    }
+
+    /**
+     * Создаёт файл версии 1 с записями {@link #LEGACY_RECORD} и {@link #PLAIN_RECORD}.
+     *
+     * @return файл
+     * @throws IOException при ошибке записи
+     */
+    private File legacyFile() throws IOException {
+        File file = folder.resolve("data.csv").toFile();
+        Files.writeString(file.toPath(),
+                CsvFormat.PLAIN.getHeader() + "\n" + LEGACY_RECORD + "\n" + PLAIN_RECORD + "\n");
+        return file;
+    }
+}
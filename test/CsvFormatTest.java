@@ -0,0 +1,140 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Определение версии формата по заголовку и защита файлов
+ * неизвестной версии от перезаписи.
+ */
+public class CsvFormatTest {
+
+    /**
+     * Файл версии, которой нет в этой программе.
+     */
+    private static final String FUTURE_FILE =
+            "#notes;version=4;date;created;modified;priority;category;tags;text;crc32c\n"
+                    + "2024-01-02;;;0;;;Текст;00000000\n";
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("csv-format");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void knownHeadersAreRecognized() throws IOException {
+        for (CsvFormat format : CsvFormat.values()) {
+            File file = file(format.getHeader() + "\n");
+            assertEquals(format, CsvFormat.of(file));
+        }
+        assertEquals(CsvFormat.PLAIN, CsvFormat.of(file("2024-01-02;Текст\n")));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionIsRejected() throws IOException {
+        CsvFormat.of(file(FUTURE_FILE));
+    }
+
+    @Test
+    public void unknownVersionIsNotMigrated() throws IOException {
+        File file = file(FUTURE_FILE);
+        try {
+            CsvMigrator.migrate(file);
+            fail("файл неизвестной версии переписан");
+        } catch (IOException expected) {
+            assertUnchanged(file);
+        }
+    }
+
+    @Test
+    public void unknownVersionIsNotRepaired() throws IOException {
+        File file = file(FUTURE_FILE);
+        try {
+            CsvVerifier.repair(file);
+            fail("файл неизвестной версии переписан");
+        } catch (IOException expected) {
+            assertUnchanged(file);
+        }
+    }
+
+    @Test
+    public void unknownVersionRefusesWrites() throws IOException {
+        File file = file(FUTURE_FILE);
+        CsvStorage storage = new CsvStorage(file.getPath());
+        try {
+            storage.save(LocalDate.of(2024, 1, 3), "Новая заметка");
+            fail("изменение файла неизвестной версии принято");
+        } catch (UncheckedIOException expected) {
+            assertFalse(new File(file.getPath() + ".journal").exists());
+        }
+        try {
+            storage.getByDate(LocalDate.of(2024, 1, 2));
+            fail("файл неизвестной версии прочитан как пустой");
+        } catch (UncheckedIOException expected) {
+            // ошибка доходит до интерфейса
+        }
+        storage.compact();
+        assertUnchanged(file);
+    }
+
+    @Test
+    public void unknownVersionIsNotMerged() throws IOException {
+        File file = file(FUTURE_FILE);
+        File other = folder.resolve("other.csv").toFile();
+        Files.writeString(other.toPath(), "date;text\n2024-01-03;Импорт\n");
+        try {
+            new CsvStorage(file.getPath()).merge(other, NoteMerger.Policy.KEEP_MINE, changes -> { });
+            fail("файл неизвестной версии переписан");
+        } catch (IOException expected) {
+            assertUnchanged(file);
+        }
+    }
+
+    /**
+     * Создаёт файл {@code data.csv} с указанным содержимым.
+     *
+     * @param content содержимое
+     * @return файл
+     * @throws IOException при ошибке записи
+     */
+    private File file(String content) throws IOException {
+        File file = folder.resolve("data.csv").toFile();
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Проверяет, что файл неизвестной версии не изменился.
+     *
+     * @param file файл
+     * @throws IOException при ошибке чтения
+     */
+    private static void assertUnchanged(File file) throws IOException {
+        assertArrayEquals(FUTURE_FILE.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,208 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Журнал изменений {@link CsvStorage}: запись, сбои и чтение после сбоя.
+ */
+public class CsvJournalTest {
+
+    private static final LocalDate FIRST = LocalDate.of(2024, 5, 1);
+    private static final LocalDate SECOND = LocalDate.of(2024, 5, 2);
+    private static final LocalDate THIRD = LocalDate.of(2024, 5, 3);
+
+    private Path folder;
+    private String fileName;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("csv-journal");
+        fileName = folder.resolve("data.csv").toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void failedSaveIsReportedAndWrittenLater() throws IOException {
+        File journal = blockJournal();
+        CsvStorage storage = new CsvStorage(fileName);
+        try {
+            storage.save(FIRST, "Первая");
+            fail("ошибка записи журнала не передана вызывающему");
+        } catch (UncheckedIOException expected) {
+            assertEquals("Первая", storage.getByDate(FIRST)); // изменение осталось в памяти
+        }
+
+        assertTrue(journal.delete());
+        storage.flush();
+        assertEquals("Первая", new CsvStorage(fileName).getByDate(FIRST));
+    }
+
+    @Test
+    public void failedDelayedWriteIsReportedByNextSave() throws Exception {
+        File journal = blockJournal();
+        CsvStorage storage = new CsvStorage(fileName, 10, 10);
+        storage.save(FIRST, "Первая");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            Thread.sleep(20);
+            try {
+                storage.save(SECOND, "Вторая");
+            } catch (UncheckedIOException expected) {
+                break;
+            }
+            assertTrue("ошибка отложенной записи не передана", System.currentTimeMillis() < deadline);
+        }
+
+        assertTrue(journal.delete());
+        storage.flush();
+        CsvStorage reopened = new CsvStorage(fileName);
+        assertEquals("Первая", reopened.getByDate(FIRST));
+        assertEquals("Вторая", reopened.getByDate(SECOND));
+    }
+
+    /**
+     * Недописанная последняя строка журнала (сбой во время записи)
+     * пропускается, пока её не допишут.
+     */
+    @Test
+    public void tornTailIsReadOnceCompleted() throws IOException {
+        CsvStorage storage = new CsvStorage(fileName);
+        storage.save(FIRST, "Первая");
+        appendJournal("*;2024-05-02;;;0;;Вто");
+
+        CsvStorage reader = new CsvStorage(fileName);
+        assertEquals("Первая", reader.getByDate(FIRST));
+        assertEquals("", reader.getByDate(SECOND));
+
+        appendJournal("рая\n");
+        assertEquals("Вторая", reader.getByDate(SECOND));
+        assertEquals("Вторая", new CsvStorage(fileName).getByDate(SECOND));
+    }
+
+    /**
+     * Транзакция без строки завершения не применяется, а следующая запись
+     * отменяет её строкой {@code x;}, чтобы чужое завершение не применило её позже.
+     */
+    @Test
+    public void unfinishedTransactionIsAborted() throws IOException {
+        CsvStorage storage = new CsvStorage(fileName);
+        storage.save(FIRST, "Первая");
+        appendJournal("b;2\n*;2024-05-01;;;0;;Не та\n*;2024-05-02;;;0;;Не та\n");
+
+        CsvStorage writer = new CsvStorage(fileName);
+        assertEquals("Первая", writer.getByDate(FIRST));
+        assertEquals("", writer.getByDate(SECOND));
+
+        writer.save(THIRD, "Третья");
+        appendJournal("c;2\n");
+        assertTrue(Files.readString(journal().toPath()).contains("\nx;\n"));
+        CsvStorage reopened = new CsvStorage(fileName);
+        assertEquals("Первая", reopened.getByDate(FIRST));
+        assertEquals("", reopened.getByDate(SECOND));
+        assertEquals("Третья", reopened.getByDate(THIRD));
+    }
+
+    /**
+     * Изменения транзакции применяются все вместе одной записью в журнал,
+     * в том числе удаление периода вместе с записями, добавленными в ней раньше.
+     */
+    @Test
+    public void batchIsCommittedAtOnce() throws IOException {
+        CsvStorage storage = new CsvStorage(fileName);
+        storage.save(FIRST, "Первая");
+        storage.save(SECOND, "Вторая");
+
+        storage.batch()
+                .put(THIRD, "Третья")
+                .deleteRange(FIRST, SECOND)
+                .put(SECOND, "Новая вторая")
+                .commit();
+
+        for (CsvStorage view : new CsvStorage[]{storage, new CsvStorage(fileName)}) {
+            assertEquals("", view.getByDate(FIRST));
+            assertEquals("Новая вторая", view.getByDate(SECOND));
+            assertEquals("Третья", view.getByDate(THIRD));
+        }
+        String journal = Files.readString(journal().toPath());
+        assertTrue(journal, journal.contains("b;3\n") && journal.endsWith("c;3\n"));
+    }
+
+    /**
+     * Если журнал не удалось записать, ни одно изменение транзакции
+     * не применяется, и фиксацию можно повторить.
+     */
+    @Test
+    public void failedBatchChangesNothing() throws IOException {
+        CsvStorage storage = new CsvStorage(fileName);
+        storage.save(FIRST, "Первая");
+        storage.compact();
+        File journal = blockJournal();
+
+        CsvStorage.Batch batch = storage.batch().put(FIRST, "Изменённая").put(SECOND, "Вторая");
+        try {
+            batch.commit();
+            fail("ошибка записи журнала не передана вызывающему");
+        } catch (IOException expected) {
+            assertEquals("Первая", storage.getByDate(FIRST));
+            assertEquals("", storage.getByDate(SECOND));
+        }
+
+        assertTrue(journal.delete());
+        batch.commit();
+        CsvStorage reopened = new CsvStorage(fileName);
+        assertEquals("Изменённая", reopened.getByDate(FIRST));
+        assertEquals("Вторая", reopened.getByDate(SECOND));
+    }
+
+    /**
+     * Дописывает строки в журнал в обход хранилища.
+     *
+     * @param lines строки в UTF-8
+     * @throws IOException при ошибке записи
+     */
+    private void appendJournal(String lines) throws IOException {
+        Files.write(journal().toPath(), lines.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return файл журнала
+     */
+    private File journal() {
+        return new File(fileName + ".journal");
+    }
+
+    /**
+     * Занимает имя журнала каталогом, чтобы запись в журнал не удавалась.
+     *
+     * @return каталог на месте журнала
+     */
+    private File blockJournal() {
+        File journal = new File(fileName + ".journal");
+        assertTrue(journal.mkdir());
+        return journal;
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Разреженный индекс смещений {@link CsvOffsetIndex} и чтение по нему
+ * без загрузки файла в память.
+ */
+public class CsvOffsetIndexTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+    private static final int RECORDS = 10 * CsvOffsetIndex.STRIDE;
+
+    private Path folder;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("csv-offset-index");
+        file = folder.resolve("data.csv").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void rangeIsReadThroughIndex() throws IOException {
+        Files.write(file.toPath(), content(false));
+        CsvStorage storage = new CsvStorage(file.getPath());
+        for (int i = 0; i < RECORDS; i += 7) {
+            assertEquals(text(i, false), storage.getByDate(START.plusDays(i)));
+        }
+        assertTrue(new File(file.getPath() + CsvOffsetIndex.EXTENSION).exists());
+    }
+
+    /**
+     * Файл, исправленный вручную без изменения размера и времени изменения,
+     * распознаётся по отпечатку содержимого, и индекс строится заново.
+     */
+    @Test
+    public void handEditedFileRebuildsIndex() throws IOException {
+        Files.write(file.toPath(), content(false));
+        CsvOffsetIndex stale = CsvOffsetIndex.open(file);
+        assertNotNull(stale);
+        long modified = file.lastModified();
+
+        byte[] edited = content(true);
+        assertEquals(file.length(), edited.length);
+        Files.write(file.toPath(), edited);
+        assertTrue(file.setLastModified(modified));
+        assertFalse(stale.isCurrent(file));
+
+        CsvStorage storage = new CsvStorage(file.getPath());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(text(i, true), storage.getByDate(START.plusDays(i)));
+        }
+        CsvOffsetIndex rebuilt = CsvOffsetIndex.open(file);
+        assertTrue(rebuilt.isCurrent(file));
+    }
+
+    /**
+     * Текст записи: длины текстов чередуются, а в исправленном файле
+     * чередование обратное, поэтому размер файла тот же, а смещения строк другие.
+     *
+     * @param i      номер записи
+     * @param edited текст исправленного файла
+     * @return текст
+     */
+    private static String text(int i, boolean edited) {
+        return (i % 2 == 0) != edited ? "запись " + i : "длинная запись " + i;
+    }
+
+    /**
+     * @param edited содержимое исправленного файла
+     * @return содержимое CSV-файла в формате {@link CsvFormat#CURRENT}
+     */
+    private static byte[] content(boolean edited) {
+        StringWriter out = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(out)) {
+            writer.println(CsvFormat.CURRENT.getHeader());
+            for (int i = 0; i < RECORDS; i++) {
+                CsvFormat.CURRENT.writeRecord(writer, START.plusDays(i).toString(), text(i, edited));
+            }
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Чтение {@link CsvStorage} из нескольких потоков одновременно с записью.
+ */
+public class CsvStorageConcurrencyTest {
+
+    private static final LocalDate FIRST = LocalDate.of(2024, 3, 1);
+    private static final LocalDate SECOND = LocalDate.of(2024, 3, 2);
+
+    private Path folder;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("csv-concurrency");
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    /**
+     * Пока индекс в памяти не загружен, чтение по дате не ждёт блокировку
+     * файла, которую держит другой процесс (здесь — другой поток).
+     */
+    @Test
+    public void coldReadDoesNotWaitForFileLock() throws Exception {
+        String fileName = folder.resolve("data.csv").toString();
+        CsvStorage writer = new CsvStorage(fileName);
+        writer.save(FIRST, "Первая");
+        writer.save(SECOND, "Вторая");
+        writer.compact(); // строит индекс смещений
+
+        CsvStorage reader = new CsvStorage(fileName);
+        InterProcessLock lock = InterProcessLock.forFile(fileName);
+        lock.lock();
+        try {
+            Future<String> read = executor.submit(() -> reader.getByDate(SECOND));
+            assertEquals("Вторая", read.get(10, TimeUnit.SECONDS));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Потоки читают даты, пока другой поток сохраняет пачки и сжимает журнал:
+     * чтение не падает, и каждый поток видит только возрастающие версии.
+     */
+    @Test
+    public void parallelReadsFollowConcurrentWriter() throws Exception {
+        String fileName = folder.resolve("data.csv").toString();
+        // кэш текстов: после сжатия индекс отпускается, и чтение идёт мимо него
+        CsvStorage storage = new CsvStorage(fileName, 0, 0, 1024);
+        int versions = 300;
+        AtomicBoolean done = new AtomicBoolean();
+
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            LocalDate day = i % 2 == 0 ? FIRST : SECOND;
+            readers.add(executor.submit(() -> {
+                int seen = 0;
+                int reads = 0;
+                while (!done.get() || reads == 0) {
+                    String text = storage.getByDate(day);
+                    int version = text.isEmpty() ? 0 : Integer.parseInt(text.substring(1));
+                    assertTrue("версия " + version + " после " + seen, version >= seen);
+                    seen = version;
+                    reads++;
+                }
+                return seen;
+            }));
+        }
+
+        Future<?> writer = executor.submit(() -> {
+            try {
+                for (int version = 1; version <= versions; version++) {
+                    Map<LocalDate, String> changes = new LinkedHashMap<>();
+                    changes.put(FIRST, "v" + version);
+                    changes.put(SECOND, "v" + version);
+                    storage.saveAll(changes);
+                    if (version % 50 == 0) {
+                        storage.compact();
+                    }
+                }
+            } finally {
+                done.set(true);
+            }
+            return null;
+        });
+
+        writer.get(60, TimeUnit.SECONDS);
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get(60, TimeUnit.SECONDS) <= versions);
+        }
+        assertEquals("v" + versions, storage.getByDate(FIRST));
+        assertEquals("v" + versions, new CsvStorage(fileName).getByDate(SECOND));
+    }
+
+    /**
+     * Потоки обходят обе даты, пока другой поток сохраняет их одной
+     * транзакцией: обход видит транзакцию целиком, а не её половину.
+     */
+    @Test
+    public void readersSeeWholeTransactions() throws Exception {
+        String fileName = folder.resolve("data.csv").toString();
+        CsvStorage storage = new CsvStorage(fileName);
+        storage.getByDate(FIRST); // загружает индекс в память
+        int versions = 2000;
+        AtomicBoolean done = new AtomicBoolean();
+
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(executor.submit(() -> {
+                int reads = 0;
+                while (!done.get() || reads == 0) {
+                    List<String> texts = storage.stream(FIRST, SECOND)
+                            .map(NoteEntry::getText)
+                            .collect(Collectors.toList());
+                    if (texts.size() == 2) {
+                        assertEquals(texts.get(0), texts.get(1));
+                    } else {
+                        assertTrue(texts.toString(), texts.isEmpty());
+                    }
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+
+        Future<?> writer = executor.submit(() -> {
+            try {
+                for (int version = 1; version <= versions; version++) {
+                    Map<LocalDate, String> changes = new LinkedHashMap<>();
+                    changes.put(FIRST, "v" + version);
+                    changes.put(SECOND, "v" + version);
+                    storage.saveAll(changes);
+                }
+            } finally {
+                done.set(true);
+            }
+            return null;
+        });
+
+        writer.get(60, TimeUnit.SECONDS);
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Проверка и восстановление CSV-файла {@link CsvVerifier}.
+ */
+public class CsvVerifierTest {
+
+    private Path folder;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("csv-verifier");
+        file = folder.resolve("data.csv").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void cleanFile() throws IOException {
+        List<String> lines = lines(6);
+        write(lines);
+        CsvVerifier.Report report = CsvVerifier.verify(file);
+        assertTrue(report.isClean());
+        assertEquals(6, report.getRecords());
+        assertEquals(CsvFormat.CURRENT, report.getFormat());
+    }
+
+    /**
+     * Подряд идущие повреждённые строки объединяются в один участок
+     * с байтовыми границами строк.
+     */
+    @Test
+    public void corruptLinesAreReportedAsRanges() throws IOException {
+        List<String> lines = lines(6);
+        lines.set(2, lines.get(2).replace("заметка", "зам_тка")); // неверная контрольная сумма
+        lines.set(3, "без разделителя");
+        lines.set(5, "2024-13-01" + lines.get(5).substring(10)); // некорректная дата
+        write(lines);
+
+        CsvVerifier.Report report = CsvVerifier.verify(file);
+        assertEquals(3, report.getRecords());
+        assertEquals(3, report.getCorruptLines());
+        assertEquals(2, report.getRanges().size());
+        CsvVerifier.Range first = report.getRanges().get(0);
+        assertEquals(offset(lines, 2), first.getStart());
+        assertEquals(offset(lines, 4), first.getEnd());
+        assertEquals(2, first.getLines());
+        CsvVerifier.Range second = report.getRanges().get(1);
+        assertEquals(offset(lines, 5), second.getStart());
+        assertEquals(offset(lines, 6), second.getEnd());
+        assertEquals(1, second.getLines());
+    }
+
+    /**
+     * Восстановление оставляет корректные записи, а повреждённые строки
+     * переносит в {@code .rejected}.
+     */
+    @Test
+    public void repairMovesCorruptLinesAside() throws IOException {
+        List<String> lines = lines(4);
+        String corrupt = "без разделителя";
+        lines.set(2, corrupt);
+        write(lines);
+
+        CsvVerifier.Report before = CsvVerifier.repair(file);
+        assertEquals(1, before.getCorruptLines());
+        CsvVerifier.Report after = CsvVerifier.verify(file);
+        assertTrue(after.isClean());
+        assertEquals(3, after.getRecords());
+        File rejected = new File(file.getPath() + CsvVerifier.REJECTED_EXTENSION);
+        assertEquals(corrupt + "\n", Files.readString(rejected.toPath()));
+        assertEquals("заметка 0", new CsvStorage(file.getPath()).loadAll().get("2024-01-01"));
+    }
+
+    /**
+     * @param count количество записей
+     * @return строки файла: заголовок (строка 0) и записи в формате {@link CsvFormat#CURRENT}
+     */
+    private static List<String> lines(int count) {
+        StringWriter out = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(out)) {
+            writer.println(CsvFormat.CURRENT.getHeader());
+            for (int i = 0; i < count; i++) {
+                CsvFormat.CURRENT.writeRecord(writer, "2024-01-0" + (i + 1), "заметка " + i);
+            }
+        }
+        return new ArrayList<>(List.of(out.toString().split("\n")));
+    }
+
+    /**
+     * @param lines строки файла
+     * @param line  номер строки
+     * @return смещение начала строки в байтах
+     */
+    private static long offset(List<String> lines, int line) {
+        long offset = 0;
+        for (int i = 0; i < line; i++) {
+            offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return offset;
+    }
+
+    /**
+     * Записывает строки в проверяемый файл.
+     *
+     * @param lines строки файла
+     * @throws IOException при ошибке записи
+     */
+    private void write(List<String> lines) throws IOException {
+        Files.writeString(file.toPath(), String.join("\n", lines) + "\n");
+    }
+}
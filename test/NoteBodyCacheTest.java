@@ -0,0 +1,101 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Кэш текстов {@link NoteBodyCache} и хранилище, держащее в памяти только
+ * положения записей.
+ */
+public class NoteBodyCacheTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("note-body-cache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    /**
+     * Вес кэша не превышает лимит: давно не использованные тексты вытесняются.
+     */
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        NoteText first = NoteText.of("первая");
+        NoteText second = NoteText.of("вторая");
+        NoteText third = NoteText.of("третья");
+        NoteBodyCache cache = new NoteBodyCache(250);
+        cache.get("1", first);
+        cache.get("2", second);
+        cache.get("1", first); // "2" становится самой давней
+        cache.get("3", third);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getWeight() <= cache.getCapacity());
+        cache.get("1", first);
+        assertEquals(2, cache.getHitCount());
+        cache.get("2", second);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    /**
+     * Текст прежней версии заметки не возвращается после её замены.
+     */
+    @Test
+    public void staleTextIsNotReturned() {
+        NoteBodyCache cache = new NoteBodyCache(1024);
+        cache.get("1", NoteText.of("старая"));
+        assertEquals("новая", cache.get("1", NoteText.of("новая")));
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Хранилище с маленьким кэшем читает тексты из файла при каждом промахе
+     * и видит сохранения, сделанные после загрузки индекса.
+     */
+    @Test
+    public void keyOnlyStorageReadsFromFile() throws IOException {
+        String fileName = folder.resolve("data.csv").toString();
+        CsvStorage writer = new CsvStorage(fileName);
+        for (int i = 0; i < 100; i++) {
+            writer.save(START.plusDays(i), "заметка " + i);
+        }
+        writer.compact();
+
+        CsvStorage storage = new CsvStorage(fileName, 0, 0, 1024);
+        storage.getAllDates(); // загружает индекс положений записей
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals("заметка " + i, storage.getByDate(START.plusDays(i)));
+            }
+        }
+        NoteBodyCache cache = storage.getBodyCache();
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getWeight() <= 1024);
+
+        storage.save(START, "изменена");
+        assertEquals("изменена", storage.getByDate(START));
+        assertEquals("заметка 1", storage.getByDate(START.plusDays(1)));
+    }
+}
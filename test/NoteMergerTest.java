@@ -0,0 +1,154 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Импорт заметок {@link NoteMerger}: правила слияния, записи не по порядку
+ * и передача пачек обработчику.
+ */
+public class NoteMergerTest {
+
+    /**
+     * Свои заметки.
+     */
+    private static final String MINE = "date;text\n"
+            + "2024-01-01;моя 1\n"
+            + "2024-01-03;моя 3\n"
+            + "2024-01-05;моя 5\n";
+
+    /**
+     * Импортируемые заметки: 2024-01-03 и 2024-01-02 идут не по порядку,
+     * 2024-01-03 повторяется, пустой текст ничего не удаляет.
+     */
+    private static final String THEIRS = "date;text\n"
+            + "2024-01-01;\n"
+            + "2024-01-03;их 3\n"
+            + "2024-01-04;их 4\n"
+            + "2024-01-02;их 2\n"
+            + "2024-01-03;их 3б\n"
+            + "2024-01-05;моя 5\n";
+
+    private Path folder;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("note-merger");
+        source = folder.resolve("theirs.csv").toFile();
+        Files.writeString(source.toPath(), THEIRS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void keepMine() throws IOException {
+        Map<String, String> expected = expected("моя 3");
+        assertEquals(expected, rewrite(NoteMerger.Policy.KEEP_MINE));
+        assertEquals(expected, saveAll(NoteMerger.Policy.KEEP_MINE));
+    }
+
+    @Test
+    public void keepTheirs() throws IOException {
+        Map<String, String> expected = expected("их 3б");
+        assertEquals(expected, rewrite(NoteMerger.Policy.KEEP_THEIRS));
+        assertEquals(expected, saveAll(NoteMerger.Policy.KEEP_THEIRS));
+    }
+
+    @Test
+    public void concatenate() throws IOException {
+        Map<String, String> expected = expected("моя 3\nих 3\nих 3б");
+        assertEquals(expected, rewrite(NoteMerger.Policy.CONCATENATE));
+        assertEquals(expected, saveAll(NoteMerger.Policy.CONCATENATE));
+    }
+
+    /**
+     * При переписывании CSV обработчик получает пачку только после замены
+     * файла, и каждая переданная дата уже сохранена с переданным текстом.
+     */
+    @Test
+    public void batchesArePassedAfterFileIsReplaced() throws IOException {
+        File file = folder.resolve("mine.csv").toFile();
+        Files.writeString(file.toPath(), MINE);
+        List<Map<LocalDate, String>> batches = new ArrayList<>();
+        new CsvStorage(file.getPath()).merge(source, NoteMerger.Policy.KEEP_THEIRS, batch -> {
+            batches.add(batch);
+            CsvStorage saved = new CsvStorage(file.getPath());
+            for (Map.Entry<LocalDate, String> change : batch.entrySet()) {
+                assertEquals(change.getValue(), saved.getByDate(change.getKey()));
+            }
+        });
+
+        Map<LocalDate, String> changed = new TreeMap<>();
+        batches.forEach(changed::putAll);
+        assertEquals("{2024-01-02=их 2, 2024-01-03=их 3б, 2024-01-04=их 4}", changed.toString());
+        try (Stream<Path> files = Files.list(folder)) {
+            assertFalse("временные файлы сортировки не удалены",
+                    files.anyMatch(path -> path.getFileName().toString().startsWith("merge-")));
+        }
+    }
+
+    /**
+     * @param third ожидаемая заметка на 2024-01-03
+     * @return ожидаемое содержимое календаря после импорта
+     */
+    private static Map<String, String> expected(String third) {
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("2024-01-01", "моя 1");
+        expected.put("2024-01-02", "их 2");
+        expected.put("2024-01-03", third);
+        expected.put("2024-01-04", "их 4");
+        expected.put("2024-01-05", "моя 5");
+        return expected;
+    }
+
+    /**
+     * Импортирует файл в CSV-хранилище, которое переписывает файл целиком.
+     *
+     * @param policy правило слияния
+     * @return содержимое календаря после импорта, прочитанное заново
+     * @throws IOException при ошибке импорта
+     */
+    private Map<String, String> rewrite(NoteMerger.Policy policy) throws IOException {
+        File file = folder.resolve("rewrite.csv").toFile();
+        Files.writeString(file.toPath(), MINE);
+        new CsvStorage(file.getPath()).merge(source, policy, batch -> { });
+        return new CsvStorage(file.getPath()).loadAll();
+    }
+
+    /**
+     * Импортирует файл пачками через {@link NoteStorage#saveAll(Map)}.
+     *
+     * @param policy правило слияния
+     * @return содержимое календаря после импорта, прочитанное заново
+     * @throws IOException при ошибке импорта
+     */
+    private Map<String, String> saveAll(NoteMerger.Policy policy) throws IOException {
+        File file = folder.resolve("batches.csv").toFile();
+        Files.writeString(file.toPath(), MINE);
+        NoteMerger.merge(new CsvStorage(file.getPath()), source, policy, batch -> { });
+        return new CsvStorage(file.getPath()).loadAll();
+    }
+}